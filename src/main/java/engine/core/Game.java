@@ -9,6 +9,8 @@ public interface Game {
     void update(float interval, MouseInput mouseInput, Window window);
     
     void render(Window window);
+
+    String getStats();
     
     void cleanup();
 }
\ No newline at end of file
@@ -104,9 +104,17 @@ public class GameEngine implements Runnable {
     }
 
     protected void render() {
-        if (window.getWindowOptions().showFps && timer.getLastLoopTime() - lastFps > 1) {
+        Window.WindowOptions opts = window.getWindowOptions();
+        if ((opts.showFps || opts.showStats) && timer.getLastLoopTime() - lastFps > 1) {
             lastFps = timer.getLastLoopTime();
-            window.setWindowTitle(windowTitle + " - " + fps + " FPS");
+            String title = windowTitle;
+            if (opts.showFps) {
+                title += " - " + fps + " FPS";
+            }
+            if (opts.showStats) {
+                title += " - " + gameLogic.getStats();
+            }
+            window.setWindowTitle(title);
             fps = 0;
         }
         fps++;
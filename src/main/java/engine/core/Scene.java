@@ -4,11 +4,27 @@ import engine.graphics.InstancedMesh;
 import engine.graphics.Mesh;
 import engine.items.complex.GameItem;
 import engine.items.complex.SkyBox;
+import engine.items.complex.TransformStore;
+import engine.terrain.Terrain;
+import engine.utils.AabbTree;
+import org.joml.FrustumIntersection;
+import org.joml.Intersectionf;
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
 
 public class Scene {
 
@@ -20,9 +36,41 @@ public class Scene {
 
     private SceneLight sceneLight;
 
+    private Terrain terrain;
+
+    private final AabbTree<GameItem> spatialIndex;
+
+    private final Map<GameItem, Integer> proxies;
+
+    private final Map<TransformStore, GameItem[]> transformItems;
+
+    private final Queue<Runnable> commands;
+
+    private final Vector3f tmpMin;
+
+    private final Vector3f tmpMax;
+
+    private final Vector3f tmpCenter;
+
+    private final Vector3f tmpExtents;
+
+    private final Matrix3f tmpRotation;
+
+    private final Matrix4f tmpMatrix;
+
     public Scene() {
         meshMap = new HashMap();
         instancedMeshMap = new HashMap();
+        spatialIndex = new AabbTree<>();
+        proxies = new HashMap<>();
+        transformItems = new IdentityHashMap<>();
+        commands = new ConcurrentLinkedQueue<>();
+        tmpMin = new Vector3f();
+        tmpMax = new Vector3f();
+        tmpCenter = new Vector3f();
+        tmpExtents = new Vector3f();
+        tmpRotation = new Matrix3f();
+        tmpMatrix = new Matrix4f();
     }
 
     public Map<Mesh, List<GameItem>> getGameMeshes() {
@@ -36,24 +84,184 @@ public class Scene {
     public void setGameItems(GameItem[] gameItems) {
         int numGameItems = gameItems != null ? gameItems.length : 0;
         for (int i = 0; i < numGameItems; i++) {
-            GameItem gameItem = gameItems[i];
-            Mesh[] meshes = gameItem.getMeshes();
-            for (Mesh mesh : meshes) {
-                boolean instancedMesh = mesh instanceof InstancedMesh;
-                List<GameItem> list = instancedMesh ? instancedMeshMap.get(mesh) : meshMap.get(mesh);
-                if (list == null) {
-                    list = new ArrayList<>();
-                    if (instancedMesh) {
-                        instancedMeshMap.put((InstancedMesh) mesh, list);
-                    } else {
-                        meshMap.put(mesh, list);
+            addGameItem(gameItems[i]);
+        }
+    }
+
+    public void addGameItem(GameItem gameItem) {
+        if (proxies.containsKey(gameItem)) {
+            return;
+        }
+        Mesh[] meshes = gameItem.getMeshes();
+        for (int i = 0; i < meshes.length; i++) {
+            Mesh mesh = meshes[i];
+            boolean instancedMesh = mesh instanceof InstancedMesh;
+            List<GameItem> list = instancedMesh ? instancedMeshMap.get(mesh) : meshMap.get(mesh);
+            if (list == null) {
+                list = new ArrayList<>();
+                if (instancedMesh) {
+                    instancedMeshMap.put((InstancedMesh) mesh, list);
+                } else {
+                    meshMap.put(mesh, list);
+                }
+            }
+            gameItem.setSceneSlot(i, list.size());
+            list.add(gameItem);
+        }
+        getWorldBounds(gameItem, tmpMin, tmpMax);
+        proxies.put(gameItem, spatialIndex.insert(gameItem, tmpMin, tmpMax));
+        setTransformItem(gameItem, gameItem);
+        gameItem.setInsideFrustum(false);
+    }
+
+    private void setTransformItem(GameItem gameItem, GameItem value) {
+        int slot = gameItem.getTransformSlot();
+        GameItem[] items = transformItems.get(gameItem.getTransformStore());
+        if (items == null || slot >= items.length) {
+            int length = Math.max(slot + 1, items != null ? items.length * 2 : 64);
+            items = items != null ? Arrays.copyOf(items, length) : new GameItem[length];
+            transformItems.put(gameItem.getTransformStore(), items);
+        }
+        items[slot] = value;
+    }
+
+    public void removeGameItem(GameItem gameItem) {
+        Integer proxy = proxies.remove(gameItem);
+        if (proxy == null) {
+            return;
+        }
+        spatialIndex.remove(proxy);
+        setTransformItem(gameItem, null);
+        Mesh[] meshes = gameItem.getMeshes();
+        for (int i = 0; i < meshes.length; i++) {
+            Mesh mesh = meshes[i];
+            List<GameItem> list = mesh instanceof InstancedMesh ? instancedMeshMap.get(mesh) : meshMap.get(mesh);
+            int sceneSlot = gameItem.getSceneSlot(i);
+            int lastSlot = list.size() - 1;
+            GameItem last = list.remove(lastSlot);
+            if (sceneSlot != lastSlot) {
+                list.set(sceneSlot, last);
+                Mesh[] lastMeshes = last.getMeshes();
+                for (int j = 0; j < lastMeshes.length; j++) {
+                    if (lastMeshes[j] == mesh && last.getSceneSlot(j) == lastSlot) {
+                        last.setSceneSlot(j, sceneSlot);
+                        break;
                     }
                 }
-                list.add(gameItem);
             }
         }
     }
 
+    public void setGameItemMeshes(GameItem gameItem, Mesh[] meshes) {
+        boolean inScene = proxies.containsKey(gameItem);
+        if (inScene) {
+            removeGameItem(gameItem);
+        }
+        gameItem.setMeshes(meshes);
+        if (inScene) {
+            addGameItem(gameItem);
+        }
+    }
+
+    public void submitAdd(GameItem gameItem) {
+        commands.add(() -> addGameItem(gameItem));
+    }
+
+    public void submitRemove(GameItem gameItem) {
+        commands.add(() -> removeGameItem(gameItem));
+    }
+
+    public void submitMeshChange(GameItem gameItem, Mesh[] meshes) {
+        commands.add(() -> setGameItemMeshes(gameItem, meshes));
+    }
+
+    public int applyCommands() {
+        int applied = 0;
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            command.run();
+            applied++;
+        }
+        return applied;
+    }
+
+    public Collection<GameItem> getGameItems() {
+        return Collections.unmodifiableSet(proxies.keySet());
+    }
+
+    public boolean containsGameItem(GameItem gameItem) {
+        return proxies.containsKey(gameItem);
+    }
+
+    public int refitSpatialIndex(TransformStore transformStore) {
+        GameItem[] items = transformItems.get(transformStore);
+        if (items == null) {
+            return 0;
+        }
+        int[] refitted = new int[1];
+        transformStore.forEachUpdated(slot -> {
+            GameItem gameItem = slot < items.length ? items[slot] : null;
+            if (gameItem != null) {
+                getWorldBounds(gameItem, tmpMin, tmpMax);
+                if (spatialIndex.move(proxies.get(gameItem), tmpMin, tmpMax)) {
+                    refitted[0]++;
+                }
+            }
+        });
+        return refitted[0];
+    }
+
+    public void getWorldBounds(GameItem gameItem, Vector3f min, Vector3f max) {
+        min.set(Float.POSITIVE_INFINITY);
+        max.set(Float.NEGATIVE_INFINITY);
+        gameItem.getModelMatrix(tmpMatrix).get3x3(tmpRotation);
+        for (Mesh mesh : gameItem.getMeshes()) {
+            gameItem.transformPosition(mesh.getBoundsMin().add(mesh.getBoundsMax(), tmpCenter).mul(0.5f));
+            mesh.getBoundsMax().sub(mesh.getBoundsMin(), tmpExtents).mul(0.5f);
+            float ex = Math.abs(tmpRotation.m00) * tmpExtents.x + Math.abs(tmpRotation.m10) * tmpExtents.y + Math.abs(tmpRotation.m20) * tmpExtents.z;
+            float ey = Math.abs(tmpRotation.m01) * tmpExtents.x + Math.abs(tmpRotation.m11) * tmpExtents.y + Math.abs(tmpRotation.m21) * tmpExtents.z;
+            float ez = Math.abs(tmpRotation.m02) * tmpExtents.x + Math.abs(tmpRotation.m12) * tmpExtents.y + Math.abs(tmpRotation.m22) * tmpExtents.z;
+            min.min(tmpExtents.set(tmpCenter).sub(ex, ey, ez));
+            max.max(tmpExtents.set(tmpCenter).add(ex, ey, ez));
+        }
+    }
+
+    public void queryFrustum(FrustumIntersection frustum, Consumer<GameItem> consumer) {
+        spatialIndex.queryFrustum(frustum, consumer);
+    }
+
+    public void queryAabb(Vector3f min, Vector3f max, Consumer<GameItem> consumer) {
+        spatialIndex.queryAabb(min, max, consumer);
+    }
+
+    public void querySphere(Vector3f center, float radius, Consumer<GameItem> consumer) {
+        spatialIndex.querySphere(center, radius, consumer);
+    }
+
+    public GameItem pick(Vector3f origin, Vector3f direction, float maxDistance) {
+        GameItem[] nearest = new GameItem[1];
+        float[] nearestDistance = {maxDistance};
+        Vector3f min = new Vector3f();
+        Vector3f max = new Vector3f();
+        Vector2f result = new Vector2f();
+        spatialIndex.raycast(origin, direction, maxDistance, (gameItem, distance) -> {
+            getWorldBounds(gameItem, min, max);
+            if (Intersectionf.intersectRayAab(origin, direction, min, max, result) && result.y >= 0) {
+                float hit = Math.max(0, result.x);
+                if (hit <= nearestDistance[0]) {
+                    nearest[0] = gameItem;
+                    nearestDistance[0] = hit;
+                }
+            }
+            return nearestDistance[0];
+        });
+        return nearest[0];
+    }
+
+    public int getSpatialIndexHeight() {
+        return spatialIndex.getHeight();
+    }
+
     public void cleanup() {
         for (Mesh mesh : meshMap.keySet()) {
             mesh.cleanUp();
@@ -61,6 +269,9 @@ public class Scene {
         for (Mesh mesh : instancedMeshMap.keySet()) {
             mesh.cleanUp();
         }
+        if (terrain != null) {
+            terrain.cleanup();
+        }
     }
 
     public SkyBox getSkyBox() {
@@ -71,6 +282,14 @@ public class Scene {
         this.skyBox = skyBox;
     }
 
+    public Terrain getTerrain() {
+        return terrain;
+    }
+
+    public void setTerrain(Terrain terrain) {
+        this.terrain = terrain;
+    }
+
     public SceneLight getSceneLight() {
         return sceneLight;
     }
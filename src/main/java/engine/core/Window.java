@@ -175,10 +175,16 @@ public class Window {
 
         public boolean showFps;
 
+        public boolean showStats;
+
         public boolean compatibleProfile;
 
         public boolean antialiasing;
 
         public boolean frustumCulling;
+
+        public boolean occlusionCulling;
+
+        public boolean occlusionQueries;
     }
 }
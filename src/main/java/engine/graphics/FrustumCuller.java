@@ -0,0 +1,116 @@
+package engine.graphics;
+
+import engine.core.Scene;
+import engine.items.complex.GameItem;
+import org.joml.FrustumIntersection;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+public class FrustumCuller {
+
+    private static final int PARALLEL_THRESHOLD = 1024;
+
+    private final List<GameItem> visibleItems;
+
+    private boolean indexed;
+
+    private int visibleMeshes;
+
+    private int culledMeshes;
+
+    public FrustumCuller() {
+        visibleItems = new ArrayList<>();
+    }
+
+    public void cull(Scene scene, FrustumIntersection frustum) {
+        int totalMeshes = 0;
+        for (List<GameItem> gameItems : scene.getGameMeshes().values()) {
+            totalMeshes += gameItems.size();
+        }
+        for (List<GameItem> gameItems : scene.getGameInstancedMeshes().values()) {
+            totalMeshes += gameItems.size();
+        }
+
+        if (frustum == null) {
+            setAllInsideFrustum(scene, true);
+            indexed = false;
+            visibleItems.clear();
+            visibleItems.addAll(scene.getGameItems());
+            visibleMeshes = totalMeshes;
+            culledMeshes = 0;
+            return;
+        }
+
+        if (!indexed) {
+            setAllInsideFrustum(scene, false);
+            indexed = true;
+        } else {
+            for (GameItem gameItem : visibleItems) {
+                gameItem.setInsideFrustum(false);
+            }
+        }
+        visibleItems.clear();
+        scene.queryFrustum(frustum, visibleItems::add);
+
+        int numItems = visibleItems.size();
+        if (numItems >= PARALLEL_THRESHOLD) {
+            visibleMeshes = IntStream.range(0, numItems).parallel()
+                    .map(i -> test(visibleItems.get(i), frustum, new Vector3f()))
+                    .sum();
+        } else {
+            Vector3f center = new Vector3f();
+            visibleMeshes = 0;
+            for (GameItem gameItem : visibleItems) {
+                visibleMeshes += test(gameItem, frustum, center);
+            }
+        }
+        culledMeshes = totalMeshes - visibleMeshes;
+    }
+
+    private void setAllInsideFrustum(Scene scene, boolean insideFrustum) {
+        for (Map.Entry<Mesh, List<GameItem>> entry : scene.getGameMeshes().entrySet()) {
+            for (GameItem gameItem : entry.getValue()) {
+                gameItem.setInsideFrustum(insideFrustum);
+            }
+        }
+        for (Map.Entry<InstancedMesh, List<GameItem>> entry : scene.getGameInstancedMeshes().entrySet()) {
+            for (GameItem gameItem : entry.getValue()) {
+                gameItem.setInsideFrustum(insideFrustum);
+            }
+        }
+    }
+
+    private static int test(GameItem gameItem, FrustumIntersection frustum, Vector3f center) {
+        Mesh[] meshes = gameItem.getMeshes();
+        int visible = 0;
+        for (int i = 0; i < meshes.length; i++) {
+            boolean inside = frustum.testSphere(getWorldCenter(meshes[i], gameItem, center),
+                    meshes[i].getBoundingRadius() * gameItem.getWorldScale());
+            gameItem.setInsideFrustum(i, inside);
+            if (inside) {
+                visible++;
+            }
+        }
+        return visible;
+    }
+
+    public static Vector3f getWorldCenter(Mesh mesh, GameItem gameItem, Vector3f dest) {
+        return gameItem.transformPosition(dest.set(mesh.getBoundingCenter()));
+    }
+
+    public List<GameItem> getVisibleItems() {
+        return visibleItems;
+    }
+
+    public int getVisibleMeshes() {
+        return visibleMeshes;
+    }
+
+    public int getCulledMeshes() {
+        return culledMeshes;
+    }
+}
@@ -1,5 +1,6 @@
 package engine.graphics;
 
+import engine.loaders.TextureData;
 import engine.utils.FileUtils;
 import org.joml.Vector3f;
 
@@ -23,6 +24,16 @@ public class HeightMapMesh {
 
     private final float[][] heightArray;
 
+    public static HeightMapMesh load(float minY, float maxY, String heightMapFile, String textureFile, int textInc) throws Exception {
+        TextureData heightMap = TextureData.decode(heightMapFile);
+        try {
+            return new HeightMapMesh(minY, maxY, heightMap.getPixels(), heightMap.getWidth(), heightMap.getHeight(),
+                    textureFile, textInc);
+        } finally {
+            heightMap.free();
+        }
+    }
+
     public HeightMapMesh(float minY, float maxY, ByteBuffer heightMapImage, int width, int height, String textureFile, int textInc) throws Exception {
         this.minY = minY;
         this.maxY = maxY;
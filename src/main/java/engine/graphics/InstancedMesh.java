@@ -36,7 +36,7 @@ public class InstancedMesh extends Mesh {
     private FloatBuffer instanceDataBuffer;
 
     public InstancedMesh(float[] positions, float[] textCoords, float[] normals, int[] indices, int numInstances) {
-        super(positions, textCoords, normals, indices, Mesh.createEmptyIntArray(Mesh.MAX_WEIGHTS * positions.length / 3), Mesh.createEmptyFloatArray(Mesh.MAX_WEIGHTS * positions.length / 3));
+        super(positions, textCoords, normals, indices);
 
         this.numInstances = numInstances;
 
@@ -105,11 +105,13 @@ public class InstancedMesh extends Mesh {
 
         Texture text = getMaterial().getTexture();
         for (GameItem gameItem : gameItems) {
-            Matrix4f modelMatrix = transformation.buildModelMatrix(gameItem);
             if (viewMatrix != null && billBoard) {
+                Matrix4f modelMatrix = transformation.buildModelMatrix(gameItem);
                 viewMatrix.transpose3x3(modelMatrix);
+                modelMatrix.get(InstancedMesh.INSTANCE_SIZE_FLOATS * i, instanceDataBuffer);
+            } else {
+                gameItem.copyModelMatrix(instanceDataBuffer, InstancedMesh.INSTANCE_SIZE_FLOATS * i);
             }
-            modelMatrix.get(InstancedMesh.INSTANCE_SIZE_FLOATS * i, instanceDataBuffer);
             if (text != null) {
                 int col = gameItem.getTextPos() % text.getNumCols();
                 int row = gameItem.getTextPos() / text.getNumCols();
@@ -121,7 +123,7 @@ public class InstancedMesh extends Mesh {
             }
 
             int buffPos = InstancedMesh.INSTANCE_SIZE_FLOATS * i + InstancedMesh.MATRIX_SIZE_FLOATS + 2;
-            this.instanceDataBuffer.put(buffPos, billBoard ? gameItem.getScale() : gameItem.isSelected() ? 1 : 0);
+            this.instanceDataBuffer.put(buffPos, billBoard ? gameItem.getWorldScale() : gameItem.isSelected() ? 1 : 0);
 
             i++;
         }
@@ -130,7 +132,7 @@ public class InstancedMesh extends Mesh {
         glBufferData(GL_ARRAY_BUFFER, instanceDataBuffer, GL_DYNAMIC_READ);
 
         glDrawElementsInstanced(
-                GL_TRIANGLES, getVertexCount(), GL_UNSIGNED_INT, 0, gameItems.size());
+                GL_TRIANGLES, getVertexCount(), getIndexType(), 0, gameItems.size());
 
         glBindBuffer(GL_ARRAY_BUFFER, 0);
     }
@@ -1,24 +1,28 @@
 package engine.graphics;
 
-import org.lwjgl.system.MemoryUtil;
 import engine.items.complex.GameItem;
+import engine.loaders.TextureCache;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.function.Consumer;
 
-import static org.lwjgl.opengl.GL11.GL_FLOAT;
 import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
 import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
 import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
 import static org.lwjgl.opengl.GL11.glBindTexture;
 import static org.lwjgl.opengl.GL11.glDrawElements;
 import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
 import static org.lwjgl.opengl.GL13.GL_TEXTURE1;
 import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL14.glMultiDrawElements;
 import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
 import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
 import static org.lwjgl.opengl.GL15.GL_STATIC_DRAW;
@@ -27,8 +31,7 @@ import static org.lwjgl.opengl.GL15.glBufferData;
 import static org.lwjgl.opengl.GL15.glDeleteBuffers;
 import static org.lwjgl.opengl.GL15.glGenBuffers;
 import static org.lwjgl.opengl.GL20.glDisableVertexAttribArray;
-import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
-import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL20.glVertexAttrib4f;
 import static org.lwjgl.opengl.GL30.glBindVertexArray;
 import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
 import static org.lwjgl.opengl.GL30.glGenVertexArrays;
@@ -37,21 +40,53 @@ public class Mesh {
 
     public static final int MAX_WEIGHTS = 4;
 
+    private static final int MAX_SHORT_INDEXED_VERTICES = 1 << 16;
+
+    private static final float MIN_POSITION_SCALE = 1e-6f;
+
+    public static final float LOD_SCREEN_SIZE = 0.25f;
+
     protected final int vaoId;
 
-    protected final List<Integer> vboIdList;
+    protected final List<Integer> vboIdList = new ArrayList<>();
 
     private final int vertexCount;
 
+    private final VertexFormat vertexFormat;
+
+    private final Vector3f positionOffset = new Vector3f();
+
+    private final Vector3f positionScale = new Vector3f(1, 1, 1);
+
+    private int indexType;
+
+    private int[] lodCounts;
+
+    private int[] lodFirstIndices;
+
+    private Meshlets meshlets;
+
+    private Occluder occluder;
+
     private Material material;
 
+    private final Vector3f boundingCenter = new Vector3f();
+
+    private final Vector3f boundsMin = new Vector3f();
+
+    private final Vector3f boundsMax = new Vector3f();
+
     private float boundingRadius;
 
     public Mesh(float[] positions, float[] textCoords, float[] normals, int[] indices) {
-        this(positions, textCoords, normals, indices, Mesh.createEmptyIntArray(Mesh.MAX_WEIGHTS * positions.length / 3), Mesh.createEmptyFloatArray(Mesh.MAX_WEIGHTS * positions.length / 3));
+        this(positions, textCoords, normals, indices, null, null, VertexFormat.STATIC);
     }
 
     public Mesh(float[] positions, float[] textCoords, float[] normals, int[] indices, int[] jointIndices, float[] weights) {
+        this(positions, textCoords, normals, indices, jointIndices, weights, VertexFormat.SKINNED);
+    }
+
+    private Mesh(float[] positions, float[] textCoords, float[] normals, int[] indices, int[] jointIndices, float[] weights, VertexFormat vertexFormat) {
         FloatBuffer posBuffer = null;
         FloatBuffer textCoordsBuffer = null;
         FloatBuffer vecNormalsBuffer = null;
@@ -59,103 +94,157 @@ public class Mesh {
         IntBuffer jointIndicesBuffer = null;
         IntBuffer indicesBuffer = null;
         try {
-            calculateBoundingRadius(positions);
+            posBuffer = MemoryUtil.memAllocFloat(positions.length);
+            posBuffer.put(positions).flip();
+            textCoordsBuffer = MemoryUtil.memAllocFloat(textCoords.length);
+            textCoordsBuffer.put(textCoords).flip();
+            vecNormalsBuffer = MemoryUtil.memAllocFloat(normals.length);
+            vecNormalsBuffer.put(normals).flip();
+            if (weights != null) {
+                weightsBuffer = MemoryUtil.memAllocFloat(weights.length);
+                weightsBuffer.put(weights).flip();
+            }
+            if (jointIndices != null) {
+                jointIndicesBuffer = MemoryUtil.memAllocInt(jointIndices.length);
+                jointIndicesBuffer.put(jointIndices).flip();
+            }
+            indicesBuffer = MemoryUtil.memAllocInt(indices.length);
+            indicesBuffer.put(indices).flip();
 
+            this.vertexFormat = vertexFormat;
             vertexCount = indices.length;
-            vboIdList = new ArrayList<>();
+            setLods(null, indices.length);
+            vaoId = createVertexArray(posBuffer, textCoordsBuffer, vecNormalsBuffer, indicesBuffer, jointIndicesBuffer, weightsBuffer);
+        } finally {
+            MemoryUtil.memFree(posBuffer);
+            MemoryUtil.memFree(textCoordsBuffer);
+            MemoryUtil.memFree(vecNormalsBuffer);
+            MemoryUtil.memFree(weightsBuffer);
+            MemoryUtil.memFree(jointIndicesBuffer);
+            MemoryUtil.memFree(indicesBuffer);
+        }
+    }
 
-            vaoId = glGenVertexArrays();
-            glBindVertexArray(vaoId);
+    public Mesh(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IntBuffer indices) {
+        this(positions, textCoords, normals, indices, VertexFormat.STATIC);
+    }
 
-            int vboId = glGenBuffers();
-            vboIdList.add(vboId);
-            posBuffer = MemoryUtil.memAllocFloat(positions.length);
-            posBuffer.put(positions).flip();
-            glBindBuffer(GL_ARRAY_BUFFER, vboId);
-            glBufferData(GL_ARRAY_BUFFER, posBuffer, GL_STATIC_DRAW);
-            glEnableVertexAttribArray(0);
-            glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+    public Mesh(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IntBuffer indices, VertexFormat vertexFormat) {
+        this(positions, textCoords, normals, indices, null, vertexFormat);
+    }
+
+    public Mesh(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IntBuffer indices, int[] lodCounts, VertexFormat vertexFormat) {
+        this.vertexFormat = vertexFormat;
+        setLods(lodCounts, indices.remaining());
+        vertexCount = this.lodCounts[0];
+        vaoId = createVertexArray(positions, textCoords, normals, indices, null, null);
+    }
 
-            vboId = glGenBuffers();
+    public Mesh(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IntBuffer indices, IntBuffer jointIndices, FloatBuffer weights) {
+        this.vertexFormat = VertexFormat.SKINNED;
+        vertexCount = indices.remaining();
+        setLods(null, vertexCount);
+        vaoId = createVertexArray(positions, textCoords, normals, indices, jointIndices, weights);
+    }
+
+    private int createVertexArray(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IntBuffer indices, IntBuffer jointIndices, FloatBuffer weights) {
+        calculateBounds(positions);
+        calculatePositionBounds(positions);
+
+        int numVertices = positions.remaining() / 3;
+
+        int vaoId = glGenVertexArrays();
+        glBindVertexArray(vaoId);
+
+        ByteBuffer vertices = MemoryUtil.memAlloc(numVertices * vertexFormat.getStride());
+        try {
+            vertexFormat.write(vertices, positions, textCoords, normals, jointIndices, weights, positionOffset, positionScale);
+            int vboId = glGenBuffers();
             vboIdList.add(vboId);
-            textCoordsBuffer = MemoryUtil.memAllocFloat(textCoords.length);
-            if (textCoordsBuffer.capacity() > 0) {
-                textCoordsBuffer.put(textCoords).flip();
-            } else {
-                textCoordsBuffer = MemoryUtil.memAllocFloat((positions.length * 3) / 2);
-            }
             glBindBuffer(GL_ARRAY_BUFFER, vboId);
-            glBufferData(GL_ARRAY_BUFFER, textCoordsBuffer, GL_STATIC_DRAW);
-            glEnableVertexAttribArray(1);
-            glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, 0);
+            glBufferData(GL_ARRAY_BUFFER, vertices, GL_STATIC_DRAW);
+            vertexFormat.enableAttributes();
+        } finally {
+            MemoryUtil.memFree(vertices);
+        }
 
-            vboId = glGenBuffers();
-            vboIdList.add(vboId);
-            vecNormalsBuffer = MemoryUtil.memAllocFloat(normals.length);
-            if (vecNormalsBuffer.capacity() > 0) {
-                vecNormalsBuffer.put(normals).flip();
-            } else {
-                vecNormalsBuffer = MemoryUtil.memAllocFloat(positions.length);
+        int vboId = glGenBuffers();
+        vboIdList.add(vboId);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vboId);
+        if (numVertices <= MAX_SHORT_INDEXED_VERTICES) {
+            ShortBuffer shortIndices = MemoryUtil.memAllocShort(indices.remaining());
+            try {
+                for (int i = indices.position(); i < indices.limit(); i++) {
+                    shortIndices.put((short) indices.get(i));
+                }
+                shortIndices.flip();
+                glBufferData(GL_ELEMENT_ARRAY_BUFFER, shortIndices, GL_STATIC_DRAW);
+            } finally {
+                MemoryUtil.memFree(shortIndices);
             }
-            glBindBuffer(GL_ARRAY_BUFFER, vboId);
-            glBufferData(GL_ARRAY_BUFFER, vecNormalsBuffer, GL_STATIC_DRAW);
-            glEnableVertexAttribArray(2);
-            glVertexAttribPointer(2, 3, GL_FLOAT, false, 0, 0);
+            indexType = GL_UNSIGNED_SHORT;
+        } else {
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+            indexType = GL_UNSIGNED_INT;
+        }
 
-            vboId = glGenBuffers();
-            vboIdList.add(vboId);
-            weightsBuffer = MemoryUtil.memAllocFloat(weights.length);
-            weightsBuffer.put(weights).flip();
-            glBindBuffer(GL_ARRAY_BUFFER, vboId);
-            glBufferData(GL_ARRAY_BUFFER, weightsBuffer, GL_STATIC_DRAW);
-            glEnableVertexAttribArray(3);
-            glVertexAttribPointer(3, 4, GL_FLOAT, false, 0, 0);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
 
-            vboId = glGenBuffers();
-            vboIdList.add(vboId);
-            jointIndicesBuffer = MemoryUtil.memAllocInt(jointIndices.length);
-            jointIndicesBuffer.put(jointIndices).flip();
-            glBindBuffer(GL_ARRAY_BUFFER, vboId);
-            glBufferData(GL_ARRAY_BUFFER, jointIndicesBuffer, GL_STATIC_DRAW);
-            glEnableVertexAttribArray(4);
-            glVertexAttribPointer(4, 4, GL_FLOAT, false, 0, 0);
+        return vaoId;
+    }
 
-            vboId = glGenBuffers();
-            vboIdList.add(vboId);
-            indicesBuffer = MemoryUtil.memAllocInt(indices.length);
-            indicesBuffer.put(indices).flip();
-            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vboId);
-            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
+    private void setLods(int[] lodCounts, int numIndices) {
+        this.lodCounts = lodCounts != null ? lodCounts : new int[]{numIndices};
+        lodFirstIndices = new int[this.lodCounts.length];
+        for (int i = 1; i < this.lodCounts.length; i++) {
+            lodFirstIndices[i] = lodFirstIndices[i - 1] + this.lodCounts[i - 1];
+        }
+    }
 
-            glBindBuffer(GL_ARRAY_BUFFER, 0);
-            glBindVertexArray(0);
-        } finally {
-            if (posBuffer != null) {
-                MemoryUtil.memFree(posBuffer);
-            }
-            if (textCoordsBuffer != null) {
-                MemoryUtil.memFree(textCoordsBuffer);
-            }
-            if (vecNormalsBuffer != null) {
-                MemoryUtil.memFree(vecNormalsBuffer);
-            }
-            if (weightsBuffer != null) {
-                MemoryUtil.memFree(weightsBuffer);
-            }
-            if (jointIndicesBuffer != null) {
-                MemoryUtil.memFree(jointIndicesBuffer);
-            }
-            if (indicesBuffer != null) {
-                MemoryUtil.memFree(indicesBuffer);
+    private void calculatePositionBounds(FloatBuffer positions) {
+        if (!vertexFormat.isQuantizedPositions() || positions.remaining() == 0) {
+            positionOffset.set(0, 0, 0);
+            positionScale.set(1, 1, 1);
+            return;
+        }
+        Vector3f min = new Vector3f(Float.POSITIVE_INFINITY);
+        Vector3f max = new Vector3f(Float.NEGATIVE_INFINITY);
+        for (int i = positions.position(); i < positions.limit(); i += 3) {
+            for (int c = 0; c < 3; c++) {
+                float value = positions.get(i + c);
+                min.setComponent(c, Math.min(min.get(c), value));
+                max.setComponent(c, Math.max(max.get(c), value));
             }
         }
+        max.add(min, positionOffset).mul(0.5f);
+        max.sub(min, positionScale).mul(0.5f).max(new Vector3f(MIN_POSITION_SCALE));
     }
 
-    private void calculateBoundingRadius(float[] positions) {
-        boundingRadius = 0;
-        for (float pos : positions) {
-            boundingRadius = Math.max(Math.abs(pos), boundingRadius);
+    private void calculateBounds(FloatBuffer positions) {
+        if (positions.remaining() < 3) {
+            boundsMin.set(0);
+            boundsMax.set(0);
+            boundingCenter.set(0);
+            boundingRadius = 0;
+            return;
+        }
+        boundsMin.set(Float.POSITIVE_INFINITY);
+        boundsMax.set(Float.NEGATIVE_INFINITY);
+        for (int i = positions.position(); i + 2 < positions.limit(); i += 3) {
+            for (int c = 0; c < 3; c++) {
+                float value = positions.get(i + c);
+                boundsMin.setComponent(c, Math.min(boundsMin.get(c), value));
+                boundsMax.setComponent(c, Math.max(boundsMax.get(c), value));
+            }
+        }
+        boundsMin.add(boundsMax, boundingCenter).mul(0.5f);
+        float radiusSquared = 0;
+        for (int i = positions.position(); i + 2 < positions.limit(); i += 3) {
+            radiusSquared = Math.max(radiusSquared,
+                    boundingCenter.distanceSquared(positions.get(i), positions.get(i + 1), positions.get(i + 2)));
         }
+        boundingRadius = (float) Math.sqrt(radiusSquared);
     }
 
     public Material getMaterial() {
@@ -174,6 +263,69 @@ public class Mesh {
         return vertexCount;
     }
 
+    public VertexFormat getVertexFormat() {
+        return vertexFormat;
+    }
+
+    public Vector3f getPositionOffset() {
+        return positionOffset;
+    }
+
+    public Vector3f getPositionScale() {
+        return positionScale;
+    }
+
+    public int getIndexType() {
+        return indexType;
+    }
+
+    public int getNumLods() {
+        return lodCounts.length;
+    }
+
+    public int getLodVertexCount(int lod) {
+        return lodCounts[lod];
+    }
+
+    public int selectLod(float screenSize) {
+        if (lodCounts.length == 1 || screenSize >= LOD_SCREEN_SIZE) {
+            return 0;
+        }
+        if (screenSize <= 0) {
+            return lodCounts.length - 1;
+        }
+        int lod = (int) (Math.log(LOD_SCREEN_SIZE / screenSize) / Math.log(2));
+        return Math.min(lod, lodCounts.length - 1);
+    }
+
+    public Meshlets getMeshlets() {
+        return meshlets;
+    }
+
+    public void setMeshlets(Meshlets meshlets) {
+        this.meshlets = meshlets;
+    }
+
+    public Occluder getOccluder() {
+        return occluder;
+    }
+
+    public void setOccluder(Occluder occluder) {
+        this.occluder = occluder;
+    }
+
+    public Vector3f getBoundingCenter() {
+        return boundingCenter;
+    }
+
+    public Vector3f getBoundsMin() {
+        return boundsMin;
+    }
+
+    public Vector3f getBoundsMax() {
+        return boundsMax;
+    }
+
     public float getBoundingRadius() {
         return boundingRadius;
     }
@@ -183,6 +335,11 @@ public class Mesh {
     }
 
     protected void initRender() {
+        bindTextures();
+        bindVertexArray();
+    }
+
+    public void bindTextures() {
         Texture texture = material != null ? material.getTexture() : null;
         if (texture != null) {
             glActiveTexture(GL_TEXTURE0);
@@ -193,8 +350,13 @@ public class Mesh {
             glActiveTexture(GL_TEXTURE1);
             glBindTexture(GL_TEXTURE_2D, normalMap.getId());
         }
+    }
 
+    public void bindVertexArray() {
         glBindVertexArray(getVaoId());
+        if (!vertexFormat.isSkinned()) {
+            glVertexAttrib4f(3, 0, 0, 0, 0);
+        }
     }
 
     protected void endRender() {
@@ -204,24 +366,31 @@ public class Mesh {
     }
 
     public void render() {
+        render(0);
+    }
+
+    public void render(int lod) {
         initRender();
 
-        glDrawElements(GL_TRIANGLES, getVertexCount(), GL_UNSIGNED_INT, 0);
+        int indexSize = indexType == GL_UNSIGNED_SHORT ? Short.BYTES : Integer.BYTES;
+        glDrawElements(GL_TRIANGLES, lodCounts[lod], indexType, (long) lodFirstIndices[lod] * indexSize);
 
         endRender();
     }
 
-    public void renderList(List<GameItem> gameItems, Consumer<GameItem> consumer) {
-        initRender();
-
-        for (GameItem gameItem : gameItems) {
-            if (gameItem.isInsideFrustum()) {
-                consumer.accept(gameItem);
-                glDrawElements(GL_TRIANGLES, getVertexCount(), GL_UNSIGNED_INT, 0);
+    public int draw(GameItem gameItem, int lod, Consumer<GameItem> consumer, MeshletCuller meshletCuller) {
+        int indexSize = indexType == GL_UNSIGNED_SHORT ? Short.BYTES : Integer.BYTES;
+        if (lod == 0 && meshlets != null && meshletCuller != null) {
+            if (meshletCuller.cull(meshlets, gameItem, indexSize) == 0) {
+                return 0;
             }
+            consumer.accept(gameItem);
+            glMultiDrawElements(GL_TRIANGLES, meshletCuller.getCounts(), indexType, meshletCuller.getOffsets());
+            return meshletCuller.getVisibleIndices();
         }
-
-        endRender();
+        consumer.accept(gameItem);
+        glDrawElements(GL_TRIANGLES, lodCounts[lod], indexType, (long) lodFirstIndices[lod] * indexSize);
+        return lodCounts[lod];
     }
 
     public void cleanUp() {
@@ -233,23 +402,11 @@ public class Mesh {
         }
 
         Texture texture = material.getTexture();
-        if (texture != null) {
+        if (texture != null && !TextureCache.getInstance().release(texture)) {
             texture.cleanup();
         }
 
         glBindVertexArray(0);
         glDeleteVertexArrays(vaoId);
     }
-
-    protected static float[] createEmptyFloatArray(int length) {
-        float[] result = new float[length];
-        Arrays.fill(result, (float) 0);
-        return result;
-    }
-
-    protected static int[] createEmptyIntArray(int length) {
-        int[] result = new int[length];
-        Arrays.fill(result, 0);
-        return result;
-    }
 }
@@ -0,0 +1,133 @@
+package engine.graphics;
+
+import engine.items.complex.GameItem;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.IntBuffer;
+
+public class MeshletCuller {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private FrustumIntersection frustum;
+
+    private final Vector3f cameraPosition;
+
+    private final Vector3f localCamera;
+
+    private final Vector3f center;
+
+    private final Matrix4f inverseModelMatrix;
+
+    private IntBuffer counts;
+
+    private PointerBuffer offsets;
+
+    private int visibleIndices;
+
+    private int testedMeshlets;
+
+    private int culledMeshlets;
+
+    public MeshletCuller() {
+        cameraPosition = new Vector3f();
+        localCamera = new Vector3f();
+        center = new Vector3f();
+        inverseModelMatrix = new Matrix4f();
+        counts = MemoryUtil.memAllocInt(INITIAL_CAPACITY);
+        offsets = MemoryUtil.memAllocPointer(INITIAL_CAPACITY);
+    }
+
+    public void update(FrustumIntersection frustum, Vector3f cameraPosition) {
+        this.frustum = frustum;
+        this.cameraPosition.set(cameraPosition);
+        testedMeshlets = 0;
+        culledMeshlets = 0;
+    }
+
+    public int cull(Meshlets meshlets, GameItem gameItem, int indexSize) {
+        int numMeshlets = meshlets.getNumMeshlets();
+        ensureCapacity(numMeshlets);
+        counts.clear();
+        offsets.clear();
+
+        float scale = gameItem.getWorldScale();
+        gameItem.getModelMatrix(inverseModelMatrix).invertAffine();
+        inverseModelMatrix.transformPosition(cameraPosition, localCamera);
+
+        float[] spheres = meshlets.getSpheres();
+        float[] cones = meshlets.getCones();
+        int ranges = 0;
+        int rangeEnd = -1;
+        visibleIndices = 0;
+        for (int m = 0; m < numMeshlets; m++) {
+            int s = m * 4;
+            float dx = spheres[s] - localCamera.x;
+            float dy = spheres[s + 1] - localCamera.y;
+            float dz = spheres[s + 2] - localCamera.z;
+            float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            if (dx * cones[s] + dy * cones[s + 1] + dz * cones[s + 2] >= cones[s + 3] * distance + spheres[s + 3]) {
+                culledMeshlets++;
+                continue;
+            }
+            if (frustum != null) {
+                gameItem.transformPosition(center.set(spheres[s], spheres[s + 1], spheres[s + 2]));
+                if (!frustum.testSphere(center, spheres[s + 3] * scale)) {
+                    culledMeshlets++;
+                    continue;
+                }
+            }
+            int first = meshlets.getFirstIndex(m);
+            int count = meshlets.getIndexCount(m);
+            visibleIndices += count;
+            if (first == rangeEnd) {
+                counts.put(ranges - 1, counts.get(ranges - 1) + count);
+            } else {
+                counts.put(ranges, count);
+                offsets.put(ranges, (long) first * indexSize);
+                ranges++;
+            }
+            rangeEnd = first + count;
+        }
+        testedMeshlets += numMeshlets;
+        counts.limit(ranges);
+        offsets.limit(ranges);
+        return ranges;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (counts.capacity() < capacity) {
+            counts = MemoryUtil.memRealloc(counts, capacity);
+            offsets = MemoryUtil.memRealloc(offsets, capacity);
+        }
+    }
+
+    public IntBuffer getCounts() {
+        return counts;
+    }
+
+    public PointerBuffer getOffsets() {
+        return offsets;
+    }
+
+    public int getVisibleIndices() {
+        return visibleIndices;
+    }
+
+    public int getTestedMeshlets() {
+        return testedMeshlets;
+    }
+
+    public int getCulledMeshlets() {
+        return culledMeshlets;
+    }
+
+    public void cleanup() {
+        MemoryUtil.memFree(counts);
+        MemoryUtil.memFree(offsets);
+    }
+}
@@ -0,0 +1,192 @@
+package engine.graphics;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+public class Meshlets {
+
+    public static final int MAX_VERTICES = 64;
+
+    public static final int MAX_TRIANGLES = 124;
+
+    public static final int MIN_MESH_TRIANGLES = 4 * MAX_TRIANGLES;
+
+    private static final float DEGENERATE_CONE_DOT = 0.1f;
+
+    private final int numMeshlets;
+
+    private final int[] firstIndices;
+
+    private final int[] indexCounts;
+
+    private final float[] spheres;
+
+    private final float[] cones;
+
+    private Meshlets(int numMeshlets, int[] firstIndices, int[] indexCounts, float[] spheres, float[] cones) {
+        this.numMeshlets = numMeshlets;
+        this.firstIndices = firstIndices;
+        this.indexCounts = indexCounts;
+        this.spheres = spheres;
+        this.cones = cones;
+    }
+
+    public static Meshlets build(FloatBuffer positions, IntBuffer indices, int numIndices) {
+        int posBase = positions.position();
+        int indexBase = indices.position();
+        int numTriangles = numIndices / 3;
+        int capacity = numTriangles / MAX_TRIANGLES + 1;
+        int[] firstIndices = new int[capacity];
+        int[] indexCounts = new int[capacity];
+        int numMeshlets = 0;
+
+        int[] seen = new int[positions.remaining() / 3];
+        Arrays.fill(seen, -1);
+        int meshletVertices = 0;
+        int meshletStart = 0;
+        for (int t = 0; t < numTriangles; t++) {
+            int newVertices = 0;
+            for (int k = 0; k < 3; k++) {
+                if (seen[indices.get(indexBase + t * 3 + k)] != numMeshlets) {
+                    newVertices++;
+                }
+            }
+            int meshletTriangles = t - meshletStart;
+            if (meshletTriangles > 0 && (meshletTriangles >= MAX_TRIANGLES || meshletVertices + newVertices > MAX_VERTICES)) {
+                if (numMeshlets == firstIndices.length) {
+                    firstIndices = Arrays.copyOf(firstIndices, numMeshlets * 2);
+                    indexCounts = Arrays.copyOf(indexCounts, numMeshlets * 2);
+                }
+                firstIndices[numMeshlets] = meshletStart * 3;
+                indexCounts[numMeshlets] = meshletTriangles * 3;
+                numMeshlets++;
+                meshletStart = t;
+                meshletVertices = 0;
+            }
+            for (int k = 0; k < 3; k++) {
+                int vertex = indices.get(indexBase + t * 3 + k);
+                if (seen[vertex] != numMeshlets) {
+                    seen[vertex] = numMeshlets;
+                    meshletVertices++;
+                }
+            }
+        }
+        if (numTriangles > meshletStart) {
+            if (numMeshlets == firstIndices.length) {
+                firstIndices = Arrays.copyOf(firstIndices, numMeshlets + 1);
+                indexCounts = Arrays.copyOf(indexCounts, numMeshlets + 1);
+            }
+            firstIndices[numMeshlets] = meshletStart * 3;
+            indexCounts[numMeshlets] = (numTriangles - meshletStart) * 3;
+            numMeshlets++;
+        }
+
+        float[] spheres = new float[numMeshlets * 4];
+        float[] cones = new float[numMeshlets * 4];
+        for (int m = 0; m < numMeshlets; m++) {
+            computeBounds(positions, posBase, indices, indexBase + firstIndices[m], indexCounts[m], spheres, cones, m * 4);
+        }
+        return new Meshlets(numMeshlets, Arrays.copyOf(firstIndices, numMeshlets), Arrays.copyOf(indexCounts, numMeshlets),
+                spheres, cones);
+    }
+
+    private static void computeBounds(FloatBuffer positions, int posBase, IntBuffer indices, int start, int count,
+                                      float[] spheres, float[] cones, int out) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = start; i < start + count; i++) {
+            int p = posBase + indices.get(i) * 3;
+            minX = Math.min(minX, positions.get(p));
+            minY = Math.min(minY, positions.get(p + 1));
+            minZ = Math.min(minZ, positions.get(p + 2));
+            maxX = Math.max(maxX, positions.get(p));
+            maxY = Math.max(maxY, positions.get(p + 1));
+            maxZ = Math.max(maxZ, positions.get(p + 2));
+        }
+        float cx = (minX + maxX) * 0.5f;
+        float cy = (minY + maxY) * 0.5f;
+        float cz = (minZ + maxZ) * 0.5f;
+        float radiusSquared = 0;
+        for (int i = start; i < start + count; i++) {
+            int p = posBase + indices.get(i) * 3;
+            float dx = positions.get(p) - cx;
+            float dy = positions.get(p + 1) - cy;
+            float dz = positions.get(p + 2) - cz;
+            radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+        }
+        spheres[out] = cx;
+        spheres[out + 1] = cy;
+        spheres[out + 2] = cz;
+        spheres[out + 3] = (float) Math.sqrt(radiusSquared);
+
+        int numTriangles = count / 3;
+        float[] normals = new float[numTriangles * 3];
+        float ax = 0, ay = 0, az = 0;
+        for (int t = 0; t < numTriangles; t++) {
+            int p0 = posBase + indices.get(start + t * 3) * 3;
+            int p1 = posBase + indices.get(start + t * 3 + 1) * 3;
+            int p2 = posBase + indices.get(start + t * 3 + 2) * 3;
+            float e1x = positions.get(p1) - positions.get(p0);
+            float e1y = positions.get(p1 + 1) - positions.get(p0 + 1);
+            float e1z = positions.get(p1 + 2) - positions.get(p0 + 2);
+            float e2x = positions.get(p2) - positions.get(p0);
+            float e2y = positions.get(p2 + 1) - positions.get(p0 + 1);
+            float e2z = positions.get(p2 + 2) - positions.get(p0 + 2);
+            float nx = e1y * e2z - e1z * e2y;
+            float ny = e1z * e2x - e1x * e2z;
+            float nz = e1x * e2y - e1y * e2x;
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length > 0) {
+                nx /= length;
+                ny /= length;
+                nz /= length;
+            }
+            normals[t * 3] = nx;
+            normals[t * 3 + 1] = ny;
+            normals[t * 3 + 2] = nz;
+            ax += nx;
+            ay += ny;
+            az += nz;
+        }
+        float axisLength = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        float minDot = -1;
+        if (axisLength > 0) {
+            ax /= axisLength;
+            ay /= axisLength;
+            az /= axisLength;
+            minDot = 1;
+            for (int t = 0; t < numTriangles; t++) {
+                float nx = normals[t * 3], ny = normals[t * 3 + 1], nz = normals[t * 3 + 2];
+                if (nx == 0 && ny == 0 && nz == 0) {
+                    continue;
+                }
+                minDot = Math.min(minDot, ax * nx + ay * ny + az * nz);
+            }
+        }
+        cones[out] = ax;
+        cones[out + 1] = ay;
+        cones[out + 2] = az;
+        cones[out + 3] = minDot <= DEGENERATE_CONE_DOT ? 1 : (float) Math.sqrt(1 - minDot * minDot);
+    }
+
+    public int getNumMeshlets() {
+        return numMeshlets;
+    }
+
+    public int getFirstIndex(int meshlet) {
+        return firstIndices[meshlet];
+    }
+
+    public int getIndexCount(int meshlet) {
+        return indexCounts[meshlet];
+    }
+
+    public float[] getSpheres() {
+        return spheres;
+    }
+
+    public float[] getCones() {
+        return cones;
+    }
+}
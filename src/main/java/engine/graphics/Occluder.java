@@ -0,0 +1,57 @@
+package engine.graphics;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+public class Occluder {
+
+    public static final int MAX_TRIANGLES = 2048;
+
+    private final float[] vertices;
+
+    private final int[] indices;
+
+    private Occluder(float[] vertices, int[] indices) {
+        this.vertices = vertices;
+        this.indices = indices;
+    }
+
+    public static Occluder build(FloatBuffer positions, IntBuffer indices, int firstIndex, int numIndices) {
+        int posBase = positions.position();
+        int indexBase = indices.position();
+        int[] remap = new int[positions.remaining() / 3];
+        Arrays.fill(remap, -1);
+        float[] vertices = new float[Math.min(remap.length, numIndices) * 3];
+        int[] occluderIndices = new int[numIndices];
+        int numVertices = 0;
+        for (int i = 0; i < numIndices; i++) {
+            int index = indices.get(indexBase + firstIndex + i);
+            if (remap[index] < 0) {
+                remap[index] = numVertices;
+                vertices[numVertices * 3] = positions.get(posBase + index * 3);
+                vertices[numVertices * 3 + 1] = positions.get(posBase + index * 3 + 1);
+                vertices[numVertices * 3 + 2] = positions.get(posBase + index * 3 + 2);
+                numVertices++;
+            }
+            occluderIndices[i] = remap[index];
+        }
+        return new Occluder(Arrays.copyOf(vertices, numVertices * 3), occluderIndices);
+    }
+
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+
+    public int getNumVertices() {
+        return vertices.length / 3;
+    }
+
+    public int getNumTriangles() {
+        return indices.length / 3;
+    }
+}
@@ -0,0 +1,472 @@
+package engine.graphics;
+
+import engine.items.complex.GameItem;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+public class OcclusionCuller {
+
+    public static final int DEFAULT_WIDTH = 256;
+
+    public static final int DEFAULT_HEIGHT = 128;
+
+    public static final int TILE_SIZE = 32;
+
+    private static final int TRIANGLE_SIZE_FLOATS = 9;
+
+    private static final int CLIP_VERTEX_SIZE_FLOATS = 4;
+
+    private static final int PARALLEL_THRESHOLD = 256;
+
+    private static final float MIN_TRIANGLE_AREA = 1e-8f;
+
+    private static final int SUBPIXEL_BITS = 8;
+
+    private static final float SUBPIXEL_SCALE = 1 << SUBPIXEL_BITS;
+
+    private static final long SUBPIXEL_HALF = 1L << (SUBPIXEL_BITS - 1);
+
+    private final int width;
+
+    private final int height;
+
+    private final int tilesX;
+
+    private final int tilesY;
+
+    private final float[][] levels;
+
+    private final int[] levelWidths;
+
+    private final int[] levelHeights;
+
+    private final int[][] bins;
+
+    private final int[] binCounts;
+
+    private final Matrix4f modelMatrix;
+
+    private final Matrix4f mvpMatrix;
+
+    private final float[] polygon;
+
+    private final float[] clippedPolygon;
+
+    private float[] clipVertices;
+
+    private float[] triangles;
+
+    private int numTriangles;
+
+    private int occluderTriangles;
+
+    private int testedMeshes;
+
+    private int occludedMeshes;
+
+    public OcclusionCuller() {
+        this(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+    }
+
+    public OcclusionCuller(int width, int height) {
+        this.width = width;
+        this.height = height;
+        tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+        int numLevels = 1;
+        while ((width >> (numLevels - 1)) > 1 || (height >> (numLevels - 1)) > 1) {
+            numLevels++;
+        }
+        levels = new float[numLevels][];
+        levelWidths = new int[numLevels];
+        levelHeights = new int[numLevels];
+        for (int i = 0; i < numLevels; i++) {
+            levelWidths[i] = Math.max(1, width >> i);
+            levelHeights[i] = Math.max(1, height >> i);
+            levels[i] = new float[levelWidths[i] * levelHeights[i]];
+        }
+
+        bins = new int[tilesX * tilesY][];
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] = new int[64];
+        }
+        binCounts = new int[tilesX * tilesY];
+        modelMatrix = new Matrix4f();
+        mvpMatrix = new Matrix4f();
+        polygon = new float[4 * CLIP_VERTEX_SIZE_FLOATS];
+        clippedPolygon = new float[4 * CLIP_VERTEX_SIZE_FLOATS];
+        clipVertices = new float[256 * CLIP_VERTEX_SIZE_FLOATS];
+        triangles = new float[1024 * TRIANGLE_SIZE_FLOATS];
+    }
+
+    public void cull(List<GameItem> gameItems, Matrix4f projViewMatrix) {
+        beginOccluders();
+        for (GameItem gameItem : gameItems) {
+            if (!gameItem.isOccluder()) {
+                continue;
+            }
+            Mesh[] meshes = gameItem.getMeshes();
+            gameItem.getModelMatrix(modelMatrix);
+            projViewMatrix.mul(modelMatrix, mvpMatrix);
+            for (int i = 0; i < meshes.length; i++) {
+                if (meshes[i].getOccluder() != null && gameItem.isInsideFrustum(i)) {
+                    addOccluder(meshes[i].getOccluder(), mvpMatrix);
+                }
+            }
+        }
+        rasterizeOccluders();
+
+        int numItems = gameItems.size();
+        testedMeshes = 0;
+        for (GameItem gameItem : gameItems) {
+            if (!gameItem.isOccluder()) {
+                for (int i = 0; i < gameItem.getMeshes().length; i++) {
+                    if (gameItem.isInsideFrustum(i)) {
+                        testedMeshes++;
+                    }
+                }
+            }
+        }
+        if (occluderTriangles == 0) {
+            occludedMeshes = 0;
+        } else if (numItems >= PARALLEL_THRESHOLD) {
+            occludedMeshes = IntStream.range(0, numItems).parallel()
+                    .map(i -> test(gameItems.get(i), projViewMatrix, new Matrix4f()))
+                    .sum();
+        } else {
+            Matrix4f mvp = new Matrix4f();
+            occludedMeshes = 0;
+            for (GameItem gameItem : gameItems) {
+                occludedMeshes += test(gameItem, projViewMatrix, mvp);
+            }
+        }
+    }
+
+    public void beginOccluders() {
+        numTriangles = 0;
+        Arrays.fill(binCounts, 0);
+    }
+
+    public void rasterizeOccluders() {
+        occluderTriangles = numTriangles;
+        Arrays.fill(levels[0], 1.0f);
+        IntStream.range(0, bins.length).parallel().forEach(this::rasterizeTile);
+        buildPyramid();
+    }
+
+    public void addOccluder(Occluder occluder, Matrix4f mvp) {
+        float[] vertices = occluder.getVertices();
+        int numVertices = occluder.getNumVertices();
+        if (clipVertices.length < numVertices * CLIP_VERTEX_SIZE_FLOATS) {
+            clipVertices = new float[numVertices * CLIP_VERTEX_SIZE_FLOATS];
+        }
+        for (int i = 0; i < numVertices; i++) {
+            float x = vertices[i * 3];
+            float y = vertices[i * 3 + 1];
+            float z = vertices[i * 3 + 2];
+            int c = i * CLIP_VERTEX_SIZE_FLOATS;
+            clipVertices[c] = mvp.m00() * x + mvp.m10() * y + mvp.m20() * z + mvp.m30();
+            clipVertices[c + 1] = mvp.m01() * x + mvp.m11() * y + mvp.m21() * z + mvp.m31();
+            clipVertices[c + 2] = mvp.m02() * x + mvp.m12() * y + mvp.m22() * z + mvp.m32();
+            clipVertices[c + 3] = mvp.m03() * x + mvp.m13() * y + mvp.m23() * z + mvp.m33();
+        }
+
+        int[] indices = occluder.getIndices();
+        for (int t = 0; t < indices.length; t += 3) {
+            for (int k = 0; k < 3; k++) {
+                System.arraycopy(clipVertices, indices[t + k] * CLIP_VERTEX_SIZE_FLOATS, polygon,
+                        k * CLIP_VERTEX_SIZE_FLOATS, CLIP_VERTEX_SIZE_FLOATS);
+            }
+            int numPoints = clipNear(polygon, clippedPolygon);
+            for (int k = 2; k < numPoints; k++) {
+                addTriangle(clippedPolygon, 0, (k - 1) * CLIP_VERTEX_SIZE_FLOATS, k * CLIP_VERTEX_SIZE_FLOATS);
+            }
+        }
+    }
+
+    private static int clipNear(float[] in, float[] out) {
+        int numPoints = 0;
+        for (int i = 0; i < 3; i++) {
+            int a = i * CLIP_VERTEX_SIZE_FLOATS;
+            int b = ((i + 1) % 3) * CLIP_VERTEX_SIZE_FLOATS;
+            float da = in[a + 2] + in[a + 3];
+            float db = in[b + 2] + in[b + 3];
+            if (da >= 0) {
+                System.arraycopy(in, a, out, numPoints++ * CLIP_VERTEX_SIZE_FLOATS, CLIP_VERTEX_SIZE_FLOATS);
+            }
+            if ((da >= 0) != (db >= 0)) {
+                float t = da / (da - db);
+                int o = numPoints++ * CLIP_VERTEX_SIZE_FLOATS;
+                for (int k = 0; k < CLIP_VERTEX_SIZE_FLOATS; k++) {
+                    out[o + k] = in[a + k] + (in[b + k] - in[a + k]) * t;
+                }
+            }
+        }
+        return numPoints;
+    }
+
+    private void addTriangle(float[] clip, int a, int b, int c) {
+        float x0 = toScreen(clip[a], clip[a + 3], width);
+        float y0 = toScreen(clip[a + 1], clip[a + 3], height);
+        float z0 = toDepth(clip[a + 2], clip[a + 3]);
+        float x1 = toScreen(clip[b], clip[b + 3], width);
+        float y1 = toScreen(clip[b + 1], clip[b + 3], height);
+        float z1 = toDepth(clip[b + 2], clip[b + 3]);
+        float x2 = toScreen(clip[c], clip[c + 3], width);
+        float y2 = toScreen(clip[c + 1], clip[c + 3], height);
+        float z2 = toDepth(clip[c + 2], clip[c + 3]);
+
+        float area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+        if (Math.abs(area) < MIN_TRIANGLE_AREA) {
+            return;
+        }
+        int minX = Math.max(0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int maxX = Math.min(width - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int minY = Math.max(0, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int maxY = Math.min(height - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        if (numTriangles * TRIANGLE_SIZE_FLOATS == triangles.length) {
+            triangles = Arrays.copyOf(triangles, triangles.length * 2);
+        }
+        int o = numTriangles * TRIANGLE_SIZE_FLOATS;
+        triangles[o] = x0;
+        triangles[o + 1] = y0;
+        triangles[o + 2] = z0;
+        if (area > 0) {
+            triangles[o + 3] = x1;
+            triangles[o + 4] = y1;
+            triangles[o + 5] = z1;
+            triangles[o + 6] = x2;
+            triangles[o + 7] = y2;
+            triangles[o + 8] = z2;
+        } else {
+            triangles[o + 3] = x2;
+            triangles[o + 4] = y2;
+            triangles[o + 5] = z2;
+            triangles[o + 6] = x1;
+            triangles[o + 7] = y1;
+            triangles[o + 8] = z1;
+        }
+
+        for (int ty = minY / TILE_SIZE; ty <= maxY / TILE_SIZE; ty++) {
+            for (int tx = minX / TILE_SIZE; tx <= maxX / TILE_SIZE; tx++) {
+                int tile = ty * tilesX + tx;
+                if (binCounts[tile] == bins[tile].length) {
+                    bins[tile] = Arrays.copyOf(bins[tile], binCounts[tile] * 2);
+                }
+                bins[tile][binCounts[tile]++] = numTriangles;
+            }
+        }
+        numTriangles++;
+    }
+
+    private static float toScreen(float v, float w, int size) {
+        return (v / w * 0.5f + 0.5f) * size;
+    }
+
+    private static float toDepth(float z, float w) {
+        return z / w * 0.5f + 0.5f;
+    }
+
+    private void rasterizeTile(int tile) {
+        int tileMinX = (tile % tilesX) * TILE_SIZE;
+        int tileMinY = (tile / tilesX) * TILE_SIZE;
+        int tileMaxX = Math.min(width, tileMinX + TILE_SIZE) - 1;
+        int tileMaxY = Math.min(height, tileMinY + TILE_SIZE) - 1;
+        float[] depth = levels[0];
+        int[] bin = bins[tile];
+
+        for (int k = 0; k < binCounts[tile]; k++) {
+            int o = bin[k] * TRIANGLE_SIZE_FLOATS;
+            float x0 = triangles[o];
+            float y0 = triangles[o + 1];
+            float z0 = triangles[o + 2];
+            float x1 = triangles[o + 3];
+            float y1 = triangles[o + 4];
+            float z1 = triangles[o + 5];
+            float x2 = triangles[o + 6];
+            float y2 = triangles[o + 7];
+            float z2 = triangles[o + 8];
+
+            int minX = Math.max(tileMinX, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+            int maxX = Math.min(tileMaxX, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+            int minY = Math.max(tileMinY, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+            int maxY = Math.min(tileMaxY, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+            if (minX > maxX || minY > maxY) {
+                continue;
+            }
+
+            float area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+            float invArea = 1.0f / area;
+            float dzdx = ((z1 - z0) * (y2 - y0) - (z2 - z0) * (y1 - y0)) * invArea;
+            float dzdy = ((z2 - z0) * (x1 - x0) - (z1 - z0) * (x2 - x0)) * invArea;
+
+            long fx0 = snap(x0);
+            long fy0 = snap(y0);
+            long fx1 = snap(x1);
+            long fy1 = snap(y1);
+            long fx2 = snap(x2);
+            long fy2 = snap(y2);
+            long a0 = fy1 - fy2;
+            long b0 = fx2 - fx1;
+            long a1 = fy2 - fy0;
+            long b1 = fx0 - fx2;
+            long a2 = fy0 - fy1;
+            long b2 = fx1 - fx0;
+            long bias0 = ownsEdge(a0, b0) ? 0 : -1;
+            long bias1 = ownsEdge(a1, b1) ? 0 : -1;
+            long bias2 = ownsEdge(a2, b2) ? 0 : -1;
+            long stepX0 = a0 << SUBPIXEL_BITS;
+            long stepX1 = a1 << SUBPIXEL_BITS;
+            long stepX2 = a2 << SUBPIXEL_BITS;
+
+            float px = minX + 0.5f;
+            long fpx = ((long) minX << SUBPIXEL_BITS) + SUBPIXEL_HALF;
+            for (int y = minY; y <= maxY; y++) {
+                float py = y + 0.5f;
+                long fpy = ((long) y << SUBPIXEL_BITS) + SUBPIXEL_HALF;
+                long w0 = b0 * (fpy - fy1) + a0 * (fpx - fx1) + bias0;
+                long w1 = b1 * (fpy - fy2) + a1 * (fpx - fx2) + bias1;
+                long w2 = b2 * (fpy - fy0) + a2 * (fpx - fx0) + bias2;
+                float z = z0 + dzdx * (px - x0) + dzdy * (py - y0);
+                int row = y * width;
+                for (int x = minX; x <= maxX; x++) {
+                    int i = x - minX;
+                    boolean inside = w0 + stepX0 * i >= 0 & w1 + stepX1 * i >= 0 & w2 + stepX2 * i >= 0;
+                    float d = depth[row + x];
+                    depth[row + x] = inside ? Math.min(d, z + dzdx * i) : d;
+                }
+            }
+        }
+    }
+
+    private static long snap(float coordinate) {
+        return (long) Math.floor(coordinate * SUBPIXEL_SCALE + 0.5f);
+    }
+
+    private static boolean ownsEdge(long a, long b) {
+        return a > 0 || (a == 0 && b > 0);
+    }
+
+    private void buildPyramid() {
+        for (int level = 1; level < levels.length; level++) {
+            float[] src = levels[level - 1];
+            float[] dst = levels[level];
+            int srcWidth = levelWidths[level - 1];
+            int srcHeight = levelHeights[level - 1];
+            int dstWidth = levelWidths[level];
+            int dstHeight = levelHeights[level];
+            for (int y = 0; y < dstHeight; y++) {
+                int sy0 = Math.min(y * 2, srcHeight - 1) * srcWidth;
+                int sy1 = Math.min(y * 2 + 1, srcHeight - 1) * srcWidth;
+                for (int x = 0; x < dstWidth; x++) {
+                    int sx0 = Math.min(x * 2, srcWidth - 1);
+                    int sx1 = Math.min(x * 2 + 1, srcWidth - 1);
+                    dst[y * dstWidth + x] = Math.max(Math.max(src[sy0 + sx0], src[sy0 + sx1]),
+                            Math.max(src[sy1 + sx0], src[sy1 + sx1]));
+                }
+            }
+        }
+    }
+
+    private int test(GameItem gameItem, Matrix4f projViewMatrix, Matrix4f mvp) {
+        if (gameItem.isOccluder()) {
+            return 0;
+        }
+        Mesh[] meshes = gameItem.getMeshes();
+        gameItem.getModelMatrix(mvp);
+        projViewMatrix.mul(mvp, mvp);
+        int occluded = 0;
+        for (int i = 0; i < meshes.length; i++) {
+            if (gameItem.isInsideFrustum(i) && isOccluded(meshes[i].getBoundsMin(), meshes[i].getBoundsMax(), mvp)) {
+                gameItem.setInsideFrustum(i, false);
+                occluded++;
+            }
+        }
+        return occluded;
+    }
+
+    public boolean isOccluded(Vector3f boundsMin, Vector3f boundsMax, Matrix4f mvp) {
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        float minZ = Float.POSITIVE_INFINITY;
+        for (int corner = 0; corner < 8; corner++) {
+            float x = (corner & 1) == 0 ? boundsMin.x : boundsMax.x;
+            float y = (corner & 2) == 0 ? boundsMin.y : boundsMax.y;
+            float z = (corner & 4) == 0 ? boundsMin.z : boundsMax.z;
+            float cz = mvp.m02() * x + mvp.m12() * y + mvp.m22() * z + mvp.m32();
+            float cw = mvp.m03() * x + mvp.m13() * y + mvp.m23() * z + mvp.m33();
+            if (cz + cw < 0) {
+                return false;
+            }
+            float sx = toScreen(mvp.m00() * x + mvp.m10() * y + mvp.m20() * z + mvp.m30(), cw, width);
+            float sy = toScreen(mvp.m01() * x + mvp.m11() * y + mvp.m21() * z + mvp.m31(), cw, height);
+            minX = Math.min(minX, sx);
+            maxX = Math.max(maxX, sx);
+            minY = Math.min(minY, sy);
+            maxY = Math.max(maxY, sy);
+            minZ = Math.min(minZ, toDepth(cz, cw));
+        }
+
+        int x0 = Math.max(0, (int) Math.floor(minX));
+        int x1 = Math.min(width - 1, (int) Math.floor(maxX));
+        int y0 = Math.max(0, (int) Math.floor(minY));
+        int y1 = Math.min(height - 1, (int) Math.floor(maxY));
+        if (x0 > x1 || y0 > y1) {
+            return false;
+        }
+
+        int extent = Math.max(x1 - x0, y1 - y0);
+        int level = 0;
+        while ((extent >> level) > 1 && level < levels.length - 1) {
+            level++;
+        }
+        float[] depth = levels[level];
+        int levelWidth = levelWidths[level];
+        float maxDepth = 0;
+        for (int y = y0 >> level; y <= y1 >> level; y++) {
+            for (int x = x0 >> level; x <= x1 >> level; x++) {
+                maxDepth = Math.max(maxDepth, depth[y * levelWidth + x]);
+            }
+        }
+        return minZ > maxDepth;
+    }
+
+    public float getDepth(int level, int x, int y) {
+        return levels[level][y * levelWidths[level] + x];
+    }
+
+    public int getNumLevels() {
+        return levels.length;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getOccluderTriangles() {
+        return occluderTriangles;
+    }
+
+    public int getTestedMeshes() {
+        return testedMeshes;
+    }
+
+    public int getOccludedMeshes() {
+        return occludedMeshes;
+    }
+}
@@ -0,0 +1,246 @@
+package engine.graphics;
+
+import engine.items.complex.GameItem;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL33.GL_ANY_SAMPLES_PASSED;
+
+public class OcclusionQueries {
+
+    public static final int MIN_QUERY_INDICES = 3 * 2048;
+
+    private static final int MAX_IDLE_FRAMES = 120;
+
+    private static final float CAMERA_MARGIN = 0.1f;
+
+    private final int target;
+
+    private final boolean conditionalRender;
+
+    private final Map<GameItem, QueryState[]> states;
+
+    private final List<GameItem> hiddenItems;
+
+    private final List<Mesh> hiddenMeshes;
+
+    private final List<QueryState> hiddenStates;
+
+    private final Matrix4f modelMatrix;
+
+    private final Vector3f boundsMin;
+
+    private final Vector3f boundsMax;
+
+    private boolean active;
+
+    private int frame;
+
+    private int issuedQueries;
+
+    private int skippedDraws;
+
+    public OcclusionQueries() {
+        GLCapabilities caps = GL.getCapabilities();
+        target = caps.OpenGL33 || caps.GL_ARB_occlusion_query2 ? GL_ANY_SAMPLES_PASSED : GL_SAMPLES_PASSED;
+        conditionalRender = caps.OpenGL30;
+        states = new IdentityHashMap<>();
+        hiddenItems = new ArrayList<>();
+        hiddenMeshes = new ArrayList<>();
+        hiddenStates = new ArrayList<>();
+        modelMatrix = new Matrix4f();
+        boundsMin = new Vector3f();
+        boundsMax = new Vector3f();
+    }
+
+    public void beginFrame() {
+        frame++;
+        issuedQueries = 0;
+        skippedDraws = 0;
+        hiddenItems.clear();
+        hiddenMeshes.clear();
+        hiddenStates.clear();
+
+        Iterator<QueryState[]> iterator = states.values().iterator();
+        while (iterator.hasNext()) {
+            QueryState[] itemStates = iterator.next();
+            boolean used = false;
+            for (QueryState state : itemStates) {
+                if (state == null) {
+                    continue;
+                }
+                if (state.pending && glGetQueryObjecti(state.queryId, GL_QUERY_RESULT_AVAILABLE) != GL_FALSE) {
+                    state.visible = glGetQueryObjecti(state.queryId, GL_QUERY_RESULT) != 0;
+                    state.pending = false;
+                }
+                used |= frame - state.lastFrame <= MAX_IDLE_FRAMES;
+            }
+            if (!used) {
+                for (QueryState state : itemStates) {
+                    if (state != null) {
+                        glDeleteQueries(state.queryId);
+                    }
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    public boolean beginDraw(GameItem gameItem, Mesh mesh) {
+        if (mesh.getVertexCount() < MIN_QUERY_INDICES) {
+            return true;
+        }
+        QueryState state = getState(gameItem, mesh);
+        state.lastFrame = frame;
+        if (!state.visible) {
+            hiddenItems.add(gameItem);
+            hiddenMeshes.add(mesh);
+            hiddenStates.add(state);
+            skippedDraws++;
+            return false;
+        }
+        if (!state.pending) {
+            glBeginQuery(target, state.queryId);
+            state.pending = true;
+            active = true;
+            issuedQueries++;
+        }
+        return true;
+    }
+
+    public void endDraw() {
+        if (active) {
+            glEndQuery(target);
+            active = false;
+        }
+    }
+
+    public void renderHidden(Vector3f cameraPosition, BiConsumer<GameItem, Mesh> boundsConsumer,
+                             BiConsumer<GameItem, Mesh> drawConsumer) {
+        int numHidden = hiddenItems.size();
+        if (numHidden == 0) {
+            return;
+        }
+
+        boolean cullFace = glIsEnabled(GL_CULL_FACE);
+        glDisable(GL_CULL_FACE);
+        glColorMask(false, false, false, false);
+        glDepthMask(false);
+        for (int i = 0; i < numHidden; i++) {
+            QueryState state = hiddenStates.get(i);
+            if (containsCamera(hiddenItems.get(i), hiddenMeshes.get(i), cameraPosition)) {
+                state.visible = true;
+                continue;
+            }
+            if (state.pending) {
+                continue;
+            }
+            glBeginQuery(target, state.queryId);
+            boundsConsumer.accept(hiddenItems.get(i), hiddenMeshes.get(i));
+            glEndQuery(target);
+            state.pending = true;
+            issuedQueries++;
+        }
+        glColorMask(true, true, true, true);
+        glDepthMask(true);
+        if (cullFace) {
+            glEnable(GL_CULL_FACE);
+        }
+
+        for (int i = 0; i < numHidden; i++) {
+            QueryState state = hiddenStates.get(i);
+            if (state.visible) {
+                drawConsumer.accept(hiddenItems.get(i), hiddenMeshes.get(i));
+                skippedDraws--;
+            } else if (conditionalRender && state.pending) {
+                glBeginConditionalRender(state.queryId, GL_QUERY_WAIT);
+                drawConsumer.accept(hiddenItems.get(i), hiddenMeshes.get(i));
+                glEndConditionalRender();
+            }
+        }
+    }
+
+    private boolean containsCamera(GameItem gameItem, Mesh mesh, Vector3f cameraPosition) {
+        Vector3f min = mesh.getBoundsMin();
+        Vector3f max = mesh.getBoundsMax();
+        gameItem.getModelMatrix(modelMatrix).transformAab(min.x, min.y, min.z, max.x, max.y, max.z, boundsMin, boundsMax);
+        return cameraPosition.x >= boundsMin.x - CAMERA_MARGIN && cameraPosition.x <= boundsMax.x + CAMERA_MARGIN
+                && cameraPosition.y >= boundsMin.y - CAMERA_MARGIN && cameraPosition.y <= boundsMax.y + CAMERA_MARGIN
+                && cameraPosition.z >= boundsMin.z - CAMERA_MARGIN && cameraPosition.z <= boundsMax.z + CAMERA_MARGIN;
+    }
+
+    private QueryState getState(GameItem gameItem, Mesh mesh) {
+        Mesh[] meshes = gameItem.getMeshes();
+        QueryState[] itemStates = states.get(gameItem);
+        if (itemStates == null || itemStates.length != meshes.length) {
+            if (itemStates != null) {
+                for (QueryState state : itemStates) {
+                    if (state != null) {
+                        glDeleteQueries(state.queryId);
+                    }
+                }
+            }
+            itemStates = new QueryState[meshes.length];
+            states.put(gameItem, itemStates);
+        }
+        int meshIdx = 0;
+        while (meshes[meshIdx] != mesh) {
+            meshIdx++;
+        }
+        if (itemStates[meshIdx] == null) {
+            itemStates[meshIdx] = new QueryState(glGenQueries());
+        }
+        return itemStates[meshIdx];
+    }
+
+    public boolean isConditionalRender() {
+        return conditionalRender;
+    }
+
+    public int getIssuedQueries() {
+        return issuedQueries;
+    }
+
+    public int getSkippedDraws() {
+        return skippedDraws;
+    }
+
+    public void cleanup() {
+        for (QueryState[] itemStates : states.values()) {
+            for (QueryState state : itemStates) {
+                if (state != null) {
+                    glDeleteQueries(state.queryId);
+                }
+            }
+        }
+        states.clear();
+    }
+
+    private static class QueryState {
+
+        private final int queryId;
+
+        private boolean visible;
+
+        private boolean pending;
+
+        private int lastFrame;
+
+        QueryState(int queryId) {
+            this.queryId = queryId;
+            visible = true;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package engine.graphics;
+
+import engine.items.complex.GameItem;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+public class RenderQueue {
+
+    private static final int DEPTH_BITS = 16;
+
+    private static final int MESH_BITS = 16;
+
+    private static final int TEXTURE_BITS = 14;
+
+    private static final int MATERIAL_BITS = 14;
+
+    private static final int SHADER_BITS = 4;
+
+    private static final int MESH_SHIFT = DEPTH_BITS;
+
+    private static final int TEXTURE_SHIFT = MESH_SHIFT + MESH_BITS;
+
+    private static final int MATERIAL_SHIFT = TEXTURE_SHIFT + TEXTURE_BITS;
+
+    private static final int SHADER_SHIFT = MATERIAL_SHIFT + MATERIAL_BITS;
+
+    private static final int RADIX_BITS = 16;
+
+    private static final int RADIX_MASK = (1 << RADIX_BITS) - 1;
+
+    private final Map<Material, Integer> materialIds;
+
+    private final int[] histogram;
+
+    private long[] keys;
+
+    private long[] sortedKeys;
+
+    private int[] entries;
+
+    private int[] sortedEntries;
+
+    private Mesh[] meshes;
+
+    private GameItem[] gameItems;
+
+    private int[] lods;
+
+    private int size;
+
+    private int drawCalls;
+
+    private int materialChanges;
+
+    private int textureChanges;
+
+    private int meshChanges;
+
+    private int unsortedStateChanges;
+
+    public RenderQueue() {
+        this(256);
+    }
+
+    public RenderQueue(int capacity) {
+        materialIds = new IdentityHashMap<>();
+        histogram = new int[1 << RADIX_BITS];
+        keys = new long[capacity];
+        sortedKeys = new long[capacity];
+        entries = new int[capacity];
+        sortedEntries = new int[capacity];
+        meshes = new Mesh[capacity];
+        gameItems = new GameItem[capacity];
+        lods = new int[capacity];
+    }
+
+    public void clear() {
+        Arrays.fill(meshes, 0, size, null);
+        Arrays.fill(gameItems, 0, size, null);
+        materialIds.clear();
+        size = 0;
+    }
+
+    public void add(int shader, Mesh mesh, GameItem gameItem, int lod, float depth) {
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            sortedKeys = new long[capacity];
+            entries = Arrays.copyOf(entries, capacity);
+            sortedEntries = new int[capacity];
+            meshes = Arrays.copyOf(meshes, capacity);
+            gameItems = Arrays.copyOf(gameItems, capacity);
+            lods = Arrays.copyOf(lods, capacity);
+        }
+        Material material = mesh.getMaterial();
+        Texture texture = material.getTexture();
+        long quantizedDepth = (long) (Math.max(0.0f, Math.min(1.0f, depth)) * ((1 << DEPTH_BITS) - 1));
+        keys[size] = field(shader, SHADER_BITS) << SHADER_SHIFT
+                | field(getMaterialId(material), MATERIAL_BITS) << MATERIAL_SHIFT
+                | field(texture != null ? texture.getId() : 0, TEXTURE_BITS) << TEXTURE_SHIFT
+                | field(mesh.getVaoId(), MESH_BITS) << MESH_SHIFT
+                | quantizedDepth;
+        entries[size] = size;
+        meshes[size] = mesh;
+        gameItems[size] = gameItem;
+        lods[size] = lod;
+        size++;
+    }
+
+    private static long field(int value, int bits) {
+        return value & ((1L << bits) - 1);
+    }
+
+    private int getMaterialId(Material material) {
+        Integer id = materialIds.get(material);
+        if (id == null) {
+            id = materialIds.size() + 1;
+            materialIds.put(material, id);
+        }
+        return id;
+    }
+
+    public void sort() {
+        unsortedStateChanges = countStateChanges();
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(histogram, 0);
+            for (int i = 0; i < size; i++) {
+                histogram[(int) (keys[i] >>> shift) & RADIX_MASK]++;
+            }
+            if (size == 0 || histogram[(int) (keys[0] >>> shift) & RADIX_MASK] == size) {
+                continue;
+            }
+            int offset = 0;
+            for (int digit = 0; digit < histogram.length; digit++) {
+                int count = histogram[digit];
+                histogram[digit] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < size; i++) {
+                int position = histogram[(int) (keys[i] >>> shift) & RADIX_MASK]++;
+                sortedKeys[position] = keys[i];
+                sortedEntries[position] = entries[i];
+            }
+            long[] swapKeys = keys;
+            keys = sortedKeys;
+            sortedKeys = swapKeys;
+            int[] swapEntries = entries;
+            entries = sortedEntries;
+            sortedEntries = swapEntries;
+        }
+    }
+
+    private int countStateChanges() {
+        int changes = 0;
+        Mesh previous = null;
+        for (int i = 0; i < size; i++) {
+            Mesh mesh = meshes[entries[i]];
+            if (previous == null || mesh.getMaterial() != previous.getMaterial()) {
+                changes++;
+            }
+            if (previous == null || !sameTextures(mesh.getMaterial(), previous.getMaterial())) {
+                changes++;
+            }
+            if (mesh != previous) {
+                changes++;
+            }
+            previous = mesh;
+        }
+        return changes;
+    }
+
+    private static boolean sameTextures(Material a, Material b) {
+        return a.getTexture() == b.getTexture() && a.getNormalMap() == b.getNormalMap();
+    }
+
+    public int submit(Handler handler) {
+        drawCalls = 0;
+        materialChanges = 0;
+        textureChanges = 0;
+        meshChanges = 0;
+        int renderedIndices = 0;
+        Mesh previous = null;
+        for (int i = 0; i < size; i++) {
+            int entry = entries[i];
+            Mesh mesh = meshes[entry];
+            if (previous == null || mesh.getMaterial() != previous.getMaterial()) {
+                handler.bindMaterial(mesh);
+                materialChanges++;
+            }
+            if (previous == null || !sameTextures(mesh.getMaterial(), previous.getMaterial())) {
+                mesh.bindTextures();
+                textureChanges++;
+            }
+            if (mesh != previous) {
+                mesh.bindVertexArray();
+                handler.bindMesh(mesh);
+                meshChanges++;
+            }
+            previous = mesh;
+            int indices = handler.draw(mesh, gameItems[entry], lods[entry]);
+            if (indices > 0) {
+                renderedIndices += indices;
+                drawCalls++;
+            }
+        }
+        return renderedIndices;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getKey(int index) {
+        return keys[index];
+    }
+
+    public Mesh getMesh(int index) {
+        return meshes[entries[index]];
+    }
+
+    public GameItem getGameItem(int index) {
+        return gameItems[entries[index]];
+    }
+
+    public int getLod(int index) {
+        return lods[entries[index]];
+    }
+
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    public int getMaterialChanges() {
+        return materialChanges;
+    }
+
+    public int getTextureChanges() {
+        return textureChanges;
+    }
+
+    public int getMeshChanges() {
+        return meshChanges;
+    }
+
+    public int getStateChanges() {
+        return materialChanges + textureChanges + meshChanges;
+    }
+
+    public int getUnsortedStateChanges() {
+        return unsortedStateChanges;
+    }
+
+    public interface Handler {
+
+        void bindMaterial(Mesh mesh);
+
+        void bindMesh(Mesh mesh);
+
+        int draw(Mesh mesh, GameItem gameItem, int lod);
+    }
+}
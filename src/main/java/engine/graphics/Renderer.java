@@ -8,9 +8,15 @@ import engine.graphics.lights.DirectionalLight;
 import engine.graphics.lights.PointLight;
 import engine.items.complex.GameItem;
 import engine.items.complex.SkyBox;
+import engine.items.complex.TransformStore;
 import engine.items.simple.Part;
 import engine.items.simple.Solid;
+import engine.loaders.AssetLoader;
 import engine.loaders.MeshLoader;
+import engine.loaders.TextureData;
+import engine.terrain.Terrain;
+import engine.terrain.TerrainChunk;
+import org.joml.FrustumIntersection;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
@@ -19,6 +25,7 @@ import org.lwjgl.opengl.GL11;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL13.*;
@@ -28,6 +35,10 @@ import static org.lwjgl.opengl.GL30.*;
 
 public class Renderer {
 
+    private static final float TAN_HALF_FOV = (float) Math.tan(Window.FOV / 2);
+
+    private static final int GEOMETRY_PASS = 0;
+
     private final Transformation transformation;
 
     private Shader skyBoxShader;
@@ -52,16 +63,81 @@ public class Renderer {
 
     private Matrix4f bufferPassModelMatrix;
 
+    private OcclusionQueries occlusionQueries;
+
+    private OcclusionQueries activeQueries;
+
+    private final RenderQueue renderQueue = new RenderQueue();
+
+    private final RenderQueue.Handler geometryHandler = new RenderQueue.Handler() {
+        @Override
+        public void bindMaterial(Mesh mesh) {
+            gBufferShader.setUniform("material", mesh.getMaterial());
+            Texture text = mesh.getMaterial().getTexture();
+            if (text != null) {
+                gBufferShader.setUniform("numCols", text.getNumCols());
+                gBufferShader.setUniform("numRows", text.getNumRows());
+            }
+        }
+
+        @Override
+        public void bindMesh(Mesh mesh) {
+            setVertexFormatUniforms(mesh);
+        }
+
+        @Override
+        public int draw(Mesh mesh, GameItem gameItem, int lod) {
+            if (activeQueries != null && !activeQueries.beginDraw(gameItem, mesh)) {
+                return 0;
+            }
+            int renderedIndices = mesh.draw(gameItem, lod, Renderer.this::setItemUniforms, meshletCuller);
+            if (activeQueries != null) {
+                activeQueries.endDraw();
+            }
+            return renderedIndices;
+        }
+    };
+
+    private Mesh boundsMesh;
+
+    private final Matrix4f boundsMatrix = new Matrix4f();
+
     private final Vector4f tmpVec;
 
+    private final Vector3f tmpCenter;
+
+    private final Matrix4f projViewMatrix;
+
+    private final FrustumIntersection frustum;
+
+    private final FrustumCuller frustumCuller;
+
+    private final MeshletCuller meshletCuller;
+
+    private final OcclusionCuller occlusionCuller;
+
+    private final List<TerrainChunk> visibleChunks;
+
+    private int renderedTriangles;
+
+    private int refittedItems;
+
     public Renderer() {
         transformation = new Transformation();
         specularPower = 10f;
         filteredItems = new ArrayList<>();
         tmpVec = new Vector4f();
+        tmpCenter = new Vector3f();
+        projViewMatrix = new Matrix4f();
+        frustum = new FrustumIntersection();
+        frustumCuller = new FrustumCuller();
+        meshletCuller = new MeshletCuller();
+        occlusionCuller = new OcclusionCuller();
+        visibleChunks = new ArrayList<>();
     }
 
-    public void init(Window window) throws Exception {
+    public CompletableFuture<Void> init(Window window, AssetLoader assetLoader) throws Exception {
+        TextureData.setCompressionEnabled(Texture.isCompressionSupported());
         gBuffer = new GBuffer(window);
         sceneBuffer = new SceneBuffer(window);
         setupSkyBoxShader();
@@ -71,16 +147,33 @@ public class Renderer {
         setupFogShader();
 
         bufferPassModelMatrix = new Matrix4f();
-        bufferPassMesh = MeshLoader.load("models/buffer.obj", "models")[0];
+        occlusionQueries = new OcclusionQueries();
+        boundsMesh = createBoundsMesh();
+        return assetLoader.loadMeshes("models/buffer.obj", "models", MeshLoader.DEFAULT_FLAGS, VertexFormat.STATIC)
+                .thenAccept(meshes -> bufferPassMesh = meshes[0]);
     }
 
     public void render(Window window, Camera camera, Scene scene) {
         clear();
 
+        renderedTriangles = 0;
+
         glViewport(0, 0, window.getWidth(), window.getHeight());
 
         window.updateProjectionMatrix();
 
+        scene.applyCommands();
+
+        TransformStore.getInstance().updateMatrices();
+        refittedItems = scene.refitSpatialIndex(TransformStore.getInstance());
+
+        window.getProjectionMatrix().mul(camera.getViewMatrix(), projViewMatrix);
+        frustum.set(projViewMatrix);
+        frustumCuller.cull(scene, window.getWindowOptions().frustumCulling ? frustum : null);
+        if (window.getWindowOptions().occlusionCulling) {
+            occlusionCuller.cull(frustumCuller.getVisibleItems(), projViewMatrix);
+        }
+
         renderGeometry(window, camera, scene);
 
         initLightRendering();
@@ -188,6 +281,9 @@ public class Renderer {
         gBufferShader.createUniform("jointsMatrix");
         gBufferShader.createUniform("numCols");
         gBufferShader.createUniform("numRows");
+        gBufferShader.createUniform("positionOffset");
+        gBufferShader.createUniform("positionScale");
+        gBufferShader.createUniform("packedNormals");
     }
 
     private void setupDirLightShader() throws Exception {
@@ -273,10 +369,23 @@ public class Renderer {
         gBufferShader.setUniform("texture_sampler", 0);
         gBufferShader.setUniform("normalMap", 1);
 
-        renderNonInstancedMeshes(scene);
+        boolean queries = window.getWindowOptions().occlusionQueries;
+        if (queries) {
+            occlusionQueries.beginFrame();
+        }
+
+        FrustumIntersection cullingFrustum = window.getWindowOptions().frustumCulling ? frustum : null;
+        meshletCuller.update(cullingFrustum, camera.getPosition());
+        renderNonInstancedMeshes(scene, camera, queries ? occlusionQueries : null);
+
+        renderTerrain(scene, camera, cullingFrustum);
 
         renderInstancedMeshes(scene, viewMatrix);
 
+        if (queries) {
+            renderHiddenMeshes(camera);
+        }
+
         gBufferShader.unbind();
 
         glEnable(GL_BLEND);
@@ -457,25 +566,121 @@ public class Renderer {
         }
     }
 
-    private void renderNonInstancedMeshes(Scene scene) {
+    private float projectedSize(Mesh mesh, GameItem gameItem, Camera camera) {
+        return projectedSize(mesh, gameItem, camera.getPosition().distance(FrustumCuller.getWorldCenter(mesh, gameItem, tmpCenter)));
+    }
+
+    private float projectedSize(Mesh mesh, GameItem gameItem, float distance) {
+        float radius = mesh.getBoundingRadius() * gameItem.getWorldScale();
+        if (distance <= radius) {
+            return Float.MAX_VALUE;
+        }
+        return radius / (distance * TAN_HALF_FOV);
+    }
+
+    private void renderNonInstancedMeshes(Scene scene, Camera camera, OcclusionQueries occlusionQueries) {
         gBufferShader.setUniform("isInstanced", 0);
 
+        renderQueue.clear();
         Map<Mesh, List<GameItem>> mapMeshes = scene.getGameMeshes();
-        for (Mesh mesh : mapMeshes.keySet()) {
-            gBufferShader.setUniform("material", mesh.getMaterial());
-
-            Texture text = mesh.getMaterial().getTexture();
-            if (text != null) {
-                gBufferShader.setUniform("numCols", text.getNumCols());
-                gBufferShader.setUniform("numRows", text.getNumRows());
+        for (Map.Entry<Mesh, List<GameItem>> entry : mapMeshes.entrySet()) {
+            Mesh mesh = entry.getKey();
+            for (GameItem gameItem : entry.getValue()) {
+                if (gameItem.isInsideFrustum(mesh)) {
+                    float distance = camera.getPosition().distance(FrustumCuller.getWorldCenter(mesh, gameItem, tmpCenter));
+                    renderQueue.add(GEOMETRY_PASS, mesh, gameItem, mesh.selectLod(projectedSize(mesh, gameItem, distance)),
+                            distance / Window.Z_FAR);
+                }
             }
+        }
+        renderQueue.sort();
 
-            mesh.renderList(mapMeshes.get(mesh), (GameItem gameItem) -> {
-                        gBufferShader.setUniform("selectedNonInstanced", gameItem.isSelected() ? 1.0f : 0.0f);
-                        Matrix4f modelMatrix = transformation.buildModelMatrix(gameItem);
-                        gBufferShader.setUniform("modelNonInstancedMatrix", modelMatrix);
-                    }
-            );
+        activeQueries = occlusionQueries;
+        renderedTriangles += renderQueue.submit(geometryHandler) / 3;
+        activeQueries = null;
+        renderQueue.clear();
+
+        glBindVertexArray(0);
+        glBindTexture(GL_TEXTURE_2D, 0);
+    }
+
+    private void renderHiddenMeshes(Camera camera) {
+        gBufferShader.setUniform("isInstanced", 0);
+
+        occlusionQueries.renderHidden(camera.getPosition(), (gameItem, mesh) -> {
+            Vector3f min = mesh.getBoundsMin();
+            Vector3f max = mesh.getBoundsMax();
+            gameItem.getModelMatrix(boundsMatrix).translate(min).scale(max.x - min.x, max.y - min.y, max.z - min.z);
+            setVertexFormatUniforms(boundsMesh);
+            gBufferShader.setUniform("modelNonInstancedMatrix", boundsMatrix);
+            boundsMesh.render();
+        }, (gameItem, mesh) -> {
+            setMeshUniforms(mesh);
+            setItemUniforms(gameItem);
+            int lod = mesh.selectLod(projectedSize(mesh, gameItem, camera));
+            mesh.render(lod);
+            renderedTriangles += mesh.getLodVertexCount(lod) / 3;
+        });
+    }
+
+    private void setMeshUniforms(Mesh mesh) {
+        gBufferShader.setUniform("material", mesh.getMaterial());
+        setVertexFormatUniforms(mesh);
+
+        Texture text = mesh.getMaterial().getTexture();
+        if (text != null) {
+            gBufferShader.setUniform("numCols", text.getNumCols());
+            gBufferShader.setUniform("numRows", text.getNumRows());
+        }
+    }
+
+    private void setItemUniforms(GameItem gameItem) {
+        gBufferShader.setUniform("selectedNonInstanced", gameItem.isSelected() ? 1.0f : 0.0f);
+        Matrix4f modelMatrix = transformation.buildModelMatrix(gameItem);
+        gBufferShader.setUniform("modelNonInstancedMatrix", modelMatrix);
+    }
+
+    private static Mesh createBoundsMesh() {
+        float[] positions = new float[]{
+                0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0,
+                0, 0, 1, 1, 0, 1, 1, 1, 1, 0, 1, 1
+        };
+        int[] indices = new int[]{
+                0, 2, 1, 0, 3, 2,
+                4, 5, 6, 4, 6, 7,
+                0, 1, 5, 0, 5, 4,
+                3, 6, 2, 3, 7, 6,
+                0, 4, 7, 0, 7, 3,
+                1, 2, 6, 1, 6, 5
+        };
+        Mesh mesh = new Mesh(positions, new float[8 * 2], new float[8 * 3], indices);
+        mesh.setMaterial(new Material());
+        return mesh;
+    }
+
+    private void renderTerrain(Scene scene, Camera camera, FrustumIntersection cullingFrustum) {
+        Terrain terrain = scene.getTerrain();
+        if (terrain == null) {
+            return;
+        }
+        gBufferShader.setUniform("isInstanced", 0);
+        gBufferShader.setUniform("selectedNonInstanced", 0.0f);
+        gBufferShader.setUniform("material", terrain.getMaterial());
+        Texture text = terrain.getMaterial().getTexture();
+        if (text != null) {
+            gBufferShader.setUniform("numCols", text.getNumCols());
+            gBufferShader.setUniform("numRows", text.getNumRows());
+        }
+
+        terrain.update(camera.getPosition());
+        visibleChunks.clear();
+        terrain.selectChunks(cullingFrustum, camera.getPosition(), visibleChunks);
+        for (TerrainChunk chunk : visibleChunks) {
+            Mesh mesh = chunk.getMesh();
+            setVertexFormatUniforms(mesh);
+            gBufferShader.setUniform("modelNonInstancedMatrix", chunk.getModelMatrix());
+            mesh.render(chunk.getLod());
+            renderedTriangles += mesh.getLodVertexCount(chunk.getLod()) / 3;
         }
     }
 
@@ -484,6 +689,9 @@ public class Renderer {
 
         Map<InstancedMesh, List<GameItem>> mapMeshes = scene.getGameInstancedMeshes();
         for (InstancedMesh mesh : mapMeshes.keySet()) {
+            if (mapMeshes.get(mesh).isEmpty()) {
+                continue;
+            }
             Texture text = mesh.getMaterial().getTexture();
             if (text != null) {
                 gBufferShader.setUniform("numCols", text.getNumCols());
@@ -491,10 +699,11 @@ public class Renderer {
             }
 
             gBufferShader.setUniform("material", mesh.getMaterial());
+            setVertexFormatUniforms(mesh);
 
             filteredItems.clear();
             for (GameItem gameItem : mapMeshes.get(mesh)) {
-                if (gameItem.isInsideFrustum()) {
+                if (gameItem.isInsideFrustum(mesh)) {
                     filteredItems.add(gameItem);
                 }
             }
@@ -503,6 +712,79 @@ public class Renderer {
         }
     }
 
+    private void setVertexFormatUniforms(Mesh mesh) {
+        gBufferShader.setUniform("positionOffset", mesh.getPositionOffset());
+        gBufferShader.setUniform("positionScale", mesh.getPositionScale());
+        gBufferShader.setUniform("packedNormals", mesh.getVertexFormat().isPackedAttributes() ? 1 : 0);
+    }
+
+    public String getFrameStats() {
+        return String.format("%d trojúhelníků, %d volání kreslení, %d/%d změn stavu, %d matic, %d ořezáno, "
+                        + "%d zakryto, %d/%d meshletů ořezáno",
+                renderedTriangles, getDrawCalls(), getStateChanges(), getUnsortedStateChanges(), getRecomputedMatrices(),
+                getCulledMeshes(), getOccludedMeshes(), getCulledMeshlets(), getTestedMeshlets());
+    }
+
+    public int getRenderedTriangles() {
+        return renderedTriangles;
+    }
+
+    public int getRecomputedMatrices() {
+        return TransformStore.getInstance().getRecomputedMatrices();
+    }
+
+    public int getRefittedItems() {
+        return refittedItems;
+    }
+
+    public int getVisibleMeshes() {
+        return frustumCuller.getVisibleMeshes();
+    }
+
+    public int getCulledMeshes() {
+        return frustumCuller.getCulledMeshes();
+    }
+
+    public int getOccluderTriangles() {
+        return occlusionCuller.getOccluderTriangles();
+    }
+
+    public int getOcclusionTestedMeshes() {
+        return occlusionCuller.getTestedMeshes();
+    }
+
+    public int getOccludedMeshes() {
+        return occlusionCuller.getOccludedMeshes();
+    }
+
+    public int getDrawCalls() {
+        return renderQueue.getDrawCalls();
+    }
+
+    public int getStateChanges() {
+        return renderQueue.getStateChanges();
+    }
+
+    public int getUnsortedStateChanges() {
+        return renderQueue.getUnsortedStateChanges();
+    }
+
+    public int getIssuedOcclusionQueries() {
+        return occlusionQueries.getIssuedQueries();
+    }
+
+    public int getQuerySkippedDraws() {
+        return occlusionQueries.getSkippedDraws();
+    }
+
+    public int getTestedMeshlets() {
+        return meshletCuller.getTestedMeshlets();
+    }
+
+    public int getCulledMeshlets() {
+        return meshletCuller.getCulledMeshlets();
+    }
+
     public void cleanup() {
         if (skyBoxShader != null) {
             skyBoxShader.cleanup();
@@ -522,5 +804,12 @@ public class Renderer {
         if (bufferPassMesh != null) {
             bufferPassMesh.cleanUp();
         }
+        if (occlusionQueries != null) {
+            occlusionQueries.cleanup();
+        }
+        if (boundsMesh != null) {
+            boundsMesh.cleanUp();
+        }
+        meshletCuller.cleanup();
     }
 }
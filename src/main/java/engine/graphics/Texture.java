@@ -1,61 +1,150 @@
 package engine.graphics;
 
-import engine.utils.FileUtils;
+import engine.loaders.TextureData;
+import org.lwjgl.opengl.GL;
 import org.lwjgl.system.MemoryStack;
 
 import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
 
 import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
+import static org.lwjgl.opengl.GL13.glCompressedTexImage2D;
 import static org.lwjgl.opengl.GL30.glGenerateMipmap;
-import static org.lwjgl.stb.STBImage.stbi_image_free;
-import static org.lwjgl.stb.STBImage.stbi_load_from_memory;
 import static org.lwjgl.system.MemoryStack.stackPush;
 
 public class Texture {
 
-    private final int id;
+    private static final int PLACEHOLDER_SIZE = 2;
 
-    private final int width;
+    private static int placeholderId;
 
-    private final int height;
+    private int id;
+
+    private int width;
+
+    private int height;
+
+    private long sizeBytes;
+
+    private int numCols = 1;
+
+    private int numRows = 1;
+
+    private boolean resident;
+
+    private boolean released;
 
     public Texture(String fileName) throws Exception {
-        this(FileUtils.ioResourceToByteBuffer(fileName, 1024));
+        TextureData textureData = TextureData.load(fileName);
+        try {
+            upload(textureData);
+        } finally {
+            textureData.free();
+        }
     }
 
-    public Texture(ByteBuffer imageData) {
-        try (MemoryStack stack = stackPush()) {
-            IntBuffer w = stack.mallocInt(1);
-            IntBuffer h = stack.mallocInt(1);
-            IntBuffer avChannels = stack.mallocInt(1);
-
-            ByteBuffer decodedImage = stbi_load_from_memory(imageData, w, h, avChannels, 4);
+    public Texture(ByteBuffer imageData) throws Exception {
+        TextureData textureData = TextureData.decode(imageData);
+        try {
+            upload(textureData);
+        } finally {
+            textureData.free();
+        }
+    }
 
-            this.width = w.get();
-            this.height = h.get();
+    public Texture(TextureData textureData) {
+        upload(textureData);
+    }
 
-            this.id = glGenTextures();
-            glBindTexture(GL_TEXTURE_2D, this.id);
+    private Texture() {
+        this.id = getPlaceholderId();
+        this.width = PLACEHOLDER_SIZE;
+        this.height = PLACEHOLDER_SIZE;
+    }
 
-            glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+    public static Texture placeholder() {
+        return new Texture();
+    }
 
+    private static int getPlaceholderId() {
+        if (placeholderId == 0) {
+            placeholderId = glGenTextures();
+            glBindTexture(GL_TEXTURE_2D, placeholderId);
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, this.width, this.height, 0, GL_RGBA, GL_UNSIGNED_BYTE, decodedImage);
-            glGenerateMipmap(GL_TEXTURE_2D);
+            try (MemoryStack stack = stackPush()) {
+                ByteBuffer pixels = stack.malloc(PLACEHOLDER_SIZE * PLACEHOLDER_SIZE * TextureData.BYTES_PER_PIXEL);
+                while (pixels.hasRemaining()) {
+                    pixels.put((byte) 0x80).put((byte) 0x80).put((byte) 0x80).put((byte) 0xFF);
+                }
+                pixels.flip();
+                glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, PLACEHOLDER_SIZE, PLACEHOLDER_SIZE, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+            }
+        }
+        return placeholderId;
+    }
+
+    public void replace(TextureData textureData) {
+        if (released) {
+            return;
+        }
+        int oldId = id;
+        boolean wasResident = resident;
+        upload(textureData);
+        if (wasResident) {
+            glDeleteTextures(oldId);
+        }
+    }
 
-            assert decodedImage != null;
-            stbi_image_free(decodedImage);
+    private void upload(TextureData textureData) {
+        int newId = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, newId);
+
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        int numLevels = textureData.getNumLevels();
+        for (int level = 0; level < numLevels; level++) {
+            if (textureData.isCompressed()) {
+                glCompressedTexImage2D(GL_TEXTURE_2D, level, textureData.getFormat().getGlInternalFormat(),
+                        textureData.getLevelWidth(level), textureData.getLevelHeight(level), 0, textureData.getLevel(level));
+            } else {
+                glTexImage2D(GL_TEXTURE_2D, level, GL_RGBA, textureData.getLevelWidth(level), textureData.getLevelHeight(level),
+                        0, GL_RGBA, GL_UNSIGNED_BYTE, textureData.getLevel(level));
+            }
+        }
+        long newSizeBytes = 0;
+        if (numLevels > 1 || textureData.isCompressed()) {
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, numLevels - 1);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, numLevels > 1 ? GL_LINEAR_MIPMAP_LINEAR : GL_NEAREST);
+            for (int level = 0; level < numLevels; level++) {
+                newSizeBytes += textureData.getLevel(level).remaining();
+            }
+        } else {
+            glGenerateMipmap(GL_TEXTURE_2D);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+            newSizeBytes = (long) textureData.getWidth() * textureData.getHeight() * TextureData.BYTES_PER_PIXEL * 4 / 3;
         }
+
+        this.id = newId;
+        this.width = textureData.getWidth();
+        this.height = textureData.getHeight();
+        this.sizeBytes = newSizeBytes;
+        this.numCols = textureData.getNumCols();
+        this.numRows = textureData.getNumRows();
+        this.resident = true;
+    }
+
+    public static boolean isCompressionSupported() {
+        return GL.getCapabilities().GL_EXT_texture_compression_s3tc;
     }
 
     public int getNumCols() {
-        return 1;
+        return numCols;
     }
 
     public int getNumRows() {
-        return 1;
+        return numRows;
     }
 
     public int getWidth() {
@@ -66,11 +155,23 @@ public class Texture {
         return this.height;
     }
 
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public boolean isResident() {
+        return resident;
+    }
+
     public int getId() {
         return id;
     }
 
     public void cleanup() {
-        glDeleteTextures(id);
+        released = true;
+        if (resident) {
+            glDeleteTextures(id);
+            resident = false;
+        }
     }
 }
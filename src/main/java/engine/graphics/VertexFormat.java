@@ -0,0 +1,206 @@
+package engine.graphics;
+
+import org.joml.Vector3f;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL11.GL_INT;
+import static org.lwjgl.opengl.GL11.GL_SHORT;
+import static org.lwjgl.opengl.GL20.glDisableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL30.GL_HALF_FLOAT;
+import static org.lwjgl.opengl.GL30.glVertexAttribIPointer;
+
+public class VertexFormat {
+
+    public static final VertexFormat SKINNED = new VertexFormat(false, false, true);
+
+    public static final VertexFormat STATIC = new VertexFormat(false, true, false);
+
+    public static final VertexFormat COMPACT = new VertexFormat(true, true, false);
+
+    private static final int SNORM16_MAX = Short.MAX_VALUE;
+
+    private final boolean quantizedPositions;
+
+    private final boolean packedAttributes;
+
+    private final boolean skinned;
+
+    private final int textCoordOffset;
+
+    private final int normalOffset;
+
+    private final int weightsOffset;
+
+    private final int jointIndicesOffset;
+
+    private final int stride;
+
+    public VertexFormat(boolean quantizedPositions, boolean packedAttributes, boolean skinned) {
+        this.quantizedPositions = quantizedPositions;
+        this.packedAttributes = packedAttributes;
+        this.skinned = skinned;
+
+        int offset = quantizedPositions ? 4 * Short.BYTES : 3 * Float.BYTES;
+        textCoordOffset = offset;
+        offset += packedAttributes ? 2 * Short.BYTES : 2 * Float.BYTES;
+        normalOffset = offset;
+        offset += packedAttributes ? 2 * Short.BYTES : 3 * Float.BYTES;
+        weightsOffset = offset;
+        jointIndicesOffset = offset + Mesh.MAX_WEIGHTS * Float.BYTES;
+        if (skinned) {
+            offset += Mesh.MAX_WEIGHTS * (Float.BYTES + Integer.BYTES);
+        }
+        stride = offset;
+    }
+
+    public void write(ByteBuffer vertices, FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals,
+                      IntBuffer jointIndices, FloatBuffer weights, Vector3f positionOffset, Vector3f positionScale) {
+        int numVertices = positions.remaining() / 3;
+        int posBase = positions.position();
+        boolean hasTextCoords = textCoords != null && textCoords.remaining() > 0;
+        boolean hasNormals = normals != null && normals.remaining() > 0;
+        for (int i = 0; i < numVertices; i++) {
+            int base = i * stride;
+            if (quantizedPositions) {
+                for (int c = 0; c < 3; c++) {
+                    float value = (positions.get(posBase + i * 3 + c) - positionOffset.get(c)) / positionScale.get(c);
+                    vertices.putShort(base + c * Short.BYTES, toSnorm16(value));
+                }
+                vertices.putShort(base + 3 * Short.BYTES, (short) 0);
+            } else {
+                for (int c = 0; c < 3; c++) {
+                    vertices.putFloat(base + c * Float.BYTES, positions.get(posBase + i * 3 + c));
+                }
+            }
+
+            float u = hasTextCoords ? textCoords.get(textCoords.position() + i * 2) : 0;
+            float v = hasTextCoords ? textCoords.get(textCoords.position() + i * 2 + 1) : 0;
+            if (packedAttributes) {
+                vertices.putShort(base + textCoordOffset, toHalf(u));
+                vertices.putShort(base + textCoordOffset + Short.BYTES, toHalf(v));
+            } else {
+                vertices.putFloat(base + textCoordOffset, u);
+                vertices.putFloat(base + textCoordOffset + Float.BYTES, v);
+            }
+
+            float nx = hasNormals ? normals.get(normals.position() + i * 3) : 0;
+            float ny = hasNormals ? normals.get(normals.position() + i * 3 + 1) : 0;
+            float nz = hasNormals ? normals.get(normals.position() + i * 3 + 2) : 0;
+            if (packedAttributes) {
+                float l1 = Math.abs(nx) + Math.abs(ny) + Math.abs(nz);
+                float ox = 0;
+                float oy = 0;
+                if (l1 > 0) {
+                    ox = nx / l1;
+                    oy = ny / l1;
+                    if (nz < 0) {
+                        float tx = (1 - Math.abs(oy)) * (ox >= 0 ? 1 : -1);
+                        float ty = (1 - Math.abs(ox)) * (oy >= 0 ? 1 : -1);
+                        ox = tx;
+                        oy = ty;
+                    }
+                }
+                vertices.putShort(base + normalOffset, toSnorm16(ox));
+                vertices.putShort(base + normalOffset + Short.BYTES, toSnorm16(oy));
+            } else {
+                vertices.putFloat(base + normalOffset, nx);
+                vertices.putFloat(base + normalOffset + Float.BYTES, ny);
+                vertices.putFloat(base + normalOffset + 2 * Float.BYTES, nz);
+            }
+
+            if (skinned) {
+                for (int c = 0; c < Mesh.MAX_WEIGHTS; c++) {
+                    int idx = i * Mesh.MAX_WEIGHTS + c;
+                    vertices.putFloat(base + weightsOffset + c * Float.BYTES,
+                            weights != null ? weights.get(weights.position() + idx) : 0);
+                    vertices.putInt(base + jointIndicesOffset + c * Integer.BYTES,
+                            jointIndices != null ? jointIndices.get(jointIndices.position() + idx) : 0);
+                }
+            }
+        }
+    }
+
+    public void enableAttributes() {
+        if (quantizedPositions) {
+            glVertexAttribPointer(0, 3, GL_SHORT, true, stride, 0);
+        } else {
+            glVertexAttribPointer(0, 3, GL_FLOAT, false, stride, 0);
+        }
+        glEnableVertexAttribArray(0);
+
+        glVertexAttribPointer(1, 2, packedAttributes ? GL_HALF_FLOAT : GL_FLOAT, false, stride, textCoordOffset);
+        glEnableVertexAttribArray(1);
+
+        if (packedAttributes) {
+            glVertexAttribPointer(2, 2, GL_SHORT, true, stride, normalOffset);
+        } else {
+            glVertexAttribPointer(2, 3, GL_FLOAT, false, stride, normalOffset);
+        }
+        glEnableVertexAttribArray(2);
+
+        if (skinned) {
+            glVertexAttribPointer(3, Mesh.MAX_WEIGHTS, GL_FLOAT, false, stride, weightsOffset);
+            glEnableVertexAttribArray(3);
+            glVertexAttribIPointer(4, Mesh.MAX_WEIGHTS, GL_INT, stride, jointIndicesOffset);
+            glEnableVertexAttribArray(4);
+        } else {
+            glDisableVertexAttribArray(3);
+            glDisableVertexAttribArray(4);
+        }
+    }
+
+    static short toSnorm16(float value) {
+        return (short) Math.round(Math.max(-1.0f, Math.min(1.0f, value)) * SNORM16_MAX);
+    }
+
+    static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+        if (exponent >= 0x1F) {
+            boolean nan = ((bits >>> 23) & 0xFF) == 0xFF && mantissa != 0;
+            return (short) (sign | 0x7C00 | (nan ? 0x200 : 0));
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            int roundBit = 1 << (shift - 1);
+            if ((mantissa & roundBit) != 0 && ((mantissa & (3 * roundBit - 1)) != 0 || (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = sign | (exponent << 10) | (mantissa >> 13);
+        if ((mantissa & 0x1000) != 0 && ((mantissa & 0x2FFF) != 0 || (half & 1) != 0)) {
+            half++;
+        }
+        return (short) half;
+    }
+
+    public boolean isQuantizedPositions() {
+        return quantizedPositions;
+    }
+
+    public boolean isPackedAttributes() {
+        return packedAttributes;
+    }
+
+    public boolean isSkinned() {
+        return skinned;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+}
@@ -1,67 +1,151 @@
 package engine.items.complex;
 
 import engine.graphics.Mesh;
+import org.joml.Matrix4f;
 import org.joml.Quaternionf;
+import org.joml.Quaternionfc;
 import org.joml.Vector3f;
 
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 public class GameItem {
 
     private final boolean selected;
 
     private Mesh[] meshes;
 
-    private final Vector3f position;
+    private final TransformStore transformStore;
+
+    private int transformSlot;
+
+    private GameItem parent;
+
+    private final List<GameItem> children;
 
-    private float scale;
+    private int textPos;
 
-    private final Quaternionf rotation;
+    private boolean[] meshesInsideFrustum;
 
-    private final int textPos;
+    private int[] sceneSlots;
 
-    private final boolean insideFrustum;
+    private boolean occluder;
 
     public GameItem() {
+        this(TransformStore.getInstance());
+    }
+
+    public GameItem(TransformStore transformStore) {
         selected = false;
-        position = new Vector3f();
-        scale = 1;
-        rotation = new Quaternionf();
+        this.transformStore = transformStore;
+        transformSlot = transformStore.allocate();
+        children = new ArrayList<>();
         textPos = 0;
-        insideFrustum = true;
+        meshesInsideFrustum = new boolean[0];
+        sceneSlots = new int[0];
     }
 
     public GameItem(Mesh[] meshes) {
         this();
-        this.meshes = meshes;
+        setMeshes(meshes);
     }
 
-    public Vector3f getPosition() {
-        return position;
+    public Vector3f getPosition(Vector3f dest) {
+        return transformStore.getPosition(transformSlot, dest);
     }
 
     public int getTextPos() {
         return textPos;
     }
 
+    public void setTextPos(int textPos) {
+        this.textPos = textPos;
+    }
+
     public boolean isSelected() {
         return selected;
     }
 
     public final void setPosition(float x, float y, float z) {
-        this.position.x = x;
-        this.position.y = y;
-        this.position.z = z;
+        transformStore.setPosition(transformSlot, x, y, z);
     }
 
     public float getScale() {
-        return scale;
+        return transformStore.getScale(transformSlot);
     }
 
     public final void setScale(float scale) {
-        this.scale = scale;
+        transformStore.setScale(transformSlot, scale);
+    }
+
+    public float getWorldScale() {
+        return transformStore.getWorldScale(transformSlot);
+    }
+
+    public Quaternionf getRotation(Quaternionf dest) {
+        return transformStore.getRotation(transformSlot, dest);
+    }
+
+    public final void setRotation(Quaternionfc rotation) {
+        transformStore.setRotation(transformSlot, rotation);
+    }
+
+    public Vector3f transformPosition(Vector3f v) {
+        return transformStore.transformPosition(transformSlot, v);
+    }
+
+    public Matrix4f getModelMatrix(Matrix4f dest) {
+        return transformStore.getModelMatrix(transformSlot, dest);
+    }
+
+    public void copyModelMatrix(FloatBuffer dest, int destIndex) {
+        transformStore.copyModelMatrix(transformSlot, dest, destIndex);
+    }
+
+    public TransformStore getTransformStore() {
+        return transformStore;
+    }
+
+    public int getTransformSlot() {
+        return transformSlot;
+    }
+
+    public GameItem getParent() {
+        return parent;
+    }
+
+    public void setParent(GameItem parent) {
+        if (parent == this.parent) {
+            return;
+        }
+        if (parent != null && parent.transformStore != transformStore) {
+            throw new IllegalArgumentException("Rodič musí sdílet úložiště transformací.");
+        }
+        transformStore.setParent(transformSlot, parent != null ? parent.transformSlot : TransformStore.NO_PARENT);
+        if (this.parent != null) {
+            this.parent.children.remove(this);
+        }
+        this.parent = parent;
+        if (parent != null) {
+            parent.children.add(this);
+        }
+    }
+
+    public void addChild(GameItem child) {
+        child.setParent(this);
+    }
+
+    public void removeChild(GameItem child) {
+        if (child.parent == this) {
+            child.setParent(null);
+        }
     }
 
-    public Quaternionf getRotation() {
-        return rotation;
+    public List<GameItem> getChildren() {
+        return Collections.unmodifiableList(children);
     }
 
     public Mesh getMesh() {
@@ -73,7 +157,30 @@ public class GameItem {
     }
 
     public void setMesh(Mesh mesh) {
-        this.meshes = new Mesh[]{mesh};
+        setMeshes(new Mesh[]{mesh});
+    }
+
+    public void setMeshes(Mesh[] meshes) {
+        this.meshes = meshes;
+        meshesInsideFrustum = new boolean[meshes != null ? meshes.length : 0];
+        Arrays.fill(meshesInsideFrustum, true);
+        sceneSlots = new int[meshesInsideFrustum.length];
+    }
+
+    public boolean isOccluder() {
+        return occluder;
+    }
+
+    public void setOccluder(boolean occluder) {
+        this.occluder = occluder;
+    }
+
+    public int getSceneSlot(int meshIdx) {
+        return sceneSlots[meshIdx];
+    }
+
+    public void setSceneSlot(int meshIdx, int sceneSlot) {
+        sceneSlots[meshIdx] = sceneSlot;
     }
 
     public void cleanup() {
@@ -81,9 +188,44 @@ public class GameItem {
         for (int i = 0; i < numMeshes; i++) {
             this.meshes[i].cleanUp();
         }
+        if (transformSlot >= 0) {
+            setParent(null);
+            for (GameItem child : children) {
+                child.parent = null;
+            }
+            children.clear();
+            transformStore.free(transformSlot);
+            transformSlot = -1;
+        }
     }
 
     public boolean isInsideFrustum() {
-        return insideFrustum;
+        for (boolean insideFrustum : meshesInsideFrustum) {
+            if (insideFrustum) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isInsideFrustum(Mesh mesh) {
+        for (int i = 0; i < meshesInsideFrustum.length; i++) {
+            if (meshes[i] == mesh) {
+                return meshesInsideFrustum[i];
+            }
+        }
+        return true;
+    }
+
+    public boolean isInsideFrustum(int meshIdx) {
+        return meshesInsideFrustum[meshIdx];
+    }
+
+    public void setInsideFrustum(boolean insideFrustum) {
+        Arrays.fill(meshesInsideFrustum, insideFrustum);
+    }
+
+    public void setInsideFrustum(int meshIdx, boolean insideFrustum) {
+        meshesInsideFrustum[meshIdx] = insideFrustum;
     }
 }
@@ -0,0 +1,484 @@
+package engine.items.complex;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Quaternionfc;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+
+public class TransformStore {
+
+    public static final int MATRIX_SIZE_FLOATS = 16;
+
+    public static final int NO_PARENT = -1;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final int PARALLEL_GRAIN = 512;
+
+    private static TransformStore INSTANCE;
+
+    private final ForkJoinPool pool;
+
+    private FloatBuffer positions;
+
+    private FloatBuffer rotations;
+
+    private FloatBuffer scales;
+
+    private FloatBuffer localMatrices;
+
+    private FloatBuffer matrices;
+
+    private int capacity;
+
+    private int size;
+
+    private int[] freeSlots;
+
+    private int numFreeSlots;
+
+    private int[] parents;
+
+    private int[] firstChildren;
+
+    private int[] nextSiblings;
+
+    private int[] prevSiblings;
+
+    private int[] subtreeSizes;
+
+    private boolean[] dirty;
+
+    private int[] dirtySlots;
+
+    private int numDirtySlots;
+
+    private int[] roots;
+
+    private int numUpdatedRoots;
+
+    private int[] stack;
+
+    private int recomputedMatrices;
+
+    public TransformStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public TransformStore(int capacity) {
+        this(capacity, ForkJoinPool.commonPool());
+    }
+
+    public TransformStore(int capacity, ForkJoinPool pool) {
+        this.capacity = capacity;
+        this.pool = pool;
+        positions = MemoryUtil.memCallocFloat(capacity * 3);
+        rotations = MemoryUtil.memCallocFloat(capacity * 4);
+        scales = MemoryUtil.memCallocFloat(capacity);
+        localMatrices = MemoryUtil.memCallocFloat(capacity * MATRIX_SIZE_FLOATS);
+        matrices = MemoryUtil.memCallocFloat(capacity * MATRIX_SIZE_FLOATS);
+        freeSlots = new int[16];
+        parents = new int[capacity];
+        firstChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+        prevSiblings = new int[capacity];
+        subtreeSizes = new int[capacity];
+        dirty = new boolean[capacity];
+        dirtySlots = new int[capacity];
+        roots = new int[capacity];
+        stack = new int[64];
+    }
+
+    public static synchronized TransformStore getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new TransformStore();
+        }
+        return INSTANCE;
+    }
+
+    public synchronized int allocate() {
+        int slot;
+        if (numFreeSlots > 0) {
+            slot = freeSlots[--numFreeSlots];
+        } else {
+            if (size == capacity) {
+                grow(capacity * 2);
+            }
+            slot = size++;
+        }
+        positions.put(slot * 3, 0).put(slot * 3 + 1, 0).put(slot * 3 + 2, 0);
+        rotations.put(slot * 4, 0).put(slot * 4 + 1, 0).put(slot * 4 + 2, 0).put(slot * 4 + 3, 1);
+        scales.put(slot, 1);
+        parents[slot] = NO_PARENT;
+        firstChildren[slot] = NO_PARENT;
+        nextSiblings[slot] = NO_PARENT;
+        prevSiblings[slot] = NO_PARENT;
+        subtreeSizes[slot] = 1;
+        updateLocalMatrix(slot);
+        updateWorldMatrix(slot);
+        return slot;
+    }
+
+    public synchronized void free(int slot) {
+        setParent(slot, NO_PARENT);
+        while (firstChildren[slot] != NO_PARENT) {
+            setParent(firstChildren[slot], NO_PARENT);
+        }
+        if (numFreeSlots == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, numFreeSlots * 2);
+        }
+        freeSlots[numFreeSlots++] = slot;
+    }
+
+    private void grow(int newCapacity) {
+        positions = MemoryUtil.memRealloc(positions, newCapacity * 3);
+        rotations = MemoryUtil.memRealloc(rotations, newCapacity * 4);
+        scales = MemoryUtil.memRealloc(scales, newCapacity);
+        localMatrices = MemoryUtil.memRealloc(localMatrices, newCapacity * MATRIX_SIZE_FLOATS);
+        matrices = MemoryUtil.memRealloc(matrices, newCapacity * MATRIX_SIZE_FLOATS);
+        parents = Arrays.copyOf(parents, newCapacity);
+        firstChildren = Arrays.copyOf(firstChildren, newCapacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, newCapacity);
+        prevSiblings = Arrays.copyOf(prevSiblings, newCapacity);
+        subtreeSizes = Arrays.copyOf(subtreeSizes, newCapacity);
+        dirty = Arrays.copyOf(dirty, newCapacity);
+        dirtySlots = Arrays.copyOf(dirtySlots, newCapacity);
+        roots = Arrays.copyOf(roots, newCapacity);
+        capacity = newCapacity;
+    }
+
+    public synchronized void setParent(int slot, int parent) {
+        if (parents[slot] == parent) {
+            return;
+        }
+        for (int ancestor = parent; ancestor != NO_PARENT; ancestor = parents[ancestor]) {
+            if (ancestor == slot) {
+                throw new IllegalArgumentException("Objekt nemůže být svým vlastním předkem.");
+            }
+        }
+        int oldParent = parents[slot];
+        if (oldParent != NO_PARENT) {
+            if (prevSiblings[slot] != NO_PARENT) {
+                nextSiblings[prevSiblings[slot]] = nextSiblings[slot];
+            } else {
+                firstChildren[oldParent] = nextSiblings[slot];
+            }
+            if (nextSiblings[slot] != NO_PARENT) {
+                prevSiblings[nextSiblings[slot]] = prevSiblings[slot];
+            }
+            for (int ancestor = oldParent; ancestor != NO_PARENT; ancestor = parents[ancestor]) {
+                subtreeSizes[ancestor] -= subtreeSizes[slot];
+            }
+        }
+        parents[slot] = parent;
+        prevSiblings[slot] = NO_PARENT;
+        nextSiblings[slot] = NO_PARENT;
+        if (parent != NO_PARENT) {
+            nextSiblings[slot] = firstChildren[parent];
+            if (firstChildren[parent] != NO_PARENT) {
+                prevSiblings[firstChildren[parent]] = slot;
+            }
+            firstChildren[parent] = slot;
+            for (int ancestor = parent; ancestor != NO_PARENT; ancestor = parents[ancestor]) {
+                subtreeSizes[ancestor] += subtreeSizes[slot];
+            }
+        }
+        markDirty(slot);
+    }
+
+    public int getParent(int slot) {
+        return parents[slot];
+    }
+
+    public void setPosition(int slot, float x, float y, float z) {
+        positions.put(slot * 3, x).put(slot * 3 + 1, y).put(slot * 3 + 2, z);
+        markDirty(slot);
+    }
+
+    public Vector3f getPosition(int slot, Vector3f dest) {
+        return dest.set(positions.get(slot * 3), positions.get(slot * 3 + 1), positions.get(slot * 3 + 2));
+    }
+
+    public void setRotation(int slot, Quaternionfc rotation) {
+        rotations.put(slot * 4, rotation.x()).put(slot * 4 + 1, rotation.y())
+                .put(slot * 4 + 2, rotation.z()).put(slot * 4 + 3, rotation.w());
+        markDirty(slot);
+    }
+
+    public Quaternionf getRotation(int slot, Quaternionf dest) {
+        return dest.set(rotations.get(slot * 4), rotations.get(slot * 4 + 1), rotations.get(slot * 4 + 2),
+                rotations.get(slot * 4 + 3));
+    }
+
+    public void setScale(int slot, float scale) {
+        scales.put(slot, scale);
+        markDirty(slot);
+    }
+
+    public float getScale(int slot) {
+        return scales.get(slot);
+    }
+
+    private synchronized void markDirty(int slot) {
+        if (!dirty[slot]) {
+            dirty[slot] = true;
+            dirtySlots[numDirtySlots++] = slot;
+        }
+    }
+
+    public boolean isDirty(int slot) {
+        return dirty[slot];
+    }
+
+    public Vector3f transformPosition(int slot, Vector3f v) {
+        int m = slot * MATRIX_SIZE_FLOATS;
+        return v.set(matrices.get(m) * v.x + matrices.get(m + 4) * v.y + matrices.get(m + 8) * v.z + matrices.get(m + 12),
+                matrices.get(m + 1) * v.x + matrices.get(m + 5) * v.y + matrices.get(m + 9) * v.z + matrices.get(m + 13),
+                matrices.get(m + 2) * v.x + matrices.get(m + 6) * v.y + matrices.get(m + 10) * v.z + matrices.get(m + 14));
+    }
+
+    public synchronized int updateMatrices() {
+        int numRoots = 0;
+        for (int i = 0; i < numDirtySlots; i++) {
+            int slot = dirtySlots[i];
+            updateLocalMatrix(slot);
+            if (!hasDirtyAncestor(slot)) {
+                roots[numRoots++] = slot;
+            }
+        }
+        for (int i = 0; i < numDirtySlots; i++) {
+            dirty[dirtySlots[i]] = false;
+        }
+        numDirtySlots = 0;
+
+        List<Propagation> tasks = new ArrayList<>();
+        for (int i = 0; i < numRoots; i++) {
+            if (subtreeSizes[roots[i]] >= PARALLEL_GRAIN) {
+                Propagation task = new Propagation(roots[i]);
+                pool.execute(task);
+                tasks.add(task);
+            }
+        }
+        int recomputed = 0;
+        for (int i = 0; i < numRoots; i++) {
+            if (subtreeSizes[roots[i]] < PARALLEL_GRAIN) {
+                stack = propagate(roots[i], stack);
+                recomputed += subtreeSizes[roots[i]];
+            }
+        }
+        for (Propagation task : tasks) {
+            recomputed += task.join();
+        }
+
+        numUpdatedRoots = numRoots;
+        recomputedMatrices = recomputed;
+        return recomputed;
+    }
+
+    public synchronized void forEachUpdated(IntConsumer consumer) {
+        for (int i = 0; i < numUpdatedRoots; i++) {
+            int top = 0;
+            stack[top++] = roots[i];
+            while (top > 0) {
+                int slot = stack[--top];
+                consumer.accept(slot);
+                for (int child = firstChildren[slot]; child != NO_PARENT; child = nextSiblings[child]) {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = child;
+                }
+            }
+        }
+    }
+
+    private boolean hasDirtyAncestor(int slot) {
+        for (int ancestor = parents[slot]; ancestor != NO_PARENT; ancestor = parents[ancestor]) {
+            if (dirty[ancestor]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int[] propagate(int root, int[] stack) {
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int slot = stack[--top];
+            updateWorldMatrix(slot);
+            for (int child = firstChildren[slot]; child != NO_PARENT; child = nextSiblings[child]) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = child;
+            }
+        }
+        return stack;
+    }
+
+    private void updateLocalMatrix(int slot) {
+        float qx = rotations.get(slot * 4);
+        float qy = rotations.get(slot * 4 + 1);
+        float qz = rotations.get(slot * 4 + 2);
+        float qw = rotations.get(slot * 4 + 3);
+        float s = scales.get(slot);
+        float dqx = qx + qx;
+        float dqy = qy + qy;
+        float dqz = qz + qz;
+        float q00 = dqx * qx;
+        float q11 = dqy * qy;
+        float q22 = dqz * qz;
+        float q01 = dqx * qy;
+        float q02 = dqx * qz;
+        float q03 = dqx * qw;
+        float q12 = dqy * qz;
+        float q13 = dqy * qw;
+        float q23 = dqz * qw;
+        int m = slot * MATRIX_SIZE_FLOATS;
+        localMatrices.put(m, s - (q11 + q22) * s)
+                .put(m + 1, (q01 + q23) * s)
+                .put(m + 2, (q02 - q13) * s)
+                .put(m + 3, 0)
+                .put(m + 4, (q01 - q23) * s)
+                .put(m + 5, s - (q22 + q00) * s)
+                .put(m + 6, (q12 + q03) * s)
+                .put(m + 7, 0)
+                .put(m + 8, (q02 + q13) * s)
+                .put(m + 9, (q12 - q03) * s)
+                .put(m + 10, s - (q11 + q00) * s)
+                .put(m + 11, 0)
+                .put(m + 12, positions.get(slot * 3))
+                .put(m + 13, positions.get(slot * 3 + 1))
+                .put(m + 14, positions.get(slot * 3 + 2))
+                .put(m + 15, 1);
+    }
+
+    private void updateWorldMatrix(int slot) {
+        int m = slot * MATRIX_SIZE_FLOATS;
+        int parent = parents[slot];
+        if (parent == NO_PARENT) {
+            for (int i = 0; i < MATRIX_SIZE_FLOATS; i++) {
+                matrices.put(m + i, localMatrices.get(m + i));
+            }
+            return;
+        }
+        int p = parent * MATRIX_SIZE_FLOATS;
+        for (int col = 0; col < 4; col++) {
+            float x = localMatrices.get(m + col * 4);
+            float y = localMatrices.get(m + col * 4 + 1);
+            float z = localMatrices.get(m + col * 4 + 2);
+            float w = localMatrices.get(m + col * 4 + 3);
+            for (int row = 0; row < 3; row++) {
+                matrices.put(m + col * 4 + row, matrices.get(p + row) * x + matrices.get(p + 4 + row) * y
+                        + matrices.get(p + 8 + row) * z + matrices.get(p + 12 + row) * w);
+            }
+            matrices.put(m + col * 4 + 3, w);
+        }
+    }
+
+    public float getWorldScale(int slot) {
+        int m = slot * MATRIX_SIZE_FLOATS;
+        float maxLengthSquared = 0;
+        for (int col = 0; col < 3; col++) {
+            float x = matrices.get(m + col * 4);
+            float y = matrices.get(m + col * 4 + 1);
+            float z = matrices.get(m + col * 4 + 2);
+            maxLengthSquared = Math.max(maxLengthSquared, x * x + y * y + z * z);
+        }
+        return (float) Math.sqrt(maxLengthSquared);
+    }
+
+    public Matrix4f getModelMatrix(int slot, Matrix4f dest) {
+        return dest.set(slot * MATRIX_SIZE_FLOATS, matrices);
+    }
+
+    public Matrix4f getLocalMatrix(int slot, Matrix4f dest) {
+        return dest.set(slot * MATRIX_SIZE_FLOATS, localMatrices);
+    }
+
+    public void copyModelMatrix(int slot, FloatBuffer dest, int destIndex) {
+        MemoryUtil.memCopy(MemoryUtil.memAddress0(matrices) + (long) slot * MATRIX_SIZE_FLOATS * Float.BYTES,
+                MemoryUtil.memAddress0(dest) + (long) destIndex * Float.BYTES, MATRIX_SIZE_FLOATS * Float.BYTES);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getRecomputedMatrices() {
+        return recomputedMatrices;
+    }
+
+    public synchronized void cleanup() {
+        MemoryUtil.memFree(positions);
+        MemoryUtil.memFree(rotations);
+        MemoryUtil.memFree(scales);
+        MemoryUtil.memFree(localMatrices);
+        MemoryUtil.memFree(matrices);
+        positions = null;
+        rotations = null;
+        scales = null;
+        localMatrices = null;
+        matrices = null;
+        size = 0;
+        numFreeSlots = 0;
+        numDirtySlots = 0;
+        numUpdatedRoots = 0;
+        synchronized (TransformStore.class) {
+            if (INSTANCE == this) {
+                INSTANCE = null;
+            }
+        }
+    }
+
+    private class Propagation extends RecursiveTask<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int slot;
+
+        Propagation(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        protected Integer compute() {
+            List<Propagation> forked = new ArrayList<>();
+            int[] stack = new int[64];
+            int recomputed = 0;
+            int current = slot;
+            while (current != NO_PARENT) {
+                updateWorldMatrix(current);
+                recomputed++;
+                int next = NO_PARENT;
+                for (int child = firstChildren[current]; child != NO_PARENT; child = nextSiblings[child]) {
+                    if (subtreeSizes[child] < PARALLEL_GRAIN) {
+                        stack = propagate(child, stack);
+                        recomputed += subtreeSizes[child];
+                    } else if (next == NO_PARENT) {
+                        next = child;
+                    } else {
+                        Propagation task = new Propagation(child);
+                        task.fork();
+                        forked.add(task);
+                    }
+                }
+                current = next;
+            }
+            for (Propagation task : forked) {
+                recomputed += task.join();
+            }
+            return recomputed;
+        }
+    }
+}
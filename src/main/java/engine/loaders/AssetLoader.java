@@ -0,0 +1,263 @@
+package engine.loaders;
+
+import engine.graphics.Mesh;
+import engine.graphics.Meshlets;
+import engine.graphics.Occluder;
+import engine.graphics.Texture;
+import engine.graphics.VertexFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class AssetLoader {
+
+    public static final long DEFAULT_UPLOAD_BUDGET_NANOS = 4_000_000L;
+
+    private final ExecutorService workers;
+
+    private final Queue<Runnable> uploadQueue;
+
+    private final Map<String, CompletableFuture<Void>> pendingTextures;
+
+    private boolean streamTextures;
+
+    private boolean buildAtlases;
+
+    private boolean optimizeMeshes;
+
+    private boolean buildLods;
+
+    private boolean buildMeshlets;
+
+    private boolean buildOccluders;
+
+    private VertexFormat vertexFormat = VertexFormat.STATIC;
+
+    public AssetLoader() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    public AssetLoader(int numThreads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "asset-loader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        uploadQueue = new ConcurrentLinkedQueue<>();
+        pendingTextures = new ConcurrentHashMap<>();
+    }
+
+    public CompletableFuture<Mesh[]> loadMeshes(String resourcePath, String texturesDir) {
+        return loadMeshes(resourcePath, texturesDir, MeshLoader.DEFAULT_FLAGS);
+    }
+
+    public CompletableFuture<Mesh[]> loadMeshes(String resourcePath, String texturesDir, int flags) {
+        return loadMeshes(resourcePath, texturesDir, flags, vertexFormat);
+    }
+
+    public CompletableFuture<Mesh[]> loadMeshes(String resourcePath, String texturesDir, int flags, VertexFormat format) {
+        CompletableFuture<ModelData> imported = runAsync(() -> importModel(resourcePath, texturesDir, flags));
+        if (streamTextures) {
+            return imported.thenCompose(modelData -> submitUpload(() -> MeshLoader.createMeshes(modelData, this, format)));
+        }
+        return imported
+                .thenCompose(modelData -> {
+                    List<CompletableFuture<?>> textures = new ArrayList<>();
+                    for (MaterialData material : modelData.getMaterials()) {
+                        if (material.isTextured() && !modelData.getEmbeddedTextures().containsKey(material.getTexturePath())) {
+                            textures.add(preloadTexture(material.getTexturePath()));
+                        }
+                    }
+                    return CompletableFuture.allOf(textures.toArray(new CompletableFuture<?>[0]))
+                            .whenComplete((ignored, excp) -> {
+                                if (excp != null) {
+                                    modelData.free();
+                                }
+                            })
+                            .thenCompose(ignored -> submitUpload(() -> MeshLoader.createMeshes(modelData, null, format)));
+                });
+    }
+
+    private ModelData importModel(String resourcePath, String texturesDir, int flags) throws Exception {
+        ModelData modelData = MeshLoader.importModel(resourcePath, texturesDir, flags, optimizeMeshes, buildLods, buildAtlases);
+        try {
+            if (buildMeshlets) {
+                for (MeshData mesh : modelData.getMeshes()) {
+                    if (mesh.getLodCount(0) / 3 >= Meshlets.MIN_MESH_TRIANGLES) {
+                        mesh.setMeshlets(Meshlets.build(mesh.getPositions(), mesh.getIndices(), mesh.getLodCount(0)));
+                    }
+                }
+            }
+            if (buildOccluders) {
+                for (MeshData mesh : modelData.getMeshes()) {
+                    if (mesh.getLodCount(0) / 3 <= Occluder.MAX_TRIANGLES) {
+                        mesh.setOccluder(Occluder.build(mesh.getPositions(), mesh.getIndices(), mesh.getLodOffset(0),
+                                mesh.getLodCount(0)));
+                    }
+                }
+            }
+            return modelData;
+        } catch (Exception | Error excp) {
+            modelData.free();
+            throw excp;
+        }
+    }
+
+    public CompletableFuture<Texture> loadTexture(String path) {
+        return preloadTexture(path).thenCompose(ignored -> submitUpload(() -> TextureCache.getInstance().getTexture(path)));
+    }
+
+    public CompletableFuture<TextureData> decodeTexture(String path) {
+        return runAsync(() -> TextureData.load(path));
+    }
+
+    private CompletableFuture<Void> preloadTexture(String path) {
+        if (TextureCache.getInstance().contains(path)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future = pendingTextures.computeIfAbsent(path, key ->
+                decodeTexture(key)
+                        .thenCompose(textureData -> submitUpload(() -> {
+                            try {
+                                TextureCache.getInstance().preload(key, textureData);
+                                return null;
+                            } finally {
+                                textureData.free();
+                            }
+                        })));
+        future.whenComplete((ignored, excp) -> pendingTextures.remove(path, future));
+        return future;
+    }
+
+    public boolean isStreamTextures() {
+        return streamTextures;
+    }
+
+    public void setStreamTextures(boolean streamTextures) {
+        this.streamTextures = streamTextures;
+    }
+
+    public boolean isBuildAtlases() {
+        return buildAtlases;
+    }
+
+    public void setBuildAtlases(boolean buildAtlases) {
+        this.buildAtlases = buildAtlases;
+    }
+
+    public boolean isOptimizeMeshes() {
+        return optimizeMeshes;
+    }
+
+    public void setOptimizeMeshes(boolean optimizeMeshes) {
+        this.optimizeMeshes = optimizeMeshes;
+    }
+
+    public boolean isBuildLods() {
+        return buildLods;
+    }
+
+    public void setBuildLods(boolean buildLods) {
+        this.buildLods = buildLods;
+    }
+
+    public boolean isBuildMeshlets() {
+        return buildMeshlets;
+    }
+
+    public void setBuildMeshlets(boolean buildMeshlets) {
+        this.buildMeshlets = buildMeshlets;
+    }
+
+    public boolean isBuildOccluders() {
+        return buildOccluders;
+    }
+
+    public void setBuildOccluders(boolean buildOccluders) {
+        this.buildOccluders = buildOccluders;
+    }
+
+    public VertexFormat getVertexFormat() {
+        return vertexFormat;
+    }
+
+    public void setVertexFormat(VertexFormat vertexFormat) {
+        this.vertexFormat = vertexFormat;
+    }
+
+    public int processUploads(long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        int processed = 0;
+        Runnable task;
+        while ((task = uploadQueue.poll()) != null) {
+            task.run();
+            processed++;
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+        return processed;
+    }
+
+    public <T> T await(CompletableFuture<T> future) throws Exception {
+        while (!future.isDone()) {
+            if (processUploads(DEFAULT_UPLOAD_BUDGET_NANOS) == 0) {
+                LockSupport.parkNanos(100_000L);
+            }
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw excp;
+        }
+    }
+
+    public boolean hasPendingUploads() {
+        return !uploadQueue.isEmpty();
+    }
+
+    public void cleanup() {
+        workers.shutdownNow();
+        uploadQueue.clear();
+        pendingTextures.clear();
+    }
+
+    public <T> CompletableFuture<T> runAsync(Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (Exception excp) {
+                throw new CompletionException(excp);
+            }
+        }, workers);
+    }
+
+    public <T> CompletableFuture<T> submitUpload(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        uploadQueue.add(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable excp) {
+                future.completeExceptionally(excp);
+            }
+        });
+        return future;
+    }
+}
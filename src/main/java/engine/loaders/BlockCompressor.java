@@ -0,0 +1,374 @@
+package engine.loaders;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.stream.IntStream;
+
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT1_EXT;
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT5_EXT;
+import static org.lwjgl.opengl.GL30.GL_COMPRESSED_RG_RGTC2;
+
+public class BlockCompressor {
+
+    public enum Format {
+        BC1(8, GL_COMPRESSED_RGBA_S3TC_DXT1_EXT),
+        BC3(16, GL_COMPRESSED_RGBA_S3TC_DXT5_EXT),
+        BC5(16, GL_COMPRESSED_RG_RGTC2);
+
+        private final int blockBytes;
+
+        private final int glInternalFormat;
+
+        Format(int blockBytes, int glInternalFormat) {
+            this.blockBytes = blockBytes;
+            this.glInternalFormat = glInternalFormat;
+        }
+
+        public int getBlockBytes() {
+            return blockBytes;
+        }
+
+        public int getGlInternalFormat() {
+            return glInternalFormat;
+        }
+
+        public int getCompressedSize(int width, int height) {
+            return ((width + 3) / 4) * ((height + 3) / 4) * blockBytes;
+        }
+    }
+
+    private static final int BLOCK_PIXELS = 16;
+
+    public static Format chooseFormat(TextureData textureData) {
+        ByteBuffer pixels = textureData.getPixels();
+        for (int i = 3; i < pixels.remaining(); i += TextureData.BYTES_PER_PIXEL) {
+            if ((pixels.get(pixels.position() + i) & 0xFF) != 0xFF) {
+                return Format.BC3;
+            }
+        }
+        return Format.BC1;
+    }
+
+    public static TextureData compress(TextureData textureData, Format format) {
+        int numLevels = textureData.getNumLevels();
+        int[] offsets = new int[numLevels + 1];
+        for (int i = 0; i < numLevels; i++) {
+            offsets[i + 1] = offsets[i] + format.getCompressedSize(textureData.getLevelWidth(i), textureData.getLevelHeight(i));
+        }
+
+        ByteBuffer chain = MemoryUtil.memAlloc(offsets[numLevels]);
+        ByteBuffer[] levels = new ByteBuffer[numLevels];
+        for (int i = 0; i < numLevels; i++) {
+            levels[i] = MemoryUtil.memSlice(chain, offsets[i], offsets[i + 1] - offsets[i]);
+        }
+        IntStream.range(0, numLevels).parallel().forEach(i -> compress(textureData.getLevel(i),
+                textureData.getLevelWidth(i), textureData.getLevelHeight(i), format, levels[i]));
+        return TextureData.allocated(levels, textureData.getWidth(), textureData.getHeight(), format, chain);
+    }
+
+    public static void compress(ByteBuffer rgba, int width, int height, Format format, ByteBuffer out) {
+        int blocksX = (width + 3) / 4;
+        int blocksY = (height + 3) / 4;
+        IntStream.range(0, blocksY).parallel().forEach(by -> {
+            int[] r = new int[BLOCK_PIXELS];
+            int[] g = new int[BLOCK_PIXELS];
+            int[] b = new int[BLOCK_PIXELS];
+            int[] a = new int[BLOCK_PIXELS];
+            for (int bx = 0; bx < blocksX; bx++) {
+                fetchBlock(rgba, width, height, bx, by, r, g, b, a);
+                int offset = (by * blocksX + bx) * format.getBlockBytes();
+                switch (format) {
+                    case BC1 -> encodeColourBlock(r, g, b, out, offset);
+                    case BC3 -> {
+                        encodeChannelBlock(a, out, offset);
+                        encodeColourBlock(r, g, b, out, offset + 8);
+                    }
+                    case BC5 -> {
+                        encodeChannelBlock(r, out, offset);
+                        encodeChannelBlock(g, out, offset + 8);
+                    }
+                }
+            }
+        });
+    }
+
+    public static ByteBuffer decompress(ByteBuffer blocks, int width, int height, Format format) {
+        ByteBuffer rgba = MemoryUtil.memAlloc(width * height * TextureData.BYTES_PER_PIXEL);
+        int blocksX = (width + 3) / 4;
+        int blocksY = (height + 3) / 4;
+        int[] r = new int[BLOCK_PIXELS];
+        int[] g = new int[BLOCK_PIXELS];
+        int[] b = new int[BLOCK_PIXELS];
+        int[] a = new int[BLOCK_PIXELS];
+        for (int by = 0; by < blocksY; by++) {
+            for (int bx = 0; bx < blocksX; bx++) {
+                int offset = blocks.position() + (by * blocksX + bx) * format.getBlockBytes();
+                switch (format) {
+                    case BC1 -> {
+                        decodeColourBlock(blocks, offset, r, g, b, a, true);
+                    }
+                    case BC3 -> {
+                        decodeChannelBlock(blocks, offset, a);
+                        decodeColourBlock(blocks, offset + 8, r, g, b, null, false);
+                    }
+                    case BC5 -> {
+                        decodeChannelBlock(blocks, offset, r);
+                        decodeChannelBlock(blocks, offset + 8, g);
+                        for (int i = 0; i < BLOCK_PIXELS; i++) {
+                            b[i] = 0;
+                            a[i] = 0xFF;
+                        }
+                    }
+                }
+                for (int i = 0; i < BLOCK_PIXELS; i++) {
+                    int x = bx * 4 + (i & 3);
+                    int y = by * 4 + (i >> 2);
+                    if (x < width && y < height) {
+                        int p = (y * width + x) * TextureData.BYTES_PER_PIXEL;
+                        rgba.put(p, (byte) r[i]).put(p + 1, (byte) g[i]).put(p + 2, (byte) b[i]).put(p + 3, (byte) a[i]);
+                    }
+                }
+            }
+        }
+        return rgba;
+    }
+
+    public static double psnr(ByteBuffer original, ByteBuffer decoded, int numChannels) {
+        long sumSq = 0;
+        long count = 0;
+        int size = Math.min(original.remaining(), decoded.remaining());
+        for (int i = 0; i < size; i++) {
+            if (i % TextureData.BYTES_PER_PIXEL < numChannels) {
+                int diff = (original.get(original.position() + i) & 0xFF) - (decoded.get(decoded.position() + i) & 0xFF);
+                sumSq += (long) diff * diff;
+                count++;
+            }
+        }
+        if (sumSq == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double mse = (double) sumSq / count;
+        return 10 * Math.log10(255.0 * 255.0 / mse);
+    }
+
+    private static void fetchBlock(ByteBuffer rgba, int width, int height, int bx, int by, int[] r, int[] g, int[] b, int[] a) {
+        int base = rgba.position();
+        for (int i = 0; i < BLOCK_PIXELS; i++) {
+            int x = Math.min(bx * 4 + (i & 3), width - 1);
+            int y = Math.min(by * 4 + (i >> 2), height - 1);
+            int p = base + (y * width + x) * TextureData.BYTES_PER_PIXEL;
+            r[i] = rgba.get(p) & 0xFF;
+            g[i] = rgba.get(p + 1) & 0xFF;
+            b[i] = rgba.get(p + 2) & 0xFF;
+            a[i] = rgba.get(p + 3) & 0xFF;
+        }
+    }
+
+    private static void encodeColourBlock(int[] r, int[] g, int[] b, ByteBuffer out, int offset) {
+        float meanR = 0, meanG = 0, meanB = 0;
+        for (int i = 0; i < BLOCK_PIXELS; i++) {
+            meanR += r[i];
+            meanG += g[i];
+            meanB += b[i];
+        }
+        meanR /= BLOCK_PIXELS;
+        meanG /= BLOCK_PIXELS;
+        meanB /= BLOCK_PIXELS;
+
+        float crr = 0, crg = 0, crb = 0, cgg = 0, cgb = 0, cbb = 0;
+        for (int i = 0; i < BLOCK_PIXELS; i++) {
+            float dr = r[i] - meanR;
+            float dg = g[i] - meanG;
+            float db = b[i] - meanB;
+            crr += dr * dr;
+            crg += dr * dg;
+            crb += dr * db;
+            cgg += dg * dg;
+            cgb += dg * db;
+            cbb += db * db;
+        }
+
+        float axisR = 1, axisG = 1, axisB = 1;
+        for (int iter = 0; iter < 4; iter++) {
+            float nr = crr * axisR + crg * axisG + crb * axisB;
+            float ng = crg * axisR + cgg * axisG + cgb * axisB;
+            float nb = crb * axisR + cgb * axisG + cbb * axisB;
+            float len = Math.max(Math.abs(nr), Math.max(Math.abs(ng), Math.abs(nb)));
+            if (len < 1e-6f) {
+                break;
+            }
+            axisR = nr / len;
+            axisG = ng / len;
+            axisB = nb / len;
+        }
+
+        float minT = Float.MAX_VALUE;
+        float maxT = -Float.MAX_VALUE;
+        for (int i = 0; i < BLOCK_PIXELS; i++) {
+            float t = (r[i] - meanR) * axisR + (g[i] - meanG) * axisG + (b[i] - meanB) * axisB;
+            minT = Math.min(minT, t);
+            maxT = Math.max(maxT, t);
+        }
+        float axisLenSq = axisR * axisR + axisG * axisG + axisB * axisB;
+        minT /= axisLenSq;
+        maxT /= axisLenSq;
+
+        int colour0 = packRgb565(meanR + axisR * maxT, meanG + axisG * maxT, meanB + axisB * maxT);
+        int colour1 = packRgb565(meanR + axisR * minT, meanG + axisG * minT, meanB + axisB * minT);
+        if (colour0 < colour1) {
+            int tmp = colour0;
+            colour0 = colour1;
+            colour1 = tmp;
+        }
+
+        int indices = 0;
+        if (colour0 != colour1) {
+            int[] palette = new int[12];
+            buildColourPalette(colour0, colour1, true, palette);
+            for (int i = 0; i < BLOCK_PIXELS; i++) {
+                int best = 0;
+                int bestDist = Integer.MAX_VALUE;
+                for (int c = 0; c < 4; c++) {
+                    int dr = r[i] - palette[c * 3];
+                    int dg = g[i] - palette[c * 3 + 1];
+                    int db = b[i] - palette[c * 3 + 2];
+                    int dist = dr * dr + dg * dg + db * db;
+                    if (dist < bestDist) {
+                        bestDist = dist;
+                        best = c;
+                    }
+                }
+                indices |= best << (i * 2);
+            }
+        }
+
+        out.put(offset, (byte) colour0);
+        out.put(offset + 1, (byte) (colour0 >> 8));
+        out.put(offset + 2, (byte) colour1);
+        out.put(offset + 3, (byte) (colour1 >> 8));
+        for (int i = 0; i < 4; i++) {
+            out.put(offset + 4 + i, (byte) (indices >>> (i * 8)));
+        }
+    }
+
+    private static void encodeChannelBlock(int[] values, ByteBuffer out, int offset) {
+        int max = 0;
+        int min = 255;
+        for (int i = 0; i < BLOCK_PIXELS; i++) {
+            max = Math.max(max, values[i]);
+            min = Math.min(min, values[i]);
+        }
+
+        long indices = 0;
+        if (max != min) {
+            int[] palette = new int[8];
+            buildChannelPalette(max, min, palette);
+            for (int i = 0; i < BLOCK_PIXELS; i++) {
+                int best = 0;
+                int bestDist = Integer.MAX_VALUE;
+                for (int c = 0; c < 8; c++) {
+                    int dist = Math.abs(values[i] - palette[c]);
+                    if (dist < bestDist) {
+                        bestDist = dist;
+                        best = c;
+                    }
+                }
+                indices |= (long) best << (i * 3);
+            }
+        }
+
+        out.put(offset, (byte) max);
+        out.put(offset + 1, (byte) min);
+        for (int i = 0; i < 6; i++) {
+            out.put(offset + 2 + i, (byte) (indices >>> (i * 8)));
+        }
+    }
+
+    private static void decodeColourBlock(ByteBuffer blocks, int offset, int[] r, int[] g, int[] b, int[] a, boolean allowThreeColour) {
+        int colour0 = (blocks.get(offset) & 0xFF) | ((blocks.get(offset + 1) & 0xFF) << 8);
+        int colour1 = (blocks.get(offset + 2) & 0xFF) | ((blocks.get(offset + 3) & 0xFF) << 8);
+        int indices = 0;
+        for (int i = 0; i < 4; i++) {
+            indices |= (blocks.get(offset + 4 + i) & 0xFF) << (i * 8);
+        }
+        int[] palette = new int[12];
+        boolean fourColour = !allowThreeColour || colour0 > colour1;
+        buildColourPalette(colour0, colour1, fourColour, palette);
+        for (int i = 0; i < BLOCK_PIXELS; i++) {
+            int idx = (indices >>> (i * 2)) & 3;
+            r[i] = palette[idx * 3];
+            g[i] = palette[idx * 3 + 1];
+            b[i] = palette[idx * 3 + 2];
+            if (a != null) {
+                a[i] = !fourColour && idx == 3 ? 0 : 0xFF;
+            }
+        }
+    }
+
+    private static void decodeChannelBlock(ByteBuffer blocks, int offset, int[] values) {
+        int value0 = blocks.get(offset) & 0xFF;
+        int value1 = blocks.get(offset + 1) & 0xFF;
+        long indices = 0;
+        for (int i = 0; i < 6; i++) {
+            indices |= (long) (blocks.get(offset + 2 + i) & 0xFF) << (i * 8);
+        }
+        int[] palette = new int[8];
+        buildChannelPalette(value0, value1, palette);
+        for (int i = 0; i < BLOCK_PIXELS; i++) {
+            values[i] = palette[(int) ((indices >>> (i * 3)) & 7)];
+        }
+    }
+
+    private static void buildColourPalette(int colour0, int colour1, boolean fourColour, int[] palette) {
+        expandRgb565(colour0, palette, 0);
+        expandRgb565(colour1, palette, 3);
+        for (int c = 0; c < 3; c++) {
+            int c0 = palette[c];
+            int c1 = palette[3 + c];
+            if (fourColour) {
+                palette[6 + c] = (2 * c0 + c1) / 3;
+                palette[9 + c] = (c0 + 2 * c1) / 3;
+            } else {
+                palette[6 + c] = (c0 + c1) / 2;
+                palette[9 + c] = 0;
+            }
+        }
+    }
+
+    private static void buildChannelPalette(int value0, int value1, int[] palette) {
+        palette[0] = value0;
+        palette[1] = value1;
+        if (value0 > value1) {
+            for (int i = 1; i < 7; i++) {
+                palette[i + 1] = ((7 - i) * value0 + i * value1) / 7;
+            }
+        } else {
+            for (int i = 1; i < 5; i++) {
+                palette[i + 1] = ((5 - i) * value0 + i * value1) / 5;
+            }
+            palette[6] = 0;
+            palette[7] = 255;
+        }
+    }
+
+    private static int packRgb565(float r, float g, float b) {
+        int r5 = Math.round(clamp(r) * 31 / 255f);
+        int g6 = Math.round(clamp(g) * 63 / 255f);
+        int b5 = Math.round(clamp(b) * 31 / 255f);
+        return (r5 << 11) | (g6 << 5) | b5;
+    }
+
+    private static void expandRgb565(int colour, int[] out, int offset) {
+        int r5 = (colour >> 11) & 0x1F;
+        int g6 = (colour >> 5) & 0x3F;
+        int b5 = colour & 0x1F;
+        out[offset] = (r5 << 3) | (r5 >> 2);
+        out[offset + 1] = (g6 << 2) | (g6 >> 4);
+        out[offset + 2] = (b5 << 3) | (b5 >> 2);
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
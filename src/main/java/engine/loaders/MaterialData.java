@@ -0,0 +1,41 @@
+package engine.loaders;
+
+import org.joml.Vector4f;
+
+public class MaterialData {
+
+    private final Vector4f ambientColour;
+
+    private final Vector4f diffuseColour;
+
+    private final Vector4f specularColour;
+
+    private final String texturePath;
+
+    public MaterialData(Vector4f ambientColour, Vector4f diffuseColour, Vector4f specularColour, String texturePath) {
+        this.ambientColour = ambientColour;
+        this.diffuseColour = diffuseColour;
+        this.specularColour = specularColour;
+        this.texturePath = texturePath;
+    }
+
+    public Vector4f getAmbientColour() {
+        return ambientColour;
+    }
+
+    public Vector4f getDiffuseColour() {
+        return diffuseColour;
+    }
+
+    public Vector4f getSpecularColour() {
+        return specularColour;
+    }
+
+    public String getTexturePath() {
+        return texturePath;
+    }
+
+    public boolean isTextured() {
+        return texturePath != null;
+    }
+}
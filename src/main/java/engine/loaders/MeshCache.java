@@ -0,0 +1,326 @@
+package engine.loaders;
+
+import engine.utils.FileUtils;
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class MeshCache {
+
+    private static final int MAGIC = 0x4F474D43;
+
+    private static final int VERSION = 5;
+
+    private static final int BYTE_ORDER_MARK = 0x01020304;
+
+    private static final String EXTENSION = ".mesh";
+
+    private static MeshCache INSTANCE;
+
+    private Path cacheDir;
+
+    private boolean enabled;
+
+    private MeshCache() {
+        cacheDir = Paths.get("cache", "meshes");
+        enabled = true;
+    }
+
+    public static synchronized MeshCache getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new MeshCache();
+        }
+        return INSTANCE;
+    }
+
+    public Path getCacheDir() {
+        return cacheDir;
+    }
+
+    public void setCacheDir(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getKey(String resourcePath, String texturesDir, int flags) {
+        return getKey(resourcePath, texturesDir, flags, "");
+    }
+
+    public String getKey(String resourcePath, String texturesDir, int flags, String postProcess) {
+        if (!enabled) {
+            return null;
+        }
+        Path path = Paths.get(resourcePath);
+        if (!Files.isReadable(path)) {
+            return null;
+        }
+        try {
+            return FileUtils.contentHash(getSources(path), VERSION + ":" + flags + ":" + postProcess + ":" + texturesDir);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    public String getAtlasKey(String modelKey, ModelData modelData, int border, int maxTileSize, boolean compressed) {
+        if (modelKey == null) {
+            return null;
+        }
+        Set<Path> tiles = new LinkedHashSet<>();
+        for (MaterialData material : modelData.getMaterials()) {
+            if (material.isTextured()) {
+                Path tile = Paths.get(material.getTexturePath());
+                if (Files.isReadable(tile)) {
+                    tiles.add(tile);
+                }
+            }
+        }
+        try {
+            return FileUtils.contentHash(new ArrayList<>(tiles),
+                    modelKey + ":atlas:" + border + ":" + maxTileSize + ":" + compressed);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    private static List<Path> getSources(Path path) throws IOException {
+        List<Path> sources = new ArrayList<>();
+        sources.add(path);
+        if (!path.getFileName().toString().toLowerCase().endsWith(".obj")) {
+            return sources;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.ISO_8859_1)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("mtllib ")) {
+                    Path library = path.resolveSibling(line.substring(7).trim());
+                    if (Files.isReadable(library)) {
+                        sources.add(library);
+                    }
+                }
+            }
+        }
+        return sources;
+    }
+
+    public ModelData load(String key) {
+        if (key == null) {
+            return null;
+        }
+        Path file = cacheDir.resolve(key + EXTENSION);
+        if (!Files.isReadable(file)) {
+            return null;
+        }
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+            mapped.order(ByteOrder.nativeOrder());
+            return read(mapped);
+        } catch (IOException | RuntimeException excp) {
+            return null;
+        }
+    }
+
+    public void store(String key, ModelData modelData) {
+        if (key == null) {
+            return;
+        }
+        ByteBuffer buffer = null;
+        try {
+            byte[][] texturePaths = new byte[modelData.getMaterials().length][];
+            long size = 6 * Integer.BYTES;
+            for (int i = 0; i < texturePaths.length; i++) {
+                String texturePath = modelData.getMaterials()[i].getTexturePath();
+                texturePaths[i] = texturePath != null ? texturePath.getBytes(StandardCharsets.UTF_8) : null;
+                size += 12 * Float.BYTES + Integer.BYTES + align(texturePaths[i] != null ? texturePaths[i].length : 0);
+            }
+            for (MeshData mesh : modelData.getMeshes()) {
+                size += (5 + mesh.getNumLods() + (hasStats(mesh) ? 6 : 0)) * Integer.BYTES
+                        + (long) mesh.getNumVertices() * 8 * Float.BYTES + (long) mesh.getIndices().remaining() * Integer.BYTES;
+            }
+            Map<String, TextureData> textures = modelData.getEmbeddedTextures();
+            byte[][] textureNames = new byte[textures.size()][];
+            int textureIdx = 0;
+            for (Map.Entry<String, TextureData> texture : textures.entrySet()) {
+                textureNames[textureIdx] = texture.getKey().getBytes(StandardCharsets.UTF_8);
+                size += Integer.BYTES + align(textureNames[textureIdx].length) + TextureDiskCache.sizeOf(texture.getValue());
+                textureIdx++;
+            }
+
+            buffer = MemoryUtil.memAlloc((int) size);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(BYTE_ORDER_MARK);
+            buffer.putInt(modelData.getMaterials().length).putInt(modelData.getMeshes().length).putInt(textures.size());
+            for (int i = 0; i < texturePaths.length; i++) {
+                MaterialData material = modelData.getMaterials()[i];
+                putColour(buffer, material.getAmbientColour());
+                putColour(buffer, material.getDiffuseColour());
+                putColour(buffer, material.getSpecularColour());
+                putString(buffer, texturePaths[i]);
+            }
+            for (MeshData mesh : modelData.getMeshes()) {
+                buffer.putInt(mesh.getMaterialIdx()).putInt(mesh.getNumVertices()).putInt(mesh.getIndices().remaining());
+                buffer.putInt(mesh.getNumLods());
+                for (int lodCount : mesh.getLodCounts()) {
+                    buffer.putInt(lodCount);
+                }
+                if (hasStats(mesh)) {
+                    buffer.putInt(1);
+                    putStats(buffer, mesh.getStatsBefore());
+                    putStats(buffer, mesh.getStatsAfter());
+                } else {
+                    buffer.putInt(0);
+                }
+                buffer.asFloatBuffer().put(mesh.getPositions().duplicate());
+                buffer.position(buffer.position() + mesh.getPositions().remaining() * Float.BYTES);
+                buffer.asFloatBuffer().put(mesh.getTextCoords().duplicate());
+                buffer.position(buffer.position() + mesh.getTextCoords().remaining() * Float.BYTES);
+                buffer.asFloatBuffer().put(mesh.getNormals().duplicate());
+                buffer.position(buffer.position() + mesh.getNormals().remaining() * Float.BYTES);
+                buffer.asIntBuffer().put(mesh.getIndices().duplicate());
+                buffer.position(buffer.position() + mesh.getIndices().remaining() * Integer.BYTES);
+            }
+            textureIdx = 0;
+            for (TextureData texture : textures.values()) {
+                putString(buffer, textureNames[textureIdx++]);
+                TextureDiskCache.write(buffer, texture);
+            }
+            buffer.flip();
+
+            Files.createDirectories(cacheDir);
+            Path tmpFile = Files.createTempFile(cacheDir, key, ".tmp");
+            try (FileChannel fc = FileChannel.open(tmpFile, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    fc.write(buffer);
+                }
+            }
+            Files.move(tmpFile, cacheDir.resolve(key + EXTENSION), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            System.err.println("Nepodařilo se uložit cache modelu: " + excp.getMessage());
+        } finally {
+            MemoryUtil.memFree(buffer);
+        }
+    }
+
+    private static ModelData read(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != BYTE_ORDER_MARK) {
+            throw new IOException("Neplatná cache modelu.");
+        }
+        int numMaterials = buffer.getInt();
+        int numMeshes = buffer.getInt();
+        int numTextures = buffer.getInt();
+
+        MaterialData[] materials = new MaterialData[numMaterials];
+        for (int i = 0; i < numMaterials; i++) {
+            Vector4f ambient = getColour(buffer);
+            Vector4f diffuse = getColour(buffer);
+            Vector4f specular = getColour(buffer);
+            materials[i] = new MaterialData(ambient, diffuse, specular, getString(buffer));
+        }
+
+        MeshData[] meshes = new MeshData[numMeshes];
+        for (int i = 0; i < numMeshes; i++) {
+            int materialIdx = buffer.getInt();
+            int numVertices = buffer.getInt();
+            int numIndices = buffer.getInt();
+            int[] lodCounts = new int[buffer.getInt()];
+            for (int lod = 0; lod < lodCounts.length; lod++) {
+                lodCounts[lod] = buffer.getInt();
+            }
+            boolean hasStats = buffer.getInt() != 0;
+            MeshOptimizer.Stats statsBefore = hasStats ? getStats(buffer) : null;
+            MeshOptimizer.Stats statsAfter = hasStats ? getStats(buffer) : null;
+            FloatBuffer positions = slice(buffer, numVertices * 3 * Float.BYTES).asFloatBuffer();
+            FloatBuffer textCoords = slice(buffer, numVertices * 2 * Float.BYTES).asFloatBuffer();
+            FloatBuffer normals = slice(buffer, numVertices * 3 * Float.BYTES).asFloatBuffer();
+            IntBuffer indices = slice(buffer, numIndices * Integer.BYTES).asIntBuffer();
+            meshes[i] = new MeshData(positions, textCoords, normals, indices, materialIdx, lodCounts, false);
+            meshes[i].setOptimizationStats(statsBefore, statsAfter);
+        }
+
+        Map<String, TextureData> textures = new HashMap<>();
+        for (int i = 0; i < numTextures; i++) {
+            String name = getString(buffer);
+            textures.put(name, TextureDiskCache.read(buffer));
+        }
+        return new ModelData(materials, meshes, textures);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length);
+            buffer.put(value);
+            buffer.position(buffer.position() + align(value.length) - value.length);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        buffer.position(buffer.position() + align(length) - length);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        int start = buffer.position();
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(start).limit(start + length);
+        buffer.position(start + length);
+        return slice.slice().order(buffer.order());
+    }
+
+    private static void putColour(ByteBuffer buffer, Vector4f colour) {
+        buffer.putFloat(colour.x).putFloat(colour.y).putFloat(colour.z).putFloat(colour.w);
+    }
+
+    private static Vector4f getColour(ByteBuffer buffer) {
+        return new Vector4f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+    }
+
+    private static boolean hasStats(MeshData mesh) {
+        return mesh.getStatsBefore() != null && mesh.getStatsAfter() != null;
+    }
+
+    private static void putStats(ByteBuffer buffer, MeshOptimizer.Stats stats) {
+        buffer.putInt(stats.getNumTriangles()).putInt(stats.getNumVertices()).putInt(stats.getCacheMisses());
+    }
+
+    private static MeshOptimizer.Stats getStats(ByteBuffer buffer) {
+        return new MeshOptimizer.Stats(buffer.getInt(), buffer.getInt(), buffer.getInt());
+    }
+
+    private static int align(int length) {
+        return (length + 3) & ~3;
+    }
+}
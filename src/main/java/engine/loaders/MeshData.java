@@ -0,0 +1,142 @@
+package engine.loaders;
+
+import engine.graphics.Meshlets;
+import engine.graphics.Occluder;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+public class MeshData {
+
+    private final FloatBuffer positions;
+
+    private final FloatBuffer textCoords;
+
+    private final FloatBuffer normals;
+
+    private final IntBuffer indices;
+
+    private final int materialIdx;
+
+    private final int[] lodCounts;
+
+    private final boolean allocated;
+
+    private Meshlets meshlets;
+
+    private Occluder occluder;
+
+    private MeshOptimizer.Stats statsBefore;
+
+    private MeshOptimizer.Stats statsAfter;
+
+    public MeshData(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IntBuffer indices, int materialIdx) {
+        this(positions, textCoords, normals, indices, materialIdx, null, true);
+    }
+
+    public MeshData(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IntBuffer indices, int materialIdx, int[] lodCounts) {
+        this(positions, textCoords, normals, indices, materialIdx, lodCounts, true);
+    }
+
+    public MeshData(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IntBuffer indices, int materialIdx, boolean allocated) {
+        this(positions, textCoords, normals, indices, materialIdx, null, allocated);
+    }
+
+    public MeshData(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IntBuffer indices, int materialIdx, int[] lodCounts, boolean allocated) {
+        this.lodCounts = lodCounts != null ? lodCounts : new int[]{indices.remaining()};
+        this.allocated = allocated;
+        this.positions = positions;
+        this.textCoords = textCoords;
+        this.normals = normals;
+        this.indices = indices;
+        this.materialIdx = materialIdx;
+    }
+
+    public FloatBuffer getPositions() {
+        return positions;
+    }
+
+    public FloatBuffer getTextCoords() {
+        return textCoords;
+    }
+
+    public FloatBuffer getNormals() {
+        return normals;
+    }
+
+    public IntBuffer getIndices() {
+        return indices;
+    }
+
+    public int getMaterialIdx() {
+        return materialIdx;
+    }
+
+    public int[] getLodCounts() {
+        return lodCounts;
+    }
+
+    public int getNumLods() {
+        return lodCounts.length;
+    }
+
+    public int getLodCount(int lod) {
+        return lodCounts[lod];
+    }
+
+    public int getLodOffset(int lod) {
+        int offset = 0;
+        for (int i = 0; i < lod; i++) {
+            offset += lodCounts[i];
+        }
+        return offset;
+    }
+
+    public Meshlets getMeshlets() {
+        return meshlets;
+    }
+
+    public void setMeshlets(Meshlets meshlets) {
+        this.meshlets = meshlets;
+    }
+
+    public Occluder getOccluder() {
+        return occluder;
+    }
+
+    public void setOccluder(Occluder occluder) {
+        this.occluder = occluder;
+    }
+
+    public MeshOptimizer.Stats getStatsBefore() {
+        return statsBefore;
+    }
+
+    public MeshOptimizer.Stats getStatsAfter() {
+        return statsAfter;
+    }
+
+    public void setOptimizationStats(MeshOptimizer.Stats statsBefore, MeshOptimizer.Stats statsAfter) {
+        this.statsBefore = statsBefore;
+        this.statsAfter = statsAfter;
+    }
+
+    public boolean isAllocated() {
+        return allocated;
+    }
+
+    public int getNumVertices() {
+        return positions.remaining() / 3;
+    }
+
+    public void free() {
+        if (!allocated) {
+            return;
+        }
+        MemoryUtil.memFree(positions);
+        MemoryUtil.memFree(textCoords);
+        MemoryUtil.memFree(normals);
+        MemoryUtil.memFree(indices);
+    }
+}
@@ -1,172 +1,314 @@
 package engine.loaders;
 
-import engine.utils.FileUtils;
 import engine.graphics.Material;
 import engine.graphics.Mesh;
 import engine.graphics.Texture;
+import engine.graphics.VertexFormat;
 import org.joml.Vector4f;
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.assimp.*;
+import org.lwjgl.system.MemoryUtil;
 
+import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
 
 import static org.lwjgl.assimp.Assimp.*;
 
 public class MeshLoader {
 
+    public static final int DEFAULT_FLAGS = aiProcess_GenSmoothNormals | aiProcess_JoinIdenticalVertices
+            | aiProcess_Triangulate | aiProcess_FixInfacingNormals | aiProcess_PreTransformVertices;
+
     public static Mesh[] load(String resourcePath, String texturesDir) throws Exception {
-        return load(resourcePath, texturesDir,
-                aiProcess_GenSmoothNormals | aiProcess_JoinIdenticalVertices | aiProcess_Triangulate
-                        | aiProcess_FixInfacingNormals | aiProcess_PreTransformVertices);
+        return load(resourcePath, texturesDir, DEFAULT_FLAGS);
     }
 
     public static Mesh[] load(String resourcePath, String texturesDir, int flags) throws Exception {
-        AIScene aiScene = aiImportFile(resourcePath, flags);
-        if (aiScene == null) {
-            throw new Exception("Nepodařilo se načíst soubor.");
+        return createMeshes(importModel(resourcePath, texturesDir, flags));
+    }
+
+    public static ModelData importModel(String resourcePath, String texturesDir, int flags) throws Exception {
+        return importModel(resourcePath, texturesDir, flags, false, false);
+    }
+
+    public static ModelData importModel(String resourcePath, String texturesDir, int flags, boolean optimize, boolean buildLods) throws Exception {
+        return importModel(resourcePath, texturesDir, flags, optimize, buildLods, false);
+    }
+
+    public static ModelData importModel(String resourcePath, String texturesDir, int flags, boolean optimize, boolean buildLods,
+                                        boolean buildAtlas) throws Exception {
+        MeshCache meshCache = MeshCache.getInstance();
+        String cacheKey = meshCache.getKey(resourcePath, texturesDir, flags, optimize + ":" + buildLods);
+        ModelData modelData = meshCache.load(cacheKey);
+        if (modelData == null) {
+            modelData = importScene(resourcePath, texturesDir, flags);
+            if (optimize) {
+                modelData = optimizeMeshes(modelData);
+            }
+            if (buildLods) {
+                modelData = buildLods(modelData);
+            }
+            meshCache.store(cacheKey, modelData);
+        }
+        if (buildAtlas) {
+            modelData = buildAtlas(modelData, resourcePath, cacheKey);
         }
+        return modelData;
+    }
 
-        int numMaterials = aiScene.mNumMaterials();
-        PointerBuffer aiMaterials = aiScene.mMaterials();
-        List<Material> materials = new ArrayList<>();
-        for (int i = 0; i < numMaterials; i++) {
-            assert aiMaterials != null;
-            AIMaterial aiMaterial = AIMaterial.create(aiMaterials.get(i));
-            processMaterial(aiMaterial, materials, texturesDir);
+    private static ModelData buildAtlas(ModelData modelData, String resourcePath, String cacheKey) throws Exception {
+        MeshCache meshCache = MeshCache.getInstance();
+        String atlasKey = meshCache.getAtlasKey(cacheKey, modelData, TextureAtlas.DEFAULT_BORDER,
+                TextureAtlas.DEFAULT_MAX_TILE_SIZE, TextureData.isCompressionEnabled());
+        ModelData atlased = meshCache.load(atlasKey);
+        if (atlased != null) {
+            modelData.free();
+            return atlased;
+        }
+        try {
+            atlased = TextureAtlas.apply(modelData, resourcePath + "#atlas", TextureAtlas.DEFAULT_BORDER,
+                    TextureAtlas.DEFAULT_MAX_TILE_SIZE);
+        } catch (Exception | Error excp) {
+            modelData.free();
+            throw excp;
         }
+        meshCache.store(atlasKey, atlased);
+        return atlased;
+    }
 
-        int numMeshes = aiScene.mNumMeshes();
-        PointerBuffer aiMeshes = aiScene.mMeshes();
-        Mesh[] meshes = new Mesh[numMeshes];
-        for (int i = 0; i < numMeshes; i++) {
-            assert aiMeshes != null;
-            AIMesh aiMesh = AIMesh.create(aiMeshes.get(i));
-            Mesh mesh = processMesh(aiMesh, materials);
-            meshes[i] = mesh;
+    private static ModelData buildLods(ModelData modelData) {
+        MeshData[] meshes = modelData.getMeshes();
+        MeshData[] withLods = new MeshData[meshes.length];
+        for (int i = 0; i < meshes.length; i++) {
+            MeshData mesh = meshes[i];
+            withLods[i] = MeshSimplifier.buildLods(mesh, MeshSimplifier.DEFAULT_MAX_LODS, MeshSimplifier.DEFAULT_LOD_RATIO,
+                    MeshSimplifier.DEFAULT_TARGET_ERROR);
+            withLods[i].setOptimizationStats(mesh.getStatsBefore(), mesh.getStatsAfter());
+            mesh.free();
         }
+        return new ModelData(modelData.getMaterials(), withLods, modelData.getEmbeddedTextures());
+    }
 
-        return meshes;
+    private static ModelData optimizeMeshes(ModelData modelData) {
+        MeshData[] meshes = modelData.getMeshes();
+        MeshData[] optimized = new MeshData[meshes.length];
+        for (int i = 0; i < meshes.length; i++) {
+            MeshData mesh = meshes[i];
+            MeshOptimizer.Stats before = MeshOptimizer.analyze(mesh.getIndices(), mesh.getNumVertices());
+            optimized[i] = MeshOptimizer.optimize(mesh, MeshOptimizer.DEFAULT_OVERDRAW_THRESHOLD);
+            MeshOptimizer.Stats after = MeshOptimizer.analyze(optimized[i].getIndices(), optimized[i].getNumVertices());
+            optimized[i].setOptimizationStats(before, after);
+            mesh.free();
+        }
+        return new ModelData(modelData.getMaterials(), optimized, modelData.getEmbeddedTextures());
     }
 
-    protected static void processIndices(AIMesh aiMesh, List<Integer> indices) {
-        int numFaces = aiMesh.mNumFaces();
-        AIFace.Buffer aiFaces = aiMesh.mFaces();
-        for (int i = 0; i < numFaces; i++) {
-            AIFace aiFace = aiFaces.get(i);
-            IntBuffer buffer = aiFace.mIndices();
-            while (buffer.remaining() > 0) {
-                indices.add(buffer.get());
+    private static ModelData importScene(String resourcePath, String texturesDir, int flags) throws Exception {
+        AIScene aiScene = aiImportFile(resourcePath, flags);
+        if (aiScene == null) {
+            throw new Exception("Nepodařilo se načíst soubor.");
+        }
+
+        try {
+            int numMaterials = aiScene.mNumMaterials();
+            PointerBuffer aiMaterials = aiScene.mMaterials();
+            MaterialData[] materials = new MaterialData[numMaterials];
+            for (int i = 0; i < numMaterials; i++) {
+                assert aiMaterials != null;
+                AIMaterial aiMaterial = AIMaterial.create(aiMaterials.get(i));
+                materials[i] = processMaterial(aiMaterial, texturesDir);
             }
+
+            int numMeshes = aiScene.mNumMeshes();
+            PointerBuffer aiMeshes = aiScene.mMeshes();
+            MeshData[] meshes = new MeshData[numMeshes];
+            for (int i = 0; i < numMeshes; i++) {
+                assert aiMeshes != null;
+                AIMesh aiMesh = AIMesh.create(aiMeshes.get(i));
+                meshes[i] = processMesh(aiMesh);
+            }
+
+            return new ModelData(materials, meshes);
+        } finally {
+            aiReleaseImport(aiScene);
         }
     }
 
-    protected static void processMaterial(AIMaterial aiMaterial, List<Material> materials,
-                                          String texturesDir) throws Exception {
-        AIColor4D colour = AIColor4D.create();
+    public static Mesh[] createMeshes(ModelData modelData) throws Exception {
+        return createMeshes(modelData, null);
+    }
 
-        AIString path = AIString.calloc();
-        Assimp.aiGetMaterialTexture(aiMaterial, aiTextureType_DIFFUSE, 0, path, (IntBuffer) null,
-                null, null, null, null, null);
-        String textPath = path.dataString();
-        Texture texture = null;
-        if (textPath.length() > 0) {
+    public static Mesh[] createMeshes(ModelData modelData, AssetLoader textureLoader) throws Exception {
+        return createMeshes(modelData, textureLoader, VertexFormat.STATIC);
+    }
+
+    public static Mesh[] createMeshes(ModelData modelData, AssetLoader textureLoader, VertexFormat vertexFormat) throws Exception {
+        try {
             TextureCache textCache = TextureCache.getInstance();
-            String textureFile = "";
-            if (texturesDir != null && texturesDir.length() > 0) {
-                textureFile += texturesDir + "/";
+            for (Map.Entry<String, TextureData> embedded : modelData.getEmbeddedTextures().entrySet()) {
+                if (!textCache.contains(embedded.getKey())) {
+                    textCache.preload(embedded.getKey(), embedded.getValue());
+                }
+            }
+            MaterialData[] materialsData = modelData.getMaterials();
+            Material[] materials = new Material[materialsData.length];
+            for (int i = 0; i < materialsData.length; i++) {
+                MaterialData materialData = materialsData[i];
+                Texture texture = null;
+                if (materialData.isTextured()) {
+                    texture = textureLoader != null && !textCache.contains(materialData.getTexturePath())
+                            ? textCache.getTextureAsync(materialData.getTexturePath(), textureLoader)
+                            : textCache.getTexture(materialData.getTexturePath());
+                }
+                Material material = new Material(materialData.getAmbientColour(), materialData.getDiffuseColour(),
+                        materialData.getSpecularColour(), 1.0f);
+                material.setTexture(texture);
+                materials[i] = material;
             }
-            textureFile += textPath;
-            textureFile = textureFile.replace("//", "/");
-            texture = textCache.getTexture(textureFile);
-        }
 
-        Vector4f ambient = Material.DEFAULT_COLOUR;
-        int result = aiGetMaterialColor(aiMaterial, AI_MATKEY_COLOR_AMBIENT, aiTextureType_NONE, 0,
-                colour);
-        if (result == 0) {
-            ambient = new Vector4f(colour.r(), colour.g(), colour.b(), colour.a());
+            MeshData[] meshesData = modelData.getMeshes();
+            Mesh[] meshes = new Mesh[meshesData.length];
+            for (int i = 0; i < meshesData.length; i++) {
+                MeshData meshData = meshesData[i];
+                Mesh mesh = new Mesh(meshData.getPositions(), meshData.getTextCoords(), meshData.getNormals(),
+                        meshData.getIndices(), meshData.getLodCounts(), vertexFormat);
+                mesh.setMeshlets(meshData.getMeshlets());
+                mesh.setOccluder(meshData.getOccluder());
+                int materialIdx = meshData.getMaterialIdx();
+                if (materialIdx >= 0 && materialIdx < materials.length) {
+                    mesh.setMaterial(materials[materialIdx]);
+                } else {
+                    mesh.setMaterial(new Material());
+                }
+                if (mesh.getMaterial().isTextured()) {
+                    textCache.acquire(mesh.getMaterial().getTexture());
+                }
+                meshes[i] = mesh;
+            }
+            for (Material material : materials) {
+                if (material.isTextured()) {
+                    textCache.release(material.getTexture());
+                }
+            }
+            return meshes;
+        } finally {
+            modelData.free();
         }
+    }
 
-        Vector4f diffuse = Material.DEFAULT_COLOUR;
-        result = aiGetMaterialColor(aiMaterial, AI_MATKEY_COLOR_DIFFUSE, aiTextureType_NONE, 0,
-                colour);
-        if (result == 0) {
-            diffuse = new Vector4f(colour.r(), colour.g(), colour.b(), colour.a());
-        }
+    protected static IntBuffer processIndices(AIMesh aiMesh) {
+        int numFaces = aiMesh.mNumFaces();
+        long faces = aiMesh.mFaces().address();
 
-        Vector4f specular = Material.DEFAULT_COLOUR;
-        result = aiGetMaterialColor(aiMaterial, AI_MATKEY_COLOR_SPECULAR, aiTextureType_NONE, 0,
-                colour);
-        if (result == 0) {
-            specular = new Vector4f(colour.r(), colour.g(), colour.b(), colour.a());
+        int numIndices = 0;
+        for (int i = 0; i < numFaces; i++) {
+            numIndices += AIFace.nmNumIndices(faces + (long) i * AIFace.SIZEOF);
         }
 
-        Material material = new Material(ambient, diffuse, specular, 1.0f);
-        material.setTexture(texture);
-        materials.add(material);
+        IntBuffer indices = MemoryUtil.memAllocInt(numIndices);
+        long dst = MemoryUtil.memAddress(indices);
+        for (int i = 0; i < numFaces; i++) {
+            long face = faces + (long) i * AIFace.SIZEOF;
+            long faceIndicesBytes = (long) AIFace.nmNumIndices(face) * Integer.BYTES;
+            MemoryUtil.memCopy(MemoryUtil.memGetAddress(face + AIFace.MINDICES), dst, faceIndicesBytes);
+            dst += faceIndicesBytes;
+        }
+        return indices;
     }
 
-    private static Mesh processMesh(AIMesh aiMesh, List<Material> materials) {
-        List<Float> vertices = new ArrayList<>();
-        List<Float> textures = new ArrayList<>();
-        List<Float> normals = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
+    protected static MaterialData processMaterial(AIMaterial aiMaterial, String texturesDir) {
+        String textureFile = null;
+        try (AIString path = AIString.calloc()) {
+            Assimp.aiGetMaterialTexture(aiMaterial, aiTextureType_DIFFUSE, 0, path, (IntBuffer) null,
+                    null, null, null, null, null);
+            String textPath = path.dataString();
+            if (textPath.length() > 0) {
+                textureFile = "";
+                if (texturesDir != null && texturesDir.length() > 0) {
+                    textureFile += texturesDir + "/";
+                }
+                textureFile += textPath;
+                textureFile = textureFile.replace("//", "/");
+            }
+        }
 
-        processVertices(aiMesh, vertices);
-        processNormals(aiMesh, normals);
-        processTextCoords(aiMesh, textures);
-        processIndices(aiMesh, indices);
+        try (AIColor4D colour = AIColor4D.calloc()) {
+            Vector4f ambient = Material.DEFAULT_COLOUR;
+            int result = aiGetMaterialColor(aiMaterial, AI_MATKEY_COLOR_AMBIENT, aiTextureType_NONE, 0,
+                    colour);
+            if (result == 0) {
+                ambient = new Vector4f(colour.r(), colour.g(), colour.b(), colour.a());
+            }
 
-        if (textures.size() == 0) {
-            int numElements = (vertices.size() / 3) * 2;
-            for (int i = 0; i < numElements; i++) {
-                textures.add(0.0f);
+            Vector4f diffuse = Material.DEFAULT_COLOUR;
+            result = aiGetMaterialColor(aiMaterial, AI_MATKEY_COLOR_DIFFUSE, aiTextureType_NONE, 0,
+                    colour);
+            if (result == 0) {
+                diffuse = new Vector4f(colour.r(), colour.g(), colour.b(), colour.a());
             }
-        }
 
-        Mesh mesh = new Mesh(FileUtils.listToArray(vertices), FileUtils.listToArray(textures),
-                FileUtils.listToArray(normals), FileUtils.listIntToArray(indices));
-        Material material;
-        int materialIdx = aiMesh.mMaterialIndex();
-        if (materialIdx >= 0 && materialIdx < materials.size()) {
-            material = materials.get(materialIdx);
-        } else {
-            material = new Material();
+            Vector4f specular = Material.DEFAULT_COLOUR;
+            result = aiGetMaterialColor(aiMaterial, AI_MATKEY_COLOR_SPECULAR, aiTextureType_NONE, 0,
+                    colour);
+            if (result == 0) {
+                specular = new Vector4f(colour.r(), colour.g(), colour.b(), colour.a());
+            }
+
+            return new MaterialData(ambient, diffuse, specular, textureFile);
         }
-        mesh.setMaterial(material);
+    }
 
-        return mesh;
+    private static MeshData processMesh(AIMesh aiMesh) {
+        FloatBuffer vertices = null;
+        FloatBuffer textures = null;
+        FloatBuffer normals = null;
+        IntBuffer indices = null;
+        try {
+            vertices = processVertices(aiMesh);
+            normals = processNormals(aiMesh);
+            textures = processTextCoords(aiMesh);
+            indices = processIndices(aiMesh);
+            return new MeshData(vertices, textures, normals, indices, aiMesh.mMaterialIndex());
+        } catch (RuntimeException | Error e) {
+            MemoryUtil.memFree(vertices);
+            MemoryUtil.memFree(textures);
+            MemoryUtil.memFree(normals);
+            MemoryUtil.memFree(indices);
+            throw e;
+        }
     }
 
-    protected static void processNormals(AIMesh aiMesh, List<Float> normals) {
+    protected static FloatBuffer processNormals(AIMesh aiMesh) {
+        int numFloats = aiMesh.mNumVertices() * 3;
         AIVector3D.Buffer aiNormals = aiMesh.mNormals();
-        while (aiNormals != null && aiNormals.remaining() > 0) {
-            AIVector3D aiNormal = aiNormals.get();
-            normals.add(aiNormal.x());
-            normals.add(aiNormal.y());
-            normals.add(aiNormal.z());
+        if (aiNormals == null) {
+            return MemoryUtil.memCallocFloat(numFloats);
         }
+        FloatBuffer normals = MemoryUtil.memAllocFloat(numFloats);
+        MemoryUtil.memCopy(aiNormals.address(), MemoryUtil.memAddress(normals), (long) numFloats * Float.BYTES);
+        return normals;
     }
 
-    protected static void processTextCoords(AIMesh aiMesh, List<Float> textures) {
+    protected static FloatBuffer processTextCoords(AIMesh aiMesh) {
+        int numVertices = aiMesh.mNumVertices();
         AIVector3D.Buffer textCoords = aiMesh.mTextureCoords(0);
-        int numTextCoords = textCoords != null ? textCoords.remaining() : 0;
-        for (int i = 0; i < numTextCoords; i++) {
-            AIVector3D textCoord = textCoords.get();
-            textures.add(textCoord.x());
-            textures.add(1 - textCoord.y());
+        if (textCoords == null) {
+            return MemoryUtil.memCallocFloat(numVertices * 2);
+        }
+        FloatBuffer source = MemoryUtil.memFloatBuffer(textCoords.address(), numVertices * 3);
+        FloatBuffer textures = MemoryUtil.memAllocFloat(numVertices * 2);
+        for (int i = 0; i < numVertices; i++) {
+            textures.put(i * 2, source.get(i * 3));
+            textures.put(i * 2 + 1, 1 - source.get(i * 3 + 1));
         }
+        return textures;
     }
 
-    protected static void processVertices(AIMesh aiMesh, List<Float> vertices) {
-        AIVector3D.Buffer aiVertices = aiMesh.mVertices();
-        while (aiVertices.remaining() > 0) {
-            AIVector3D aiVertex = aiVertices.get();
-            vertices.add(aiVertex.x());
-            vertices.add(aiVertex.y());
-            vertices.add(aiVertex.z());
-        }
+    protected static FloatBuffer processVertices(AIMesh aiMesh) {
+        int numFloats = aiMesh.mNumVertices() * 3;
+        FloatBuffer vertices = MemoryUtil.memAllocFloat(numFloats);
+        MemoryUtil.memCopy(aiMesh.mVertices().address(), MemoryUtil.memAddress(vertices), (long) numFloats * Float.BYTES);
+        return vertices;
     }
 }
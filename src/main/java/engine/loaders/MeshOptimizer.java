@@ -0,0 +1,413 @@
+package engine.loaders;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+public class MeshOptimizer {
+
+    public static final int ANALYZE_CACHE_SIZE = 16;
+
+    public static final float DEFAULT_OVERDRAW_THRESHOLD = 1.05f;
+
+    private static final int SCORE_CACHE_SIZE = 32;
+
+    private static final float CACHE_DECAY_POWER = 1.5f;
+
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+
+    private MeshOptimizer() {
+    }
+
+    public static MeshData optimize(MeshData meshData, float overdrawThreshold) {
+        int numVertices = meshData.getNumVertices();
+        int[] indices = toArray(meshData.getIndices());
+        indices = optimizeVertexCache(indices, numVertices);
+        indices = optimizeOverdraw(indices, meshData.getPositions(), overdrawThreshold);
+        return optimizeVertexFetch(meshData, indices);
+    }
+
+    public static int[] optimizeVertexCache(int[] indices, int numVertices) {
+        int numTriangles = indices.length / 3;
+        int[] valence = new int[numVertices];
+        for (int index : indices) {
+            valence[index]++;
+        }
+        int[] adjacencyOffsets = new int[numVertices + 1];
+        for (int i = 0; i < numVertices; i++) {
+            adjacencyOffsets[i + 1] = adjacencyOffsets[i] + valence[i];
+        }
+        int[] adjacency = new int[indices.length];
+        int[] fill = Arrays.copyOf(adjacencyOffsets, numVertices);
+        for (int i = 0; i < indices.length; i++) {
+            adjacency[fill[indices[i]]++] = i / 3;
+        }
+
+        int[] cachePosition = new int[numVertices];
+        Arrays.fill(cachePosition, -1);
+        float[] vertexScore = new float[numVertices];
+        for (int i = 0; i < numVertices; i++) {
+            vertexScore[i] = vertexScore(-1, valence[i]);
+        }
+        float[] triangleScore = new float[numTriangles];
+        for (int t = 0; t < numTriangles; t++) {
+            triangleScore[t] = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]] + vertexScore[indices[t * 3 + 2]];
+        }
+        boolean[] emitted = new boolean[numTriangles];
+
+        int[] cache = new int[SCORE_CACHE_SIZE + 3];
+        int[] newCache = new int[SCORE_CACHE_SIZE + 3];
+        int cacheSize = 0;
+        int[] result = new int[indices.length];
+        int scanCursor = 0;
+        int bestTriangle = -1;
+
+        for (int out = 0; out < numTriangles; out++) {
+            if (bestTriangle < 0) {
+                while (emitted[scanCursor]) {
+                    scanCursor++;
+                }
+                bestTriangle = scanCursor;
+            }
+            int triangle = bestTriangle;
+            emitted[triangle] = true;
+
+            int newCacheSize = 0;
+            for (int k = 0; k < 3; k++) {
+                int vertex = indices[triangle * 3 + k];
+                result[out * 3 + k] = vertex;
+                newCache[newCacheSize++] = vertex;
+
+                int start = adjacencyOffsets[vertex];
+                int end = start + valence[vertex];
+                for (int a = start; a < end; a++) {
+                    if (adjacency[a] == triangle) {
+                        adjacency[a] = adjacency[end - 1];
+                        break;
+                    }
+                }
+                valence[vertex]--;
+            }
+            for (int i = 0; i < cacheSize; i++) {
+                int vertex = cache[i];
+                if (vertex != newCache[0] && vertex != newCache[1] && vertex != newCache[2]) {
+                    newCache[newCacheSize++] = vertex;
+                }
+            }
+            int[] swap = cache;
+            cache = newCache;
+            newCache = swap;
+            cacheSize = newCacheSize;
+
+            for (int i = 0; i < cacheSize; i++) {
+                int vertex = cache[i];
+                cachePosition[vertex] = i < SCORE_CACHE_SIZE ? i : -1;
+                float score = vertexScore(cachePosition[vertex], valence[vertex]);
+                float delta = score - vertexScore[vertex];
+                vertexScore[vertex] = score;
+                int start = adjacencyOffsets[vertex];
+                int end = start + valence[vertex];
+                for (int a = start; a < end; a++) {
+                    triangleScore[adjacency[a]] += delta;
+                }
+            }
+            cacheSize = Math.min(cacheSize, SCORE_CACHE_SIZE);
+            bestTriangle = -1;
+            float bestScore = -1;
+            for (int i = 0; i < cacheSize; i++) {
+                int vertex = cache[i];
+                int start = adjacencyOffsets[vertex];
+                int end = start + valence[vertex];
+                for (int a = start; a < end; a++) {
+                    int t = adjacency[a];
+                    if (triangleScore[t] > bestScore) {
+                        bestScore = triangleScore[t];
+                        bestTriangle = t;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static float vertexScore(int cachePosition, int valence) {
+        if (valence == 0) {
+            return -1;
+        }
+        float score = 0;
+        if (cachePosition >= 0) {
+            if (cachePosition < 3) {
+                score = LAST_TRIANGLE_SCORE;
+            } else {
+                float scaler = 1.0f / (SCORE_CACHE_SIZE - 3);
+                score = (float) Math.pow(1.0f - (cachePosition - 3) * scaler, CACHE_DECAY_POWER);
+            }
+        }
+        return score + VALENCE_BOOST_SCALE * (float) Math.pow(valence, -VALENCE_BOOST_POWER);
+    }
+
+    public static int[] optimizeOverdraw(int[] indices, FloatBuffer positions, float threshold) {
+        int numTriangles = indices.length / 3;
+        if (numTriangles == 0) {
+            return indices;
+        }
+        int[] clusters = new int[numTriangles];
+        int numClusters = 0;
+        int[] hardBoundaries = hardBoundaries(indices);
+        for (int c = 0; c < hardBoundaries.length; c++) {
+            int start = hardBoundaries[c];
+            int end = c + 1 < hardBoundaries.length ? hardBoundaries[c + 1] : numTriangles;
+            float clusterAcmr = simulateFifo(indices, start, end, ANALYZE_CACHE_SIZE) / (float) (end - start);
+            clusters[numClusters++] = start;
+            int[] fifo = new int[ANALYZE_CACHE_SIZE];
+            Arrays.fill(fifo, -1);
+            int head = 0;
+            int misses = 0;
+            int clusterStart = start;
+            for (int t = start; t < end; t++) {
+                for (int k = 0; k < 3; k++) {
+                    int vertex = indices[t * 3 + k];
+                    if (!contains(fifo, vertex)) {
+                        fifo[head] = vertex;
+                        head = (head + 1) % fifo.length;
+                        misses++;
+                    }
+                }
+                int size = t + 1 - clusterStart;
+                if (t + 1 < end && misses <= threshold * clusterAcmr * size) {
+                    clusters[numClusters++] = t + 1;
+                    clusterStart = t + 1;
+                    misses = 0;
+                    Arrays.fill(fifo, -1);
+                    head = 0;
+                }
+            }
+        }
+
+        int posBase = positions.position();
+        float[] meshCentroid = new float[3];
+        for (int index : indices) {
+            for (int k = 0; k < 3; k++) {
+                meshCentroid[k] += positions.get(posBase + index * 3 + k);
+            }
+        }
+        for (int k = 0; k < 3; k++) {
+            meshCentroid[k] /= indices.length;
+        }
+
+        float[] sortKeys = new float[numClusters];
+        for (int c = 0; c < numClusters; c++) {
+            int start = clusters[c];
+            int end = c + 1 < numClusters ? clusters[c + 1] : numTriangles;
+            float[] centroid = new float[3];
+            float[] normal = new float[3];
+            float area = 0;
+            for (int t = start; t < end; t++) {
+                int a = posBase + indices[t * 3] * 3;
+                int b = posBase + indices[t * 3 + 1] * 3;
+                int d = posBase + indices[t * 3 + 2] * 3;
+                float e1x = positions.get(b) - positions.get(a);
+                float e1y = positions.get(b + 1) - positions.get(a + 1);
+                float e1z = positions.get(b + 2) - positions.get(a + 2);
+                float e2x = positions.get(d) - positions.get(a);
+                float e2y = positions.get(d + 1) - positions.get(a + 1);
+                float e2z = positions.get(d + 2) - positions.get(a + 2);
+                float nx = e1y * e2z - e1z * e2y;
+                float ny = e1z * e2x - e1x * e2z;
+                float nz = e1x * e2y - e1y * e2x;
+                float triangleArea = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+                for (int k = 0; k < 3; k++) {
+                    centroid[k] += (positions.get(a + k) + positions.get(b + k) + positions.get(d + k)) / 3 * triangleArea;
+                }
+                normal[0] += nx;
+                normal[1] += ny;
+                normal[2] += nz;
+                area += triangleArea;
+            }
+            float normalLength = (float) Math.sqrt(normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
+            float key = 0;
+            if (area > 0 && normalLength > 0) {
+                for (int k = 0; k < 3; k++) {
+                    key += (centroid[k] / area - meshCentroid[k]) * normal[k] / normalLength;
+                }
+            }
+            sortKeys[c] = key;
+        }
+
+        long[] order = new long[numClusters];
+        for (int c = 0; c < numClusters; c++) {
+            int bits = Float.floatToIntBits(sortKeys[c]);
+            order[c] = (long) ~(bits ^ (bits >> 31 & 0x7FFFFFFF)) << 32 | c;
+        }
+        Arrays.sort(order);
+
+        int[] result = new int[indices.length];
+        int out = 0;
+        for (long entry : order) {
+            int c = (int) entry;
+            int start = clusters[c];
+            int end = c + 1 < numClusters ? clusters[c + 1] : numTriangles;
+            int length = (end - start) * 3;
+            System.arraycopy(indices, start * 3, result, out, length);
+            out += length;
+        }
+        return result;
+    }
+
+    private static int[] hardBoundaries(int[] indices) {
+        int[] boundaries = new int[Math.max(1, indices.length / 3)];
+        int numBoundaries = 1;
+        int[] fifo = new int[ANALYZE_CACHE_SIZE];
+        Arrays.fill(fifo, -1);
+        int head = 0;
+        for (int t = 0; t < indices.length / 3; t++) {
+            int misses = 0;
+            for (int k = 0; k < 3; k++) {
+                int vertex = indices[t * 3 + k];
+                if (!contains(fifo, vertex)) {
+                    fifo[head] = vertex;
+                    head = (head + 1) % fifo.length;
+                    misses++;
+                }
+            }
+            if (misses == 3 && t > 0) {
+                boundaries[numBoundaries++] = t;
+            }
+        }
+        return Arrays.copyOf(boundaries, numBoundaries);
+    }
+
+    private static int simulateFifo(int[] indices, int startTriangle, int endTriangle, int cacheSize) {
+        int[] fifo = new int[cacheSize];
+        Arrays.fill(fifo, -1);
+        int head = 0;
+        int misses = 0;
+        for (int i = startTriangle * 3; i < endTriangle * 3; i++) {
+            if (!contains(fifo, indices[i])) {
+                fifo[head] = indices[i];
+                head = (head + 1) % cacheSize;
+                misses++;
+            }
+        }
+        return misses;
+    }
+
+    private static boolean contains(int[] fifo, int vertex) {
+        for (int cached : fifo) {
+            if (cached == vertex) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static MeshData optimizeVertexFetch(MeshData meshData, int[] indices) {
+        int numVertices = meshData.getNumVertices();
+        int[] remap = new int[numVertices];
+        Arrays.fill(remap, -1);
+        int numUsed = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int vertex = indices[i];
+            if (remap[vertex] < 0) {
+                remap[vertex] = numUsed++;
+            }
+            indices[i] = remap[vertex];
+        }
+
+        FloatBuffer positions = remapAttribute(meshData.getPositions(), remap, numUsed, 3);
+        FloatBuffer textCoords = remapAttribute(meshData.getTextCoords(), remap, numUsed, 2);
+        FloatBuffer normals = remapAttribute(meshData.getNormals(), remap, numUsed, 3);
+        IntBuffer indexBuffer = MemoryUtil.memAllocInt(indices.length);
+        indexBuffer.put(indices).flip();
+        return new MeshData(positions, textCoords, normals, indexBuffer, meshData.getMaterialIdx());
+    }
+
+    private static FloatBuffer remapAttribute(FloatBuffer source, int[] remap, int numUsed, int components) {
+        FloatBuffer target = MemoryUtil.memCallocFloat(numUsed * components);
+        int base = source.position();
+        if (source.remaining() < remap.length * components) {
+            return target;
+        }
+        for (int vertex = 0; vertex < remap.length; vertex++) {
+            int newVertex = remap[vertex];
+            if (newVertex < 0) {
+                continue;
+            }
+            for (int k = 0; k < components; k++) {
+                target.put(newVertex * components + k, source.get(base + vertex * components + k));
+            }
+        }
+        return target;
+    }
+
+    public static Stats analyze(IntBuffer indices, int numVertices) {
+        return analyze(toArray(indices), numVertices);
+    }
+
+    public static Stats analyze(int[] indices, int numVertices) {
+        int numTriangles = indices.length / 3;
+        boolean[] used = new boolean[numVertices];
+        int numUsed = 0;
+        for (int index : indices) {
+            if (!used[index]) {
+                used[index] = true;
+                numUsed++;
+            }
+        }
+        int misses = simulateFifo(indices, 0, numTriangles, ANALYZE_CACHE_SIZE);
+        return new Stats(numTriangles, numUsed, misses);
+    }
+
+    private static int[] toArray(IntBuffer buffer) {
+        int[] result = new int[buffer.remaining()];
+        buffer.get(buffer.position(), result);
+        return result;
+    }
+
+    public static class Stats {
+
+        private final int numTriangles;
+
+        private final int numVertices;
+
+        private final int cacheMisses;
+
+        public Stats(int numTriangles, int numVertices, int cacheMisses) {
+            this.numTriangles = numTriangles;
+            this.numVertices = numVertices;
+            this.cacheMisses = cacheMisses;
+        }
+
+        public float getAcmr() {
+            return numTriangles > 0 ? (float) cacheMisses / numTriangles : 0;
+        }
+
+        public float getAtvr() {
+            return numVertices > 0 ? (float) cacheMisses / numVertices : 0;
+        }
+
+        public int getNumTriangles() {
+            return numTriangles;
+        }
+
+        public int getNumVertices() {
+            return numVertices;
+        }
+
+        public int getCacheMisses() {
+            return cacheMisses;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ACMR %.3f, ATVR %.3f (%d trojúhelníků, %d vrcholů)", getAcmr(), getAtvr(),
+                    numTriangles, numVertices);
+        }
+    }
+}
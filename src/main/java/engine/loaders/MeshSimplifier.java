@@ -0,0 +1,400 @@
+package engine.loaders;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+public class MeshSimplifier {
+
+    public static final int DEFAULT_MAX_LODS = 4;
+
+    public static final float DEFAULT_LOD_RATIO = 0.5f;
+
+    public static final float DEFAULT_TARGET_ERROR = 0.02f;
+
+    private static final float MIN_LOD_REDUCTION = 0.9f;
+
+    private static final int MAX_PASSES = 100;
+
+    private static final long EMPTY_KEY = -1;
+
+    private MeshSimplifier() {
+    }
+
+    public static MeshData buildLods(MeshData meshData, int maxLods, float lodRatio, float targetError) {
+        int numVertices = meshData.getNumVertices();
+        int[] lod = toArray(meshData.getIndices(), 0, meshData.getLodCount(0));
+        int[][] lods = new int[maxLods][];
+        lods[0] = lod;
+        int numLods = 1;
+        float error = targetError;
+        while (numLods < maxLods) {
+            int targetCount = (int) (lod.length * lodRatio) / 3 * 3;
+            int[] simplified = simplify(lod, meshData.getPositions(), meshData.getTextCoords(), numVertices, targetCount, error);
+            if (simplified.length == 0 || simplified.length > lod.length * MIN_LOD_REDUCTION) {
+                break;
+            }
+            lod = MeshOptimizer.optimizeVertexCache(simplified, numVertices);
+            lods[numLods++] = lod;
+            error *= 2;
+        }
+
+        int totalIndices = 0;
+        for (int i = 0; i < numLods; i++) {
+            totalIndices += lods[i].length;
+        }
+        IntBuffer indices = MemoryUtil.memAllocInt(totalIndices);
+        int[] lodCounts = new int[numLods];
+        for (int i = 0; i < numLods; i++) {
+            indices.put(lods[i]);
+            lodCounts[i] = lods[i].length;
+        }
+        indices.flip();
+
+        FloatBuffer positions = copy(meshData.getPositions());
+        FloatBuffer textCoords = copy(meshData.getTextCoords());
+        FloatBuffer normals = copy(meshData.getNormals());
+        return new MeshData(positions, textCoords, normals, indices, meshData.getMaterialIdx(), lodCounts);
+    }
+
+    public static int[] simplify(int[] indices, FloatBuffer positions, FloatBuffer textCoords, int numVertices,
+                                 int targetCount, float targetError) {
+        int posBase = positions.position();
+        int[] weld = weldPositions(positions, numVertices);
+        int[] groupNext = linkGroups(weld);
+
+        float extent = 0;
+        for (int i = 0; i < numVertices * 3; i++) {
+            extent = Math.max(extent, Math.abs(positions.get(posBase + i)));
+        }
+        float maxError = targetError * extent;
+        maxError *= maxError;
+
+        double[] quadrics = new double[numVertices * 10];
+        int[] result = Arrays.copyOf(indices, indices.length);
+        int count = result.length;
+        for (int t = 0; t < count; t += 3) {
+            addTriangleQuadric(quadrics, positions, weld, result[t], result[t + 1], result[t + 2]);
+        }
+        boolean[] locked = findBoundaryVertices(result, count, weld, numVertices);
+
+        int[] remap = new int[numVertices];
+        for (int pass = 0; pass < MAX_PASSES && count > targetCount; pass++) {
+            long[] edgeSet = newKeyTable(count);
+            int numEdges = 0;
+            int[] edges = new int[count * 2];
+            for (int t = 0; t < count; t += 3) {
+                for (int k = 0; k < 3; k++) {
+                    int a = weld[result[t + k]];
+                    int b = weld[result[t + (k + 1) % 3]];
+                    if (a == b) {
+                        continue;
+                    }
+                    long key = edgeKey(a, b);
+                    int slot = findSlot(edgeSet, key);
+                    if (edgeSet[slot] == EMPTY_KEY) {
+                        edgeSet[slot] = key;
+                        edges[numEdges * 2] = a;
+                        edges[numEdges * 2 + 1] = b;
+                        numEdges++;
+                    }
+                }
+            }
+
+            float[] costs = new float[numEdges];
+            long[] order = new long[numEdges];
+            for (int e = 0; e < numEdges; e++) {
+                int a = edges[e * 2];
+                int b = edges[e * 2 + 1];
+                float costAB = locked[a] ? Float.POSITIVE_INFINITY : collapseCost(quadrics, positions, a, b);
+                float costBA = locked[b] ? Float.POSITIVE_INFINITY : collapseCost(quadrics, positions, b, a);
+                if (costBA < costAB) {
+                    edges[e * 2] = b;
+                    edges[e * 2 + 1] = a;
+                }
+                costs[e] = Math.min(costAB, costBA);
+                order[e] = (long) Float.floatToIntBits(costs[e]) << 32 | e;
+            }
+            Arrays.sort(order);
+
+            for (int v = 0; v < numVertices; v++) {
+                remap[v] = v;
+            }
+            int[] adjacencyOffsets = new int[numVertices + 1];
+            for (int i = 0; i < count; i++) {
+                adjacencyOffsets[weld[result[i]] + 1]++;
+            }
+            for (int v = 0; v < numVertices; v++) {
+                adjacencyOffsets[v + 1] += adjacencyOffsets[v];
+            }
+            int[] adjacency = new int[count];
+            int[] fill = Arrays.copyOf(adjacencyOffsets, numVertices);
+            for (int i = 0; i < count; i++) {
+                adjacency[fill[weld[result[i]]]++] = i / 3 * 3;
+            }
+
+            boolean[] touched = new boolean[numVertices];
+            int collapses = 0;
+            int trianglesToRemove = (count - targetCount) / 3;
+            int removed = 0;
+            for (long entry : order) {
+                int e = (int) entry;
+                if (costs[e] > maxError || removed >= trianglesToRemove) {
+                    break;
+                }
+                int from = edges[e * 2];
+                int to = edges[e * 2 + 1];
+                if (touched[from] || touched[to]
+                        || flipsTriangle(result, adjacency, adjacencyOffsets[from], adjacencyOffsets[from + 1], positions, weld, from, to)) {
+                    continue;
+                }
+                for (int a = adjacencyOffsets[from]; a < adjacencyOffsets[from + 1]; a++) {
+                    int t = adjacency[a];
+                    for (int k = 0; k < 3; k++) {
+                        if (weld[result[t + k]] == to) {
+                            removed++;
+                            break;
+                        }
+                    }
+                }
+                remap[from] = to;
+                touched[from] = true;
+                touched[to] = true;
+                for (int q = 0; q < 10; q++) {
+                    quadrics[to * 10 + q] += quadrics[from * 10 + q];
+                }
+                collapses++;
+            }
+            if (collapses == 0) {
+                break;
+            }
+
+            int newCount = 0;
+            for (int t = 0; t < count; t += 3) {
+                int a = collapseVertex(result[t], remap, weld, groupNext, textCoords, numVertices);
+                int b = collapseVertex(result[t + 1], remap, weld, groupNext, textCoords, numVertices);
+                int c = collapseVertex(result[t + 2], remap, weld, groupNext, textCoords, numVertices);
+                if (weld[a] == weld[b] || weld[b] == weld[c] || weld[a] == weld[c]) {
+                    continue;
+                }
+                result[newCount++] = a;
+                result[newCount++] = b;
+                result[newCount++] = c;
+            }
+            count = newCount;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static int collapseVertex(int vertex, int[] remap, int[] weld, int[] groupNext,
+                                      FloatBuffer textCoords, int numVertices) {
+        int group = weld[vertex];
+        int target = remap[group];
+        if (target == group) {
+            return vertex;
+        }
+        if (textCoords == null || textCoords.remaining() < numVertices * 2) {
+            return target;
+        }
+        int base = textCoords.position();
+        float u = textCoords.get(base + vertex * 2);
+        float v = textCoords.get(base + vertex * 2 + 1);
+        int best = target;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int candidate = target; candidate >= 0; candidate = groupNext[candidate]) {
+            float du = textCoords.get(base + candidate * 2) - u;
+            float dv = textCoords.get(base + candidate * 2 + 1) - v;
+            float distance = du * du + dv * dv;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private static int[] weldPositions(FloatBuffer positions, int numVertices) {
+        int base = positions.position();
+        int[] weld = new int[numVertices];
+        int[] firstByPosition = new int[tableSize(numVertices)];
+        Arrays.fill(firstByPosition, -1);
+        int mask = firstByPosition.length - 1;
+        for (int i = 0; i < numVertices; i++) {
+            int x = Float.floatToIntBits(positions.get(base + i * 3));
+            int y = Float.floatToIntBits(positions.get(base + i * 3 + 1));
+            int z = Float.floatToIntBits(positions.get(base + i * 3 + 2));
+            int hash = x * 0x9E3779B1 ^ y * 0x85EBCA77 ^ z * 0xC2B2AE3D;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (true) {
+                int first = firstByPosition[slot];
+                if (first < 0) {
+                    firstByPosition[slot] = i;
+                    weld[i] = i;
+                    break;
+                }
+                if (Float.floatToIntBits(positions.get(base + first * 3)) == x
+                        && Float.floatToIntBits(positions.get(base + first * 3 + 1)) == y
+                        && Float.floatToIntBits(positions.get(base + first * 3 + 2)) == z) {
+                    weld[i] = first;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        return weld;
+    }
+
+    private static long edgeKey(int a, int b) {
+        return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+    }
+
+    private static long[] newKeyTable(int capacity) {
+        long[] table = new long[tableSize(capacity)];
+        Arrays.fill(table, EMPTY_KEY);
+        return table;
+    }
+
+    private static int tableSize(int capacity) {
+        return Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1) << 1;
+    }
+
+    private static int findSlot(long[] table, long key) {
+        int mask = table.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (table[slot] != EMPTY_KEY && table[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int[] linkGroups(int[] weld) {
+        int[] next = new int[weld.length];
+        int[] last = new int[weld.length];
+        Arrays.fill(next, -1);
+        for (int i = 0; i < weld.length; i++) {
+            if (weld[i] != i) {
+                next[last[weld[i]]] = i;
+            }
+            last[weld[i]] = i;
+        }
+        return next;
+    }
+
+    private static boolean[] findBoundaryVertices(int[] indices, int count, int[] weld, int numVertices) {
+        long[] edges = newKeyTable(count);
+        int[] edgeUses = new int[edges.length];
+        for (int t = 0; t < count; t += 3) {
+            for (int k = 0; k < 3; k++) {
+                long key = edgeKey(weld[indices[t + k]], weld[indices[t + (k + 1) % 3]]);
+                int slot = findSlot(edges, key);
+                edges[slot] = key;
+                edgeUses[slot]++;
+            }
+        }
+        boolean[] locked = new boolean[numVertices];
+        for (int slot = 0; slot < edges.length; slot++) {
+            if (edgeUses[slot] == 1) {
+                locked[(int) (edges[slot] >>> 32)] = true;
+                locked[(int) (edges[slot] & 0xFFFFFFFFL)] = true;
+            }
+        }
+        return locked;
+    }
+
+    private static void addTriangleQuadric(double[] quadrics, FloatBuffer positions, int[] weld, int i0, int i1, int i2) {
+        int base = positions.position();
+        double x0 = positions.get(base + i0 * 3), y0 = positions.get(base + i0 * 3 + 1), z0 = positions.get(base + i0 * 3 + 2);
+        double x1 = positions.get(base + i1 * 3), y1 = positions.get(base + i1 * 3 + 1), z1 = positions.get(base + i1 * 3 + 2);
+        double x2 = positions.get(base + i2 * 3), y2 = positions.get(base + i2 * 3 + 1), z2 = positions.get(base + i2 * 3 + 2);
+        double nx = (y1 - y0) * (z2 - z0) - (z1 - z0) * (y2 - y0);
+        double ny = (z1 - z0) * (x2 - x0) - (x1 - x0) * (z2 - z0);
+        double nz = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0) {
+            return;
+        }
+        double area = length * 0.5;
+        nx /= length;
+        ny /= length;
+        nz /= length;
+        double d = -(nx * x0 + ny * y0 + nz * z0);
+        double[] plane = {nx * nx, nx * ny, nx * nz, nx * d, ny * ny, ny * nz, ny * d, nz * nz, nz * d, d * d};
+        for (int vertex : new int[]{weld[i0], weld[i1], weld[i2]}) {
+            for (int q = 0; q < 10; q++) {
+                quadrics[vertex * 10 + q] += plane[q] * area;
+            }
+        }
+    }
+
+    private static float collapseCost(double[] quadrics, FloatBuffer positions, int from, int to) {
+        int base = positions.position();
+        double x = positions.get(base + to * 3);
+        double y = positions.get(base + to * 3 + 1);
+        double z = positions.get(base + to * 3 + 2);
+        double error = 0;
+        for (int vertex : new int[]{from, to}) {
+            int q = vertex * 10;
+            error += quadrics[q] * x * x + 2 * quadrics[q + 1] * x * y + 2 * quadrics[q + 2] * x * z + 2 * quadrics[q + 3] * x
+                    + quadrics[q + 4] * y * y + 2 * quadrics[q + 5] * y * z + 2 * quadrics[q + 6] * y
+                    + quadrics[q + 7] * z * z + 2 * quadrics[q + 8] * z
+                    + quadrics[q + 9];
+        }
+        double area = quadricArea(quadrics, from) + quadricArea(quadrics, to);
+        return (float) (area > 0 ? Math.abs(error) / area : Math.abs(error));
+    }
+
+    private static double quadricArea(double[] quadrics, int vertex) {
+        int q = vertex * 10;
+        return quadrics[q] + quadrics[q + 4] + quadrics[q + 7];
+    }
+
+    private static boolean flipsTriangle(int[] indices, int[] adjacency, int start, int end, FloatBuffer positions,
+                                         int[] weld, int from, int to) {
+        int base = positions.position();
+        for (int a = start; a < end; a++) {
+            int t = adjacency[a];
+            int slot = -1;
+            boolean hasTo = false;
+            for (int k = 0; k < 3; k++) {
+                int w = weld[indices[t + k]];
+                if (w == from) {
+                    slot = k;
+                } else if (w == to) {
+                    hasTo = true;
+                }
+            }
+            if (slot < 0 || hasTo) {
+                continue;
+            }
+            int[] corners = {weld[indices[t]], weld[indices[t + 1]], weld[indices[t + 2]]};
+            float[] before = triangleNormal(positions, base, corners[0], corners[1], corners[2]);
+            corners[slot] = to;
+            float[] moved = triangleNormal(positions, base, corners[0], corners[1], corners[2]);
+            if (before[0] * moved[0] + before[1] * moved[1] + before[2] * moved[2] <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static float[] triangleNormal(FloatBuffer positions, int base, int i0, int i1, int i2) {
+        float x0 = positions.get(base + i0 * 3), y0 = positions.get(base + i0 * 3 + 1), z0 = positions.get(base + i0 * 3 + 2);
+        float ex1 = positions.get(base + i1 * 3) - x0, ey1 = positions.get(base + i1 * 3 + 1) - y0, ez1 = positions.get(base + i1 * 3 + 2) - z0;
+        float ex2 = positions.get(base + i2 * 3) - x0, ey2 = positions.get(base + i2 * 3 + 1) - y0, ez2 = positions.get(base + i2 * 3 + 2) - z0;
+        return new float[]{ey1 * ez2 - ez1 * ey2, ez1 * ex2 - ex1 * ez2, ex1 * ey2 - ey1 * ex2};
+    }
+
+    private static FloatBuffer copy(FloatBuffer source) {
+        FloatBuffer target = MemoryUtil.memAllocFloat(source.remaining());
+        target.put(source.duplicate()).flip();
+        return target;
+    }
+
+    private static int[] toArray(IntBuffer buffer, int offset, int length) {
+        int[] result = new int[length];
+        buffer.get(buffer.position() + offset, result);
+        return result;
+    }
+}
@@ -0,0 +1,46 @@
+package engine.loaders;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class ModelData {
+
+    private final MaterialData[] materials;
+
+    private final MeshData[] meshes;
+
+    private final Map<String, TextureData> embeddedTextures;
+
+    public ModelData(MaterialData[] materials, MeshData[] meshes) {
+        this(materials, meshes, Collections.emptyMap());
+    }
+
+    public ModelData(MaterialData[] materials, MeshData[] meshes, Map<String, TextureData> embeddedTextures) {
+        this.materials = materials;
+        this.meshes = meshes;
+        this.embeddedTextures = embeddedTextures;
+    }
+
+    public MaterialData[] getMaterials() {
+        return materials;
+    }
+
+    public MeshData[] getMeshes() {
+        return meshes;
+    }
+
+    public Map<String, TextureData> getEmbeddedTextures() {
+        return embeddedTextures;
+    }
+
+    public void free() {
+        for (MeshData mesh : meshes) {
+            if (mesh != null) {
+                mesh.free();
+            }
+        }
+        for (TextureData textureData : embeddedTextures.values()) {
+            textureData.free();
+        }
+    }
+}
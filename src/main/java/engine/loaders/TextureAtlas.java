@@ -0,0 +1,358 @@
+package engine.loaders;
+
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+public class TextureAtlas {
+
+    public static final int DEFAULT_BORDER = 4;
+
+    public static final int DEFAULT_MAX_TILE_SIZE = 1024;
+
+    private static final float UV_EPSILON = 1e-4f;
+
+    private final TextureData textureData;
+
+    private final Region[] regions;
+
+    private TextureAtlas(TextureData textureData, Region[] regions) {
+        this.textureData = textureData;
+        this.regions = regions;
+    }
+
+    public static TextureAtlas pack(TextureData[] tiles, int border) {
+        int numTiles = tiles.length;
+        Integer[] order = new Integer[numTiles];
+        long area = 0;
+        int maxWidth = 0;
+        for (int i = 0; i < numTiles; i++) {
+            order[i] = i;
+            int width = tiles[i].getWidth() + 2 * border;
+            int height = tiles[i].getHeight() + 2 * border;
+            area += (long) width * height;
+            maxWidth = Math.max(maxWidth, width);
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(tiles[b].getHeight(), tiles[a].getHeight()));
+
+        int atlasWidth = Math.max(nextPowerOfTwo(maxWidth), nextPowerOfTwo((int) Math.ceil(Math.sqrt(area))));
+        Region[] regions = new Region[numTiles];
+        int x = 0;
+        int y = 0;
+        int shelfHeight = 0;
+        for (int idx : order) {
+            int width = tiles[idx].getWidth() + 2 * border;
+            int height = tiles[idx].getHeight() + 2 * border;
+            if (x + width > atlasWidth) {
+                x = 0;
+                y += shelfHeight;
+                shelfHeight = 0;
+            }
+            regions[idx] = new Region(x + border, y + border, tiles[idx].getWidth(), tiles[idx].getHeight());
+            x += width;
+            shelfHeight = Math.max(shelfHeight, height);
+        }
+        int atlasHeight = nextPowerOfTwo(y + shelfHeight);
+
+        ByteBuffer pixels = MemoryUtil.memCalloc(atlasWidth * atlasHeight * TextureData.BYTES_PER_PIXEL);
+        for (int i = 0; i < numTiles; i++) {
+            blit(tiles[i], pixels, atlasWidth, regions[i], border);
+        }
+        for (Region region : regions) {
+            region.setAtlasSize(atlasWidth, atlasHeight);
+        }
+        TextureData atlasData = TextureData.allocated(new ByteBuffer[]{pixels}, atlasWidth, atlasHeight, null, pixels);
+        return new TextureAtlas(atlasData, regions);
+    }
+
+    public static TextureAtlas grid(TextureData[] tiles) {
+        int tileWidth = tiles[0].getWidth();
+        int tileHeight = tiles[0].getHeight();
+        for (TextureData tile : tiles) {
+            if (tile.getWidth() != tileWidth || tile.getHeight() != tileHeight) {
+                throw new IllegalArgumentException("Dlaždice mřížkového atlasu musí mít stejnou velikost.");
+            }
+        }
+        int numCols = (int) Math.ceil(Math.sqrt(tiles.length));
+        int numRows = (tiles.length + numCols - 1) / numCols;
+        int atlasWidth = numCols * tileWidth;
+        int atlasHeight = numRows * tileHeight;
+
+        ByteBuffer pixels = MemoryUtil.memCalloc(atlasWidth * atlasHeight * TextureData.BYTES_PER_PIXEL);
+        Region[] regions = new Region[tiles.length];
+        for (int i = 0; i < tiles.length; i++) {
+            regions[i] = new Region((i % numCols) * tileWidth, (i / numCols) * tileHeight, tileWidth, tileHeight);
+            regions[i].setAtlasSize(atlasWidth, atlasHeight);
+            blit(tiles[i], pixels, atlasWidth, regions[i], 0);
+        }
+        TextureData atlasData = TextureData.allocated(new ByteBuffer[]{pixels}, atlasWidth, atlasHeight, null, pixels);
+        atlasData.setGrid(numCols, numRows);
+        return new TextureAtlas(atlasData, regions);
+    }
+
+    public static ModelData apply(ModelData modelData, String atlasPath, int border, int maxTileSize) throws Exception {
+        MaterialData[] materials = modelData.getMaterials();
+        MeshData[] meshes = modelData.getMeshes();
+
+        boolean[] candidate = new boolean[materials.length];
+        for (int i = 0; i < materials.length; i++) {
+            candidate[i] = materials[i].isTextured();
+        }
+        for (MeshData mesh : meshes) {
+            int materialIdx = mesh.getMaterialIdx();
+            if (materialIdx >= 0 && materialIdx < materials.length && !isNormalized(mesh.getTextCoords())) {
+                candidate[materialIdx] = false;
+            }
+        }
+
+        Map<String, TextureData> tiles = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < materials.length; i++) {
+                String path = materials[i].getTexturePath();
+                if (!candidate[i] || tiles.containsKey(path)) {
+                    continue;
+                }
+                TextureData tile = TextureData.decode(path);
+                if (tile.getWidth() > maxTileSize || tile.getHeight() > maxTileSize) {
+                    tile.free();
+                    tiles.put(path, null);
+                } else {
+                    tiles.put(path, tile);
+                }
+            }
+            tiles.values().removeIf(Objects::isNull);
+            for (int i = 0; i < materials.length; i++) {
+                candidate[i] = candidate[i] && tiles.containsKey(materials[i].getTexturePath());
+            }
+            if (tiles.size() < 2) {
+                return modelData;
+            }
+
+            List<String> paths = new ArrayList<>(tiles.keySet());
+            TextureAtlas atlas = pack(tiles.values().toArray(new TextureData[0]), border);
+            Map<String, Region> regionsByPath = new HashMap<>();
+            for (int i = 0; i < paths.size(); i++) {
+                regionsByPath.put(paths.get(i), atlas.getRegion(i));
+            }
+
+            List<MaterialData> newMaterials = new ArrayList<>();
+            Map<List<Vector4f>, Integer> atlasMaterials = new HashMap<>();
+            int[] materialRemap = new int[materials.length];
+            for (int i = 0; i < materials.length; i++) {
+                MaterialData material = materials[i];
+                if (candidate[i]) {
+                    List<Vector4f> colours = List.of(material.getAmbientColour(), material.getDiffuseColour(),
+                            material.getSpecularColour());
+                    Integer idx = atlasMaterials.get(colours);
+                    if (idx == null) {
+                        idx = newMaterials.size();
+                        newMaterials.add(new MaterialData(material.getAmbientColour(), material.getDiffuseColour(),
+                                material.getSpecularColour(), atlasPath));
+                        atlasMaterials.put(colours, idx);
+                    }
+                    materialRemap[i] = idx;
+                } else {
+                    materialRemap[i] = newMaterials.size();
+                    newMaterials.add(material);
+                }
+            }
+
+            List<MeshData> newMeshes = new ArrayList<>();
+            Map<Integer, List<MeshData>> batches = new LinkedHashMap<>();
+            for (MeshData mesh : meshes) {
+                int materialIdx = mesh.getMaterialIdx();
+                boolean validIdx = materialIdx >= 0 && materialIdx < materials.length;
+                if (validIdx && candidate[materialIdx]) {
+                    batches.computeIfAbsent(materialRemap[materialIdx], key -> new ArrayList<>()).add(mesh);
+                } else {
+                    newMeshes.add(new MeshData(mesh.getPositions(), mesh.getTextCoords(), mesh.getNormals(),
+                            mesh.getIndices(), validIdx ? materialRemap[materialIdx] : -1, mesh.getLodCounts(),
+                            mesh.isAllocated()));
+                }
+            }
+            for (Map.Entry<Integer, List<MeshData>> batch : batches.entrySet()) {
+                newMeshes.add(merge(batch.getValue(), batch.getKey(), materials, regionsByPath));
+                for (MeshData mesh : batch.getValue()) {
+                    mesh.free();
+                }
+            }
+
+            TextureData atlasData = TextureData.prepare(atlas.getTextureData(), TextureData.isCompressionEnabled(),
+                    getMaxMipLevels(border));
+            Map<String, TextureData> embeddedTextures = new HashMap<>(modelData.getEmbeddedTextures());
+            embeddedTextures.put(atlasPath, atlasData);
+            return new ModelData(newMaterials.toArray(new MaterialData[0]), newMeshes.toArray(new MeshData[0]),
+                    embeddedTextures);
+        } finally {
+            for (TextureData tile : tiles.values()) {
+                if (tile != null) {
+                    tile.free();
+                }
+            }
+        }
+    }
+
+    private static MeshData merge(List<MeshData> meshes, int materialIdx, MaterialData[] materials,
+                                  Map<String, Region> regionsByPath) {
+        int numVertices = 0;
+        int numLods = Integer.MAX_VALUE;
+        for (MeshData mesh : meshes) {
+            numVertices += mesh.getNumVertices();
+            numLods = Math.min(numLods, mesh.getNumLods());
+        }
+        int[] lodCounts = new int[numLods];
+        int numIndices = 0;
+        for (int lod = 0; lod < numLods; lod++) {
+            for (MeshData mesh : meshes) {
+                lodCounts[lod] += mesh.getLodCount(lod);
+            }
+            numIndices += lodCounts[lod];
+        }
+
+        FloatBuffer positions = MemoryUtil.memAllocFloat(numVertices * 3);
+        FloatBuffer textCoords = MemoryUtil.memAllocFloat(numVertices * 2);
+        FloatBuffer normals = MemoryUtil.memAllocFloat(numVertices * 3);
+        IntBuffer indices = MemoryUtil.memAllocInt(numIndices);
+        int[] baseVertices = new int[meshes.size()];
+        int baseVertex = 0;
+        for (int m = 0; m < meshes.size(); m++) {
+            MeshData mesh = meshes.get(m);
+            Region region = regionsByPath.get(materials[mesh.getMaterialIdx()].getTexturePath());
+            positions.put(mesh.getPositions().duplicate());
+            normals.put(mesh.getNormals().duplicate());
+            FloatBuffer meshTextCoords = mesh.getTextCoords();
+            for (int i = meshTextCoords.position(); i < meshTextCoords.limit(); i += 2) {
+                textCoords.put(region.mapU(meshTextCoords.get(i)));
+                textCoords.put(region.mapV(meshTextCoords.get(i + 1)));
+            }
+            baseVertices[m] = baseVertex;
+            baseVertex += mesh.getNumVertices();
+        }
+        for (int lod = 0; lod < numLods; lod++) {
+            for (int m = 0; m < meshes.size(); m++) {
+                MeshData mesh = meshes.get(m);
+                IntBuffer meshIndices = mesh.getIndices();
+                int start = meshIndices.position() + mesh.getLodOffset(lod);
+                int end = start + mesh.getLodCount(lod);
+                for (int i = start; i < end; i++) {
+                    indices.put(meshIndices.get(i) + baseVertices[m]);
+                }
+            }
+        }
+        positions.flip();
+        textCoords.flip();
+        normals.flip();
+        indices.flip();
+        return new MeshData(positions, textCoords, normals, indices, materialIdx, lodCounts);
+    }
+
+    public static int getMaxMipLevels(int border) {
+        return border > 0 ? 32 - Integer.numberOfLeadingZeros(border) : 1;
+    }
+
+    private static boolean isNormalized(FloatBuffer textCoords) {
+        for (int i = textCoords.position(); i < textCoords.limit(); i++) {
+            float value = textCoords.get(i);
+            if (value < -UV_EPSILON || value > 1 + UV_EPSILON) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void blit(TextureData tile, ByteBuffer atlas, int atlasWidth, Region region, int border) {
+        ByteBuffer src = tile.getPixels();
+        int width = tile.getWidth();
+        int height = tile.getHeight();
+        for (int y = -border; y < height + border; y++) {
+            int srcY = Math.min(Math.max(y, 0), height - 1);
+            for (int x = -border; x < width + border; x++) {
+                int srcX = Math.min(Math.max(x, 0), width - 1);
+                int srcOffset = (srcY * width + srcX) * TextureData.BYTES_PER_PIXEL;
+                int dstOffset = ((region.getY() + y) * atlasWidth + region.getX() + x) * TextureData.BYTES_PER_PIXEL;
+                atlas.putInt(dstOffset, src.getInt(srcOffset));
+            }
+        }
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    public TextureData getTextureData() {
+        return textureData;
+    }
+
+    public Region getRegion(int idx) {
+        return regions[idx];
+    }
+
+    public int getNumRegions() {
+        return regions.length;
+    }
+
+    public void free() {
+        textureData.free();
+    }
+
+    public static class Region {
+
+        private final int x;
+
+        private final int y;
+
+        private final int width;
+
+        private final int height;
+
+        private int atlasWidth;
+
+        private int atlasHeight;
+
+        public Region(int x, int y, int width, int height) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        private void setAtlasSize(int atlasWidth, int atlasHeight) {
+            this.atlasWidth = atlasWidth;
+            this.atlasHeight = atlasHeight;
+        }
+
+        public float mapU(float u) {
+            return (x + u * width) / atlasWidth;
+        }
+
+        public float mapV(float v) {
+            return (y + v * height) / atlasHeight;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+    }
+}
@@ -3,16 +3,34 @@ package engine.loaders;
 import engine.graphics.Texture;
 
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class TextureCache {
 
+    public static final long DEFAULT_BUDGET_BYTES = 256L * 1024 * 1024;
+
     private static TextureCache INSTANCE;
 
-    private final Map<String, Texture> texturesMap;
+    private final LinkedHashMap<String, Entry> texturesMap;
+
+    private final Map<Texture, Entry> entriesByTexture;
+
+    private long budgetBytes;
+
+    private long residentBytes;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
 
     private TextureCache() {
-        texturesMap = new HashMap<>();
+        texturesMap = new LinkedHashMap<>(16, 0.75f, true);
+        entriesByTexture = new HashMap<>();
+        budgetBytes = DEFAULT_BUDGET_BYTES;
     }
 
     public static synchronized TextureCache getInstance() {
@@ -22,12 +40,176 @@ public class TextureCache {
         return INSTANCE;
     }
 
-    public Texture getTexture(String path) throws Exception {
-        Texture texture = texturesMap.get(path);
-        if (texture == null) {
-            texture = new Texture(path);
-            texturesMap.put(path, texture);
+    public synchronized boolean contains(String path) {
+        return texturesMap.containsKey(path);
+    }
+
+    public synchronized Texture getTexture(String path) throws Exception {
+        Entry entry = texturesMap.get(path);
+        if (entry == null) {
+            misses++;
+            entry = insert(path, new Texture(path));
+        } else {
+            hits++;
+        }
+        entry.acquire();
+        evict();
+        return entry.texture;
+    }
+
+    public synchronized Texture getTexture(String path, TextureData textureData) {
+        Entry entry = texturesMap.get(path);
+        if (entry == null) {
+            misses++;
+            entry = insert(path, new Texture(textureData));
+        } else {
+            hits++;
         }
+        entry.acquire();
+        evict();
+        return entry.texture;
+    }
+
+    public synchronized Texture getTextureAsync(String path, AssetLoader assetLoader) {
+        Entry entry = texturesMap.get(path);
+        if (entry != null) {
+            hits++;
+            entry.acquire();
+            return entry.texture;
+        }
+        misses++;
+        Texture texture = Texture.placeholder();
+        entry = insert(path, texture);
+        entry.acquire();
+        assetLoader.decodeTexture(path)
+                .thenCompose(textureData -> assetLoader.submitUpload(() -> {
+                    try {
+                        swapIn(texture, textureData);
+                        return null;
+                    } finally {
+                        textureData.free();
+                    }
+                }))
+                .exceptionally(excp -> {
+                    System.err.println("Nepodařilo se načíst texturu " + path + ": " + excp.getMessage());
+                    return null;
+                });
         return texture;
     }
+
+    public synchronized void preload(String path, TextureData textureData) {
+        if (!texturesMap.containsKey(path)) {
+            insert(path, new Texture(textureData)).pinned = true;
+            evict();
+        }
+    }
+
+    public synchronized Texture acquire(Texture texture) {
+        Entry entry = entriesByTexture.get(texture);
+        if (entry != null) {
+            entry.acquire();
+        }
+        return texture;
+    }
+
+    public synchronized boolean release(Texture texture) {
+        Entry entry = entriesByTexture.get(texture);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.refCount > 0) {
+            entry.refCount--;
+        }
+        if (entry.refCount == 0) {
+            evict();
+        }
+        return true;
+    }
+
+    public synchronized long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evict();
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized int getNumTextures() {
+        return texturesMap.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized void cleanup() {
+        for (Entry entry : texturesMap.values()) {
+            entry.texture.cleanup();
+        }
+        texturesMap.clear();
+        entriesByTexture.clear();
+        residentBytes = 0;
+    }
+
+    private synchronized void swapIn(Texture texture, TextureData textureData) {
+        if (entriesByTexture.containsKey(texture)) {
+            residentBytes -= texture.getSizeBytes();
+            texture.replace(textureData);
+            residentBytes += texture.getSizeBytes();
+            evict();
+        }
+    }
+
+    private Entry insert(String path, Texture texture) {
+        Entry entry = new Entry(texture);
+        texturesMap.put(path, entry);
+        entriesByTexture.put(texture, entry);
+        residentBytes += texture.getSizeBytes();
+        return entry;
+    }
+
+    private void evict() {
+        Iterator<Entry> it = texturesMap.values().iterator();
+        while (residentBytes > budgetBytes && it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.refCount == 0 && !entry.pinned) {
+                it.remove();
+                entriesByTexture.remove(entry.texture);
+                residentBytes -= entry.texture.getSizeBytes();
+                entry.texture.cleanup();
+                evictions++;
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final Texture texture;
+
+        private int refCount;
+
+        private boolean pinned;
+
+        private Entry(Texture texture) {
+            this.texture = texture;
+        }
+
+        private void acquire() {
+            refCount++;
+            pinned = false;
+        }
+    }
 }
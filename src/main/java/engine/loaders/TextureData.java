@@ -0,0 +1,225 @@
+package engine.loaders;
+
+import engine.utils.Resource;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.stb.STBImage.stbi_failure_reason;
+import static org.lwjgl.stb.STBImage.stbi_image_free;
+import static org.lwjgl.stb.STBImage.stbi_load_from_memory;
+import static org.lwjgl.system.MemoryStack.stackPush;
+
+public class TextureData {
+
+    public static final int BYTES_PER_PIXEL = 4;
+
+    private enum Storage {
+        STB, NATIVE, MAPPED
+    }
+
+    private static volatile boolean compressionEnabled;
+
+    private final ByteBuffer[] levels;
+
+    private final int width;
+
+    private final int height;
+
+    private final ByteBuffer storageBuffer;
+
+    private final Storage storage;
+
+    private final BlockCompressor.Format format;
+
+    private int numCols = 1;
+
+    private int numRows = 1;
+
+    private TextureData(ByteBuffer[] levels, int width, int height, BlockCompressor.Format format, ByteBuffer storageBuffer, Storage storage) {
+        this.levels = levels;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.storageBuffer = storageBuffer;
+        this.storage = storage;
+    }
+
+    public static TextureData mapped(ByteBuffer[] levels, int width, int height, BlockCompressor.Format format) {
+        return new TextureData(levels, width, height, format, null, Storage.MAPPED);
+    }
+
+    public static TextureData allocated(ByteBuffer[] levels, int width, int height, BlockCompressor.Format format, ByteBuffer storageBuffer) {
+        return new TextureData(levels, width, height, format, storageBuffer, Storage.NATIVE);
+    }
+
+    public static boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public static void setCompressionEnabled(boolean compressionEnabled) {
+        TextureData.compressionEnabled = compressionEnabled;
+    }
+
+    public static TextureData load(String fileName) throws Exception {
+        boolean compress = compressionEnabled;
+        TextureDiskCache diskCache = TextureDiskCache.getInstance();
+        String cacheKey = diskCache.getKey(fileName, compress);
+        TextureData textureData = diskCache.load(cacheKey);
+        if (textureData == null) {
+            textureData = prepare(decode(fileName), compress);
+            diskCache.store(cacheKey, textureData);
+        }
+        return textureData;
+    }
+
+    public static TextureData prepare(TextureData decoded, boolean compress) {
+        return prepare(decoded, compress, Integer.MAX_VALUE);
+    }
+
+    public static TextureData prepare(TextureData decoded, boolean compress, int maxLevels) {
+        TextureData textureData;
+        try {
+            textureData = decoded.generateMipmaps(maxLevels);
+        } finally {
+            decoded.free();
+        }
+        if (compress) {
+            TextureData uncompressed = textureData;
+            try {
+                textureData = BlockCompressor.compress(uncompressed, BlockCompressor.chooseFormat(uncompressed));
+            } finally {
+                uncompressed.free();
+            }
+        }
+        return textureData;
+    }
+
+    public static TextureData decode(String fileName) throws Exception {
+        try (Resource resource = Resource.open(fileName)) {
+            return decode(resource.getBuffer());
+        }
+    }
+
+    public static TextureData decode(ByteBuffer imageData) throws Exception {
+        try (MemoryStack stack = stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer avChannels = stack.mallocInt(1);
+
+            ByteBuffer decodedImage = stbi_load_from_memory(imageData, w, h, avChannels, BYTES_PER_PIXEL);
+            if (decodedImage == null) {
+                throw new Exception("Nepodařilo se načíst texturu: " + stbi_failure_reason());
+            }
+            return new TextureData(new ByteBuffer[]{decodedImage}, w.get(), h.get(), null, decodedImage, Storage.STB);
+        }
+    }
+
+    public TextureData generateMipmaps(int maxLevels) {
+        if (isCompressed()) {
+            throw new IllegalStateException("Komprimovaná textura nepodporuje generování mipmap.");
+        }
+        int numLevels = Math.max(1, Math.min(maxLevels, 1 + (31 - Integer.numberOfLeadingZeros(Math.max(width, height)))));
+        int totalBytes = 0;
+        for (int i = 0; i < numLevels; i++) {
+            totalBytes += getLevelWidth(i) * getLevelHeight(i) * BYTES_PER_PIXEL;
+        }
+
+        ByteBuffer chain = MemoryUtil.memAlloc(totalBytes);
+        ByteBuffer[] mipLevels = new ByteBuffer[numLevels];
+        int offset = 0;
+        for (int i = 0; i < numLevels; i++) {
+            int size = getLevelWidth(i) * getLevelHeight(i) * BYTES_PER_PIXEL;
+            mipLevels[i] = MemoryUtil.memSlice(chain, offset, size);
+            offset += size;
+        }
+
+        MemoryUtil.memCopy(levels[0], mipLevels[0]);
+        for (int i = 1; i < numLevels; i++) {
+            downsample(mipLevels[i - 1], getLevelWidth(i - 1), getLevelHeight(i - 1),
+                    mipLevels[i], getLevelWidth(i), getLevelHeight(i));
+        }
+        return new TextureData(mipLevels, width, height, null, chain, Storage.NATIVE);
+    }
+
+    private static void downsample(ByteBuffer src, int srcWidth, int srcHeight, ByteBuffer dst, int dstWidth, int dstHeight) {
+        for (int y = 0; y < dstHeight; y++) {
+            int y0 = Math.min(y * 2, srcHeight - 1);
+            int y1 = Math.min(y * 2 + 1, srcHeight - 1);
+            for (int x = 0; x < dstWidth; x++) {
+                int x0 = Math.min(x * 2, srcWidth - 1);
+                int x1 = Math.min(x * 2 + 1, srcWidth - 1);
+                int p00 = (y0 * srcWidth + x0) * BYTES_PER_PIXEL;
+                int p01 = (y0 * srcWidth + x1) * BYTES_PER_PIXEL;
+                int p10 = (y1 * srcWidth + x0) * BYTES_PER_PIXEL;
+                int p11 = (y1 * srcWidth + x1) * BYTES_PER_PIXEL;
+                int out = (y * dstWidth + x) * BYTES_PER_PIXEL;
+                for (int c = 0; c < BYTES_PER_PIXEL; c++) {
+                    int sum = (src.get(p00 + c) & 0xFF) + (src.get(p01 + c) & 0xFF)
+                            + (src.get(p10 + c) & 0xFF) + (src.get(p11 + c) & 0xFF);
+                    dst.put(out + c, (byte) ((sum + 2) >> 2));
+                }
+            }
+        }
+    }
+
+    public ByteBuffer getPixels() {
+        return levels[0];
+    }
+
+    public ByteBuffer getLevel(int level) {
+        return levels[level];
+    }
+
+    public int getNumLevels() {
+        return levels.length;
+    }
+
+    public int getLevelWidth(int level) {
+        return Math.max(1, width >> level);
+    }
+
+    public int getLevelHeight(int level) {
+        return Math.max(1, height >> level);
+    }
+
+    public BlockCompressor.Format getFormat() {
+        return format;
+    }
+
+    public boolean isCompressed() {
+        return format != null;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public void setGrid(int numCols, int numRows) {
+        this.numCols = numCols;
+        this.numRows = numRows;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void free() {
+        switch (storage) {
+            case STB -> stbi_image_free(storageBuffer);
+            case NATIVE -> MemoryUtil.memFree(storageBuffer);
+            case MAPPED -> {
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package engine.loaders;
+
+import engine.utils.FileUtils;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+public class TextureDiskCache {
+
+    private static final int MAGIC = 0x4F475443;
+
+    private static final int VERSION = 2;
+
+    private static final int BYTE_ORDER_MARK = 0x01020304;
+
+    private static final int HEADER_INTS = 3;
+
+    private static final int TEXTURE_HEADER_INTS = 4;
+
+    private static final String EXTENSION = ".tex";
+
+    private static TextureDiskCache INSTANCE;
+
+    private Path cacheDir;
+
+    private boolean enabled;
+
+    private TextureDiskCache() {
+        cacheDir = Paths.get("cache", "textures");
+        enabled = true;
+    }
+
+    public static synchronized TextureDiskCache getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new TextureDiskCache();
+        }
+        return INSTANCE;
+    }
+
+    public Path getCacheDir() {
+        return cacheDir;
+    }
+
+    public void setCacheDir(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getKey(String fileName, boolean compressed) {
+        if (!enabled) {
+            return null;
+        }
+        Path path = Paths.get(fileName);
+        if (!Files.isReadable(path)) {
+            return null;
+        }
+        try {
+            return FileUtils.contentHash(path, "texture:" + VERSION + ":" + compressed);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    public TextureData load(String key) {
+        if (key == null) {
+            return null;
+        }
+        Path file = cacheDir.resolve(key + EXTENSION);
+        if (!Files.isReadable(file)) {
+            return null;
+        }
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+            mapped.order(ByteOrder.nativeOrder());
+            if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION || mapped.getInt() != BYTE_ORDER_MARK) {
+                return null;
+            }
+            return read(mapped);
+        } catch (IOException | RuntimeException excp) {
+            return null;
+        }
+    }
+
+    public void store(String key, TextureData textureData) {
+        if (key == null) {
+            return;
+        }
+        long size = (long) HEADER_INTS * Integer.BYTES + sizeOf(textureData);
+
+        ByteBuffer buffer = MemoryUtil.memAlloc((int) size);
+        try {
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(BYTE_ORDER_MARK);
+            write(buffer, textureData);
+            buffer.flip();
+
+            Files.createDirectories(cacheDir);
+            Path tmpFile = Files.createTempFile(cacheDir, key, ".tmp");
+            try (FileChannel fc = FileChannel.open(tmpFile, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    fc.write(buffer);
+                }
+            }
+            Files.move(tmpFile, cacheDir.resolve(key + EXTENSION), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            System.err.println("Nepodařilo se uložit cache textury: " + excp.getMessage());
+        } finally {
+            MemoryUtil.memFree(buffer);
+        }
+    }
+
+    static long sizeOf(TextureData textureData) {
+        long size = (long) TEXTURE_HEADER_INTS * Integer.BYTES;
+        for (int i = 0; i < textureData.getNumLevels(); i++) {
+            size += Integer.BYTES + align(textureData.getLevel(i).remaining());
+        }
+        return size;
+    }
+
+    static void write(ByteBuffer buffer, TextureData textureData) {
+        int numLevels = textureData.getNumLevels();
+        buffer.putInt(textureData.getWidth()).putInt(textureData.getHeight()).putInt(numLevels);
+        buffer.putInt(textureData.isCompressed() ? textureData.getFormat().ordinal() + 1 : 0);
+        for (int i = 0; i < numLevels; i++) {
+            ByteBuffer level = textureData.getLevel(i).duplicate();
+            int levelSize = level.remaining();
+            buffer.putInt(levelSize);
+            buffer.put(level);
+            buffer.position(buffer.position() + align(levelSize) - levelSize);
+        }
+    }
+
+    static TextureData read(ByteBuffer buffer) {
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        int numLevels = buffer.getInt();
+        int formatIdx = buffer.getInt();
+        BlockCompressor.Format format = formatIdx > 0 ? BlockCompressor.Format.values()[formatIdx - 1] : null;
+        ByteBuffer[] levels = new ByteBuffer[numLevels];
+        for (int i = 0; i < numLevels; i++) {
+            int size = buffer.getInt();
+            int start = buffer.position();
+            ByteBuffer level = buffer.duplicate();
+            level.position(start).limit(start + size);
+            levels[i] = level.slice();
+            buffer.position(start + align(size));
+        }
+        return TextureData.mapped(levels, width, height, format);
+    }
+
+    private static int align(int length) {
+        return (length + 3) & ~3;
+    }
+}
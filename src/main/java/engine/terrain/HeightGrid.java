@@ -0,0 +1,85 @@
+package engine.terrain;
+
+import engine.loaders.TextureData;
+
+import java.nio.ByteBuffer;
+import java.util.stream.IntStream;
+
+public class HeightGrid implements HeightSource {
+
+    private static final int MAX_COLOUR = 0xFFFFFF;
+
+    private final int width;
+
+    private final int depth;
+
+    private final float[] heights;
+
+    private final float minHeight;
+
+    private final float maxHeight;
+
+    public HeightGrid(int width, int depth, float[] heights) {
+        this.width = width;
+        this.depth = depth;
+        this.heights = heights;
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (float height : heights) {
+            min = Math.min(min, height);
+            max = Math.max(max, height);
+        }
+        minHeight = min;
+        maxHeight = max;
+    }
+
+    public static HeightGrid load(float minY, float maxY, String heightMapFile) throws Exception {
+        TextureData heightMap = TextureData.decode(heightMapFile);
+        try {
+            return fromImage(minY, maxY, heightMap.getPixels(), heightMap.getWidth(), heightMap.getHeight());
+        } finally {
+            heightMap.free();
+        }
+    }
+
+    public static HeightGrid fromImage(float minY, float maxY, ByteBuffer image, int width, int depth) {
+        float[] heights = new float[width * depth];
+        float range = Math.abs(maxY - minY);
+        IntStream.range(0, depth).parallel().forEach(row -> {
+            for (int col = 0; col < width; col++) {
+                int pixel = (row * width + col) * 4;
+                int rgb = ((0xFF & image.get(pixel)) << 16) | ((0xFF & image.get(pixel + 1)) << 8)
+                        | (0xFF & image.get(pixel + 2));
+                heights[row * width + col] = minY + range * ((float) rgb / (float) MAX_COLOUR);
+            }
+        });
+        return new HeightGrid(width, depth, heights);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public float getHeight(int col, int row) {
+        col = Math.max(0, Math.min(width - 1, col));
+        row = Math.max(0, Math.min(depth - 1, row));
+        return heights[row * width + col];
+    }
+
+    @Override
+    public float getMinHeight() {
+        return minHeight;
+    }
+
+    @Override
+    public float getMaxHeight() {
+        return maxHeight;
+    }
+}
@@ -0,0 +1,14 @@
+package engine.terrain;
+
+public interface HeightSource {
+
+    int getWidth();
+
+    int getDepth();
+
+    float getHeight(int col, int row);
+
+    float getMinHeight();
+
+    float getMaxHeight();
+}
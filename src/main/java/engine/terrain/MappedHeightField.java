@@ -0,0 +1,86 @@
+package engine.terrain;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class MappedHeightField implements HeightSource, AutoCloseable {
+
+    private static final int MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+
+    private static final float MAX_SAMPLE = 0xFFFF;
+
+    private final int width;
+
+    private final int depth;
+
+    private final float minHeight;
+
+    private final float maxHeight;
+
+    private final int rowsPerSegment;
+
+    private MappedByteBuffer[] segments;
+
+    public MappedHeightField(String file, int width, int depth, float minHeight, float maxHeight) throws IOException {
+        this.width = width;
+        this.depth = depth;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        long rowBytes = (long) width * Short.BYTES;
+        rowsPerSegment = (int) Math.max(1, MAX_SEGMENT_BYTES / rowBytes);
+
+        Path path = Paths.get(file);
+        try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (fc.size() != rowBytes * depth) {
+                throw new IOException("Neplatná velikost výškové mapy " + file + ": " + fc.size() + " B, očekáváno "
+                        + rowBytes * depth + " B");
+            }
+            int numSegments = (depth + rowsPerSegment - 1) / rowsPerSegment;
+            segments = new MappedByteBuffer[numSegments];
+            for (int i = 0; i < numSegments; i++) {
+                int rows = Math.min(rowsPerSegment, depth - i * rowsPerSegment);
+                segments[i] = fc.map(FileChannel.MapMode.READ_ONLY, i * rowsPerSegment * rowBytes, rows * rowBytes);
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public float getHeight(int col, int row) {
+        col = Math.max(0, Math.min(width - 1, col));
+        row = Math.max(0, Math.min(depth - 1, row));
+        MappedByteBuffer segment = segments[row / rowsPerSegment];
+        int sample = segment.getShort(((row % rowsPerSegment) * width + col) * Short.BYTES) & 0xFFFF;
+        return minHeight + (maxHeight - minHeight) * (sample / MAX_SAMPLE);
+    }
+
+    @Override
+    public float getMinHeight() {
+        return minHeight;
+    }
+
+    @Override
+    public float getMaxHeight() {
+        return maxHeight;
+    }
+
+    @Override
+    public void close() {
+        segments = null;
+    }
+}
@@ -0,0 +1,481 @@
+package engine.terrain;
+
+import engine.graphics.Material;
+import engine.graphics.Mesh;
+import engine.graphics.Texture;
+import engine.graphics.VertexFormat;
+import engine.loaders.AssetLoader;
+import engine.loaders.TextureCache;
+import org.joml.FrustumIntersection;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+public class Terrain {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64;
+
+    public static final int MAX_LODS = 5;
+
+    public static final float START_X = -0.5f;
+
+    public static final float START_Z = -0.5f;
+
+    private static final float LOD_DISTANCE_FACTOR = 1.5f;
+
+    private static final float SKIRT_DEPTH_FACTOR = 0.5f;
+
+    private static final float EVICT_RADIUS_FACTOR = 1.25f;
+
+    private static final int MAX_PENDING_CHUNKS = 8;
+
+    private static final int QUERY_BATCH_SIZE = 4096;
+
+    private final HeightSource source;
+
+    private final int chunkSize;
+
+    private final int numChunksX;
+
+    private final int numChunksZ;
+
+    private final float originX;
+
+    private final float originZ;
+
+    private final float cellSizeX;
+
+    private final float cellSizeZ;
+
+    private final float lodDistance;
+
+    private final int textInc;
+
+    private final VertexFormat vertexFormat;
+
+    private final Material material;
+
+    private final TerrainChunk[] chunks;
+
+    private final int[] lodCounts;
+
+    private final TerrainNode root;
+
+    private final AssetLoader assetLoader;
+
+    private final float streamRadius;
+
+    private final List<TerrainChunk> activeChunks;
+
+    private IntBuffer indices;
+
+    private int pendingChunks;
+
+    private int residentChunks;
+
+    private long evictions;
+
+    public static Terrain load(float minY, float maxY, String heightMapFile, String textureFile, float worldSize, int textInc) throws Exception {
+        HeightGrid heightGrid = HeightGrid.load(minY, maxY, heightMapFile);
+        TextureCache textCache = TextureCache.getInstance();
+        Texture texture = textCache.getTexture(textureFile);
+        try {
+            return new Terrain(heightGrid, worldSize, worldSize, DEFAULT_CHUNK_SIZE, textInc, VertexFormat.STATIC,
+                    new Material(texture, 0.0f));
+        } finally {
+            textCache.release(texture);
+        }
+    }
+
+    public Terrain(HeightSource source, float sizeX, float sizeZ, int chunkSize, int textInc, VertexFormat vertexFormat, Material material) {
+        this(source, sizeX, sizeZ, chunkSize, textInc, vertexFormat, material, null, 0);
+    }
+
+    public Terrain(HeightSource source, float sizeX, float sizeZ, int chunkSize, int textInc, VertexFormat vertexFormat,
+                   Material material, AssetLoader assetLoader, float streamRadius) {
+        this.source = source;
+        this.assetLoader = assetLoader;
+        this.streamRadius = streamRadius;
+        activeChunks = new ArrayList<>();
+        this.chunkSize = chunkSize;
+        this.textInc = textInc;
+        this.vertexFormat = vertexFormat;
+        this.material = material;
+        numChunksX = Math.max(1, (source.getWidth() - 1 + chunkSize - 1) / chunkSize);
+        numChunksZ = Math.max(1, (source.getDepth() - 1 + chunkSize - 1) / chunkSize);
+        originX = START_X * sizeX;
+        originZ = START_Z * sizeZ;
+        cellSizeX = sizeX / Math.max(1, source.getWidth() - 1);
+        cellSizeZ = sizeZ / Math.max(1, source.getDepth() - 1);
+        lodDistance = chunkSize * Math.max(cellSizeX, cellSizeZ) * LOD_DISTANCE_FACTOR;
+
+        int numLods = 1;
+        while (numLods < MAX_LODS && (chunkSize % (1 << numLods)) == 0) {
+            numLods++;
+        }
+        lodCounts = new int[numLods];
+        indices = createIndices(lodCounts);
+
+        chunks = new TerrainChunk[numChunksX * numChunksZ];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new TerrainChunk(i % numChunksX, i / numChunksX);
+            initBounds(chunks[i]);
+        }
+        if (!isStreaming()) {
+            try {
+                IntStream.range(0, chunks.length).parallel().forEach(i -> buildVertices(chunks[i]));
+                for (TerrainChunk chunk : chunks) {
+                    upload(chunk);
+                }
+                residentChunks = chunks.length;
+            } finally {
+                MemoryUtil.memFree(indices);
+                indices = null;
+            }
+        }
+        root = TerrainNode.build(chunks, numChunksX, 0, 0, numChunksX, numChunksZ);
+    }
+
+    public boolean isStreaming() {
+        return assetLoader != null && streamRadius > 0;
+    }
+
+    public void update(Vector3f cameraPosition) {
+        if (!isStreaming()) {
+            return;
+        }
+        float evictRadius = streamRadius * EVICT_RADIUS_FACTOR;
+        for (int i = activeChunks.size() - 1; i >= 0; i--) {
+            TerrainChunk chunk = activeChunks.get(i);
+            if (horizontalDistance(chunk, cameraPosition) > evictRadius) {
+                if (chunk.getMesh() != null) {
+                    residentChunks--;
+                    evictions++;
+                }
+                chunk.cleanup();
+                chunk.setGeneration(chunk.getGeneration() + 1);
+                chunk.setResident(false);
+                activeChunks.set(i, activeChunks.get(activeChunks.size() - 1));
+                activeChunks.remove(activeChunks.size() - 1);
+            }
+        }
+
+        float chunkSizeX = chunkSize * cellSizeX;
+        float chunkSizeZ = chunkSize * cellSizeZ;
+        int minX = Math.max(0, (int) Math.floor((cameraPosition.x - streamRadius - originX) / chunkSizeX));
+        int maxX = Math.min(numChunksX - 1, (int) Math.floor((cameraPosition.x + streamRadius - originX) / chunkSizeX));
+        int minZ = Math.max(0, (int) Math.floor((cameraPosition.z - streamRadius - originZ) / chunkSizeZ));
+        int maxZ = Math.min(numChunksZ - 1, (int) Math.floor((cameraPosition.z + streamRadius - originZ) / chunkSizeZ));
+        for (int z = minZ; z <= maxZ && pendingChunks < MAX_PENDING_CHUNKS; z++) {
+            for (int x = minX; x <= maxX && pendingChunks < MAX_PENDING_CHUNKS; x++) {
+                TerrainChunk chunk = chunks[z * numChunksX + x];
+                if (!chunk.isResident() && !chunk.isBuilding() && horizontalDistance(chunk, cameraPosition) <= streamRadius) {
+                    request(chunk);
+                }
+            }
+        }
+    }
+
+    private void request(TerrainChunk chunk) {
+        chunk.setResident(true);
+        chunk.setBuilding(true);
+        activeChunks.add(chunk);
+        pendingChunks++;
+        int generation = chunk.getGeneration();
+        assetLoader.runAsync(() -> {
+            buildVertices(chunk);
+            return chunk;
+        }).handle((built, excp) -> assetLoader.submitUpload(() -> {
+            pendingChunks--;
+            chunk.setBuilding(false);
+            if (excp != null) {
+                System.err.println("Nepodařilo se načíst část terénu " + chunk.getChunkX() + "x" + chunk.getChunkZ() + ": "
+                        + excp.getMessage());
+                chunk.setVertices(null, null, null);
+            } else if (chunk.getGeneration() == generation && indices != null) {
+                upload(chunk);
+                residentChunks++;
+            } else {
+                chunk.setVertices(null, null, null);
+            }
+            return null;
+        }));
+    }
+
+    private float horizontalDistance(TerrainChunk chunk, Vector3f cameraPosition) {
+        float x0 = originX + chunk.getChunkX() * chunkSize * cellSizeX;
+        float z0 = originZ + chunk.getChunkZ() * chunkSize * cellSizeZ;
+        float dx = Math.max(0, Math.max(x0 - cameraPosition.x, cameraPosition.x - (x0 + chunkSize * cellSizeX)));
+        float dz = Math.max(0, Math.max(z0 - cameraPosition.z, cameraPosition.z - (z0 + chunkSize * cellSizeZ)));
+        return (float) Math.sqrt(dx * dx + dz * dz);
+    }
+
+    private void initBounds(TerrainChunk chunk) {
+        int baseCol = chunk.getChunkX() * chunkSize;
+        int baseRow = chunk.getChunkZ() * chunkSize;
+        int maxCol = source.getWidth() - 1;
+        int maxRow = source.getDepth() - 1;
+        float skirtDepth = (source.getMaxHeight() - source.getMinHeight()) * SKIRT_DEPTH_FACTOR + Math.max(cellSizeX, cellSizeZ);
+        chunk.getMin().set(originX + baseCol * cellSizeX, source.getMinHeight() - skirtDepth, originZ + baseRow * cellSizeZ);
+        chunk.getMax().set(originX + Math.min(baseCol + chunkSize, maxCol) * cellSizeX, source.getMaxHeight(),
+                originZ + Math.min(baseRow + chunkSize, maxRow) * cellSizeZ);
+    }
+
+    private int getVerticesPerSide() {
+        return chunkSize + 1;
+    }
+
+    private IntBuffer createIndices(int[] lodCounts) {
+        int side = getVerticesPerSide();
+        int skirtBase = side * side;
+        int total = 0;
+        for (int lod = 0; lod < lodCounts.length; lod++) {
+            int cells = chunkSize >> lod;
+            lodCounts[lod] = cells * cells * 6 + 4 * cells * 6;
+            total += lodCounts[lod];
+        }
+        IntBuffer indices = MemoryUtil.memAllocInt(total);
+        for (int lod = 0; lod < lodCounts.length; lod++) {
+            int step = 1 << lod;
+            for (int row = 0; row < chunkSize; row += step) {
+                for (int col = 0; col < chunkSize; col += step) {
+                    int leftTop = row * side + col;
+                    int leftBottom = (row + step) * side + col;
+                    int rightBottom = (row + step) * side + col + step;
+                    int rightTop = row * side + col + step;
+                    indices.put(rightTop).put(leftBottom).put(rightBottom);
+                    indices.put(leftTop).put(leftBottom).put(rightTop);
+                }
+            }
+            for (int edge = 0; edge < 4; edge++) {
+                boolean reversed = edge == 1 || edge == 2;
+                for (int k = 0; k < chunkSize; k += step) {
+                    int a = edgeVertex(edge, k);
+                    int b = edgeVertex(edge, k + step);
+                    int skirtA = skirtBase + edge * side + k;
+                    int skirtB = skirtBase + edge * side + k + step;
+                    if (reversed) {
+                        indices.put(b).put(a).put(skirtB);
+                        indices.put(a).put(skirtA).put(skirtB);
+                    } else {
+                        indices.put(a).put(b).put(skirtA);
+                        indices.put(b).put(skirtB).put(skirtA);
+                    }
+                }
+            }
+        }
+        indices.flip();
+        return indices;
+    }
+
+    private int edgeVertex(int edge, int k) {
+        int side = getVerticesPerSide();
+        switch (edge) {
+            case 0:
+                return k;
+            case 1:
+                return chunkSize * side + k;
+            case 2:
+                return k * side;
+            default:
+                return k * side + chunkSize;
+        }
+    }
+
+    private void buildVertices(TerrainChunk chunk) {
+        int side = getVerticesPerSide();
+        int numVertices = side * side + 4 * side;
+        float[] positions = new float[numVertices * 3];
+        float[] textCoords = new float[numVertices * 2];
+        float[] normals = new float[numVertices * 3];
+
+        int baseCol = chunk.getChunkX() * chunkSize;
+        int baseRow = chunk.getChunkZ() * chunkSize;
+        float centerX = originX + (baseCol + chunkSize * 0.5f) * cellSizeX;
+        float centerZ = originZ + (baseRow + chunkSize * 0.5f) * cellSizeZ;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        int maxCol = source.getWidth() - 1;
+        int maxRow = source.getDepth() - 1;
+        for (int row = 0; row < side; row++) {
+            for (int col = 0; col < side; col++) {
+                int gridCol = Math.min(baseCol + col, maxCol);
+                int gridRow = Math.min(baseRow + row, maxRow);
+                int v = row * side + col;
+                float height = source.getHeight(gridCol, gridRow);
+                minY = Math.min(minY, height);
+                maxY = Math.max(maxY, height);
+                positions[v * 3] = originX + gridCol * cellSizeX - centerX;
+                positions[v * 3 + 1] = height;
+                positions[v * 3 + 2] = originZ + gridRow * cellSizeZ - centerZ;
+
+                textCoords[v * 2] = (float) textInc * gridCol / source.getWidth();
+                textCoords[v * 2 + 1] = (float) textInc * gridRow / source.getDepth();
+
+                float dx = (source.getHeight(gridCol + 1, gridRow) - source.getHeight(gridCol - 1, gridRow)) / (2 * cellSizeX);
+                float dz = (source.getHeight(gridCol, gridRow + 1) - source.getHeight(gridCol, gridRow - 1)) / (2 * cellSizeZ);
+                float length = (float) Math.sqrt(dx * dx + 1 + dz * dz);
+                normals[v * 3] = -dx / length;
+                normals[v * 3 + 1] = 1 / length;
+                normals[v * 3 + 2] = -dz / length;
+            }
+        }
+
+        float skirtDepth = (maxY - minY) * SKIRT_DEPTH_FACTOR + Math.max(cellSizeX, cellSizeZ);
+        for (int edge = 0; edge < 4; edge++) {
+            for (int k = 0; k < side; k++) {
+                int v = edgeVertex(edge, k);
+                int s = side * side + edge * side + k;
+                System.arraycopy(positions, v * 3, positions, s * 3, 3);
+                positions[s * 3 + 1] -= skirtDepth;
+                System.arraycopy(textCoords, v * 2, textCoords, s * 2, 2);
+                System.arraycopy(normals, v * 3, normals, s * 3, 3);
+            }
+        }
+
+        chunk.setVertices(positions, textCoords, normals);
+        chunk.setHeightRange(minY - skirtDepth, maxY);
+        chunk.getModelMatrix().translation(centerX, 0, centerZ);
+    }
+
+    private void upload(TerrainChunk chunk) {
+        FloatBuffer positions = null;
+        FloatBuffer textCoords = null;
+        FloatBuffer normals = null;
+        try {
+            positions = MemoryUtil.memAllocFloat(chunk.getPositions().length);
+            positions.put(chunk.getPositions()).flip();
+            textCoords = MemoryUtil.memAllocFloat(chunk.getTextCoords().length);
+            textCoords.put(chunk.getTextCoords()).flip();
+            normals = MemoryUtil.memAllocFloat(chunk.getNormals().length);
+            normals.put(chunk.getNormals()).flip();
+            Mesh mesh = new Mesh(positions, textCoords, normals, indices, lodCounts.clone(), vertexFormat);
+            mesh.setMaterial(material);
+            if (material.isTextured()) {
+                TextureCache.getInstance().acquire(material.getTexture());
+            }
+            chunk.setMesh(mesh);
+            chunk.getMin().y = chunk.getMinHeight();
+            chunk.getMax().y = chunk.getMaxHeight();
+        } finally {
+            MemoryUtil.memFree(positions);
+            MemoryUtil.memFree(textCoords);
+            MemoryUtil.memFree(normals);
+        }
+    }
+
+    int selectLod(TerrainChunk chunk, Vector3f cameraPosition) {
+        Vector3f min = chunk.getMin();
+        Vector3f max = chunk.getMax();
+        float dx = Math.max(0, Math.max(min.x - cameraPosition.x, cameraPosition.x - max.x));
+        float dy = Math.max(0, Math.max(min.y - cameraPosition.y, cameraPosition.y - max.y));
+        float dz = Math.max(0, Math.max(min.z - cameraPosition.z, cameraPosition.z - max.z));
+        float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (distance < lodDistance) {
+            return 0;
+        }
+        int lod = (int) (Math.log(distance / lodDistance) / Math.log(2)) + 1;
+        return Math.min(lod, lodCounts.length - 1);
+    }
+
+    public float getHeight(float x, float z) {
+        float[] heights = new float[1];
+        sample(new float[]{x}, new float[]{z}, heights, null, 0, 1);
+        return heights[0];
+    }
+
+    public void getHeights(float[] xs, float[] zs, float[] heights, int count) {
+        query(xs, zs, heights, null, count);
+    }
+
+    public void getHeightsAndNormals(float[] xs, float[] zs, float[] heights, float[] normals, int count) {
+        query(xs, zs, heights, normals, count);
+    }
+
+    private void query(float[] xs, float[] zs, float[] heights, float[] normals, int count) {
+        if (count <= QUERY_BATCH_SIZE) {
+            sample(xs, zs, heights, normals, 0, count);
+            return;
+        }
+        int numBatches = (count + QUERY_BATCH_SIZE - 1) / QUERY_BATCH_SIZE;
+        IntStream.range(0, numBatches).parallel().forEach(batch -> sample(xs, zs, heights, normals,
+                batch * QUERY_BATCH_SIZE, Math.min(count, (batch + 1) * QUERY_BATCH_SIZE)));
+    }
+
+    private void sample(float[] xs, float[] zs, float[] heights, float[] normals, int from, int to) {
+        float invCellX = 1 / cellSizeX;
+        float invCellZ = 1 / cellSizeZ;
+        int maxCol = source.getWidth() - 1;
+        int maxRow = source.getDepth() - 1;
+        for (int i = from; i < to; i++) {
+            float gx = Math.max(0, Math.min(maxCol, (xs[i] - originX) * invCellX));
+            float gz = Math.max(0, Math.min(maxRow, (zs[i] - originZ) * invCellZ));
+            int col = Math.min((int) gx, Math.max(0, maxCol - 1));
+            int row = Math.min((int) gz, Math.max(0, maxRow - 1));
+            float tx = gx - col;
+            float tz = gz - row;
+            float h00 = source.getHeight(col, row);
+            float h10 = source.getHeight(col + 1, row);
+            float h01 = source.getHeight(col, row + 1);
+            float h11 = source.getHeight(col + 1, row + 1);
+            float top = h00 + (h10 - h00) * tx;
+            float bottom = h01 + (h11 - h01) * tx;
+            heights[i] = top + (bottom - top) * tz;
+            if (normals != null) {
+                float dx = ((h10 - h00) * (1 - tz) + (h11 - h01) * tz) * invCellX;
+                float dz = (bottom - top) * invCellZ;
+                float invLength = 1 / (float) Math.sqrt(dx * dx + 1 + dz * dz);
+                normals[i * 3] = -dx * invLength;
+                normals[i * 3 + 1] = invLength;
+                normals[i * 3 + 2] = -dz * invLength;
+            }
+        }
+    }
+
+    public void selectChunks(FrustumIntersection frustum, Vector3f cameraPosition, List<TerrainChunk> visibleChunks) {
+        root.select(frustum, cameraPosition, this, visibleChunks);
+    }
+
+    public HeightSource getSource() {
+        return source;
+    }
+
+    public int getNumChunks() {
+        return chunks.length;
+    }
+
+    public int getNumLods() {
+        return lodCounts.length;
+    }
+
+    public Material getMaterial() {
+        return material;
+    }
+
+    public int getResidentChunks() {
+        return residentChunks;
+    }
+
+    public int getPendingChunks() {
+        return pendingChunks;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public void cleanup() {
+        for (TerrainChunk chunk : chunks) {
+            chunk.cleanup();
+        }
+        activeChunks.clear();
+        residentChunks = 0;
+        MemoryUtil.memFree(indices);
+        indices = null;
+    }
+}
@@ -0,0 +1,147 @@
+package engine.terrain;
+
+import engine.graphics.Mesh;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+public class TerrainChunk {
+
+    private final int chunkX;
+
+    private final int chunkZ;
+
+    private final Vector3f min;
+
+    private final Vector3f max;
+
+    private final Matrix4f modelMatrix;
+
+    private float[] positions;
+
+    private float[] textCoords;
+
+    private float[] normals;
+
+    private Mesh mesh;
+
+    private int lod;
+
+    private float minHeight;
+
+    private float maxHeight;
+
+    private boolean resident;
+
+    private boolean building;
+
+    private int generation;
+
+    public TerrainChunk(int chunkX, int chunkZ) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        min = new Vector3f();
+        max = new Vector3f();
+        modelMatrix = new Matrix4f();
+    }
+
+    void setVertices(float[] positions, float[] textCoords, float[] normals) {
+        this.positions = positions;
+        this.textCoords = textCoords;
+        this.normals = normals;
+    }
+
+    float[] getPositions() {
+        return positions;
+    }
+
+    float[] getTextCoords() {
+        return textCoords;
+    }
+
+    float[] getNormals() {
+        return normals;
+    }
+
+    void setHeightRange(float minHeight, float maxHeight) {
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+    }
+
+    float getMinHeight() {
+        return minHeight;
+    }
+
+    float getMaxHeight() {
+        return maxHeight;
+    }
+
+    boolean isResident() {
+        return resident;
+    }
+
+    void setResident(boolean resident) {
+        this.resident = resident;
+    }
+
+    boolean isBuilding() {
+        return building;
+    }
+
+    void setBuilding(boolean building) {
+        this.building = building;
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    void setGeneration(int generation) {
+        this.generation = generation;
+    }
+
+    void setMesh(Mesh mesh) {
+        this.mesh = mesh;
+        positions = null;
+        textCoords = null;
+        normals = null;
+    }
+
+    void setLod(int lod) {
+        this.lod = lod;
+    }
+
+    public int getChunkX() {
+        return chunkX;
+    }
+
+    public int getChunkZ() {
+        return chunkZ;
+    }
+
+    public Vector3f getMin() {
+        return min;
+    }
+
+    public Vector3f getMax() {
+        return max;
+    }
+
+    public Matrix4f getModelMatrix() {
+        return modelMatrix;
+    }
+
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    public int getLod() {
+        return lod;
+    }
+
+    public void cleanup() {
+        if (mesh != null) {
+            mesh.cleanUp();
+            mesh = null;
+        }
+    }
+}
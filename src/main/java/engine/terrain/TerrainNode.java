@@ -0,0 +1,68 @@
+package engine.terrain;
+
+import org.joml.FrustumIntersection;
+import org.joml.Vector3f;
+
+import java.util.List;
+
+class TerrainNode {
+
+    private final Vector3f min;
+
+    private final Vector3f max;
+
+    private final TerrainNode[] children;
+
+    private final TerrainChunk chunk;
+
+    private TerrainNode(Vector3f min, Vector3f max, TerrainNode[] children, TerrainChunk chunk) {
+        this.min = min;
+        this.max = max;
+        this.children = children;
+        this.chunk = chunk;
+    }
+
+    static TerrainNode build(TerrainChunk[] chunks, int numChunksX, int x0, int z0, int x1, int z1) {
+        if (x1 - x0 == 1 && z1 - z0 == 1) {
+            TerrainChunk chunk = chunks[z0 * numChunksX + x0];
+            return new TerrainNode(chunk.getMin(), chunk.getMax(), null, chunk);
+        }
+        int midX = x1 - x0 > 1 ? (x0 + x1) / 2 : x1;
+        int midZ = z1 - z0 > 1 ? (z0 + z1) / 2 : z1;
+        TerrainNode[] children = new TerrainNode[4];
+        int numChildren = 0;
+        Vector3f min = new Vector3f(Float.POSITIVE_INFINITY);
+        Vector3f max = new Vector3f(Float.NEGATIVE_INFINITY);
+        int[][] ranges = {{x0, midX}, {midX, x1}};
+        int[][] rangesZ = {{z0, midZ}, {midZ, z1}};
+        for (int[] rangeZ : rangesZ) {
+            for (int[] rangeX : ranges) {
+                if (rangeX[0] < rangeX[1] && rangeZ[0] < rangeZ[1]) {
+                    TerrainNode child = build(chunks, numChunksX, rangeX[0], rangeZ[0], rangeX[1], rangeZ[1]);
+                    min.min(child.min);
+                    max.max(child.max);
+                    children[numChildren++] = child;
+                }
+            }
+        }
+        TerrainNode[] used = new TerrainNode[numChildren];
+        System.arraycopy(children, 0, used, 0, numChildren);
+        return new TerrainNode(min, max, used, null);
+    }
+
+    void select(FrustumIntersection frustum, Vector3f cameraPosition, Terrain terrain, List<TerrainChunk> visibleChunks) {
+        if (frustum != null && !frustum.testAab(min, max)) {
+            return;
+        }
+        if (chunk != null) {
+            if (chunk.getMesh() != null) {
+                chunk.setLod(terrain.selectLod(chunk, cameraPosition));
+                visibleChunks.add(chunk);
+            }
+            return;
+        }
+        for (TerrainNode child : children) {
+            child.select(frustum, cameraPosition, terrain, visibleChunks);
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package engine.utils;
+
+import org.joml.FrustumIntersection;
+import org.joml.Vector3fc;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+public class AabbTree<T> {
+
+    public static final int NULL_NODE = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final float FAT_RATIO = 0.1f;
+
+    private static final float MIN_FAT_MARGIN = 0.01f;
+
+    public interface RayCallback<T> {
+
+        float hit(T item, float distance);
+    }
+
+    private float[] bounds;
+
+    private int[] parent;
+
+    private int[] child1;
+
+    private int[] child2;
+
+    private int[] height;
+
+    private Object[] items;
+
+    private int capacity;
+
+    private int nodeCount;
+
+    private int freeList;
+
+    private int root;
+
+    private int[] stack;
+
+    public AabbTree() {
+        root = NULL_NODE;
+        stack = new int[INITIAL_CAPACITY];
+        allocateStorage(INITIAL_CAPACITY);
+    }
+
+    private void allocateStorage(int newCapacity) {
+        bounds = bounds == null ? new float[newCapacity * 6] : Arrays.copyOf(bounds, newCapacity * 6);
+        parent = parent == null ? new int[newCapacity] : Arrays.copyOf(parent, newCapacity);
+        child1 = child1 == null ? new int[newCapacity] : Arrays.copyOf(child1, newCapacity);
+        child2 = child2 == null ? new int[newCapacity] : Arrays.copyOf(child2, newCapacity);
+        height = height == null ? new int[newCapacity] : Arrays.copyOf(height, newCapacity);
+        items = items == null ? new Object[newCapacity] : Arrays.copyOf(items, newCapacity);
+        for (int i = capacity; i < newCapacity - 1; i++) {
+            parent[i] = i + 1;
+            height[i] = -1;
+        }
+        parent[newCapacity - 1] = NULL_NODE;
+        height[newCapacity - 1] = -1;
+        freeList = capacity;
+        capacity = newCapacity;
+    }
+
+    private int allocateNode() {
+        if (freeList == NULL_NODE) {
+            allocateStorage(capacity * 2);
+        }
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = NULL_NODE;
+        child1[node] = NULL_NODE;
+        child2[node] = NULL_NODE;
+        height[node] = 0;
+        items[node] = null;
+        nodeCount++;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        parent[node] = freeList;
+        height[node] = -1;
+        items[node] = null;
+        freeList = node;
+        nodeCount--;
+    }
+
+    public int insert(T item, Vector3fc min, Vector3fc max) {
+        int leaf = allocateNode();
+        setFatBounds(leaf, min, max);
+        items[leaf] = item;
+        insertLeaf(leaf);
+        return leaf;
+    }
+
+    public void remove(int proxy) {
+        removeLeaf(proxy);
+        freeNode(proxy);
+    }
+
+    public boolean move(int proxy, Vector3fc min, Vector3fc max) {
+        int b = proxy * 6;
+        if (bounds[b] <= min.x() && bounds[b + 1] <= min.y() && bounds[b + 2] <= min.z()
+                && bounds[b + 3] >= max.x() && bounds[b + 4] >= max.y() && bounds[b + 5] >= max.z()) {
+            return false;
+        }
+        removeLeaf(proxy);
+        setFatBounds(proxy, min, max);
+        insertLeaf(proxy);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getItem(int proxy) {
+        return (T) items[proxy];
+    }
+
+    public int getHeight() {
+        return root == NULL_NODE ? 0 : height[root];
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    private void setFatBounds(int node, Vector3fc min, Vector3fc max) {
+        int b = node * 6;
+        for (int c = 0; c < 3; c++) {
+            float margin = Math.max(MIN_FAT_MARGIN, (max.get(c) - min.get(c)) * FAT_RATIO);
+            bounds[b + c] = min.get(c) - margin;
+            bounds[b + 3 + c] = max.get(c) + margin;
+        }
+    }
+
+    private boolean isLeaf(int node) {
+        return child1[node] == NULL_NODE;
+    }
+
+    private float surfaceArea(int node) {
+        int b = node * 6;
+        float dx = bounds[b + 3] - bounds[b];
+        float dy = bounds[b + 4] - bounds[b + 1];
+        float dz = bounds[b + 5] - bounds[b + 2];
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private float unionSurfaceArea(int a, int c) {
+        int ba = a * 6;
+        int bc = c * 6;
+        float dx = Math.max(bounds[ba + 3], bounds[bc + 3]) - Math.min(bounds[ba], bounds[bc]);
+        float dy = Math.max(bounds[ba + 4], bounds[bc + 4]) - Math.min(bounds[ba + 1], bounds[bc + 1]);
+        float dz = Math.max(bounds[ba + 5], bounds[bc + 5]) - Math.min(bounds[ba + 2], bounds[bc + 2]);
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private void setUnion(int node, int a, int c) {
+        int b = node * 6;
+        int ba = a * 6;
+        int bc = c * 6;
+        for (int i = 0; i < 3; i++) {
+            bounds[b + i] = Math.min(bounds[ba + i], bounds[bc + i]);
+            bounds[b + 3 + i] = Math.max(bounds[ba + 3 + i], bounds[bc + 3 + i]);
+        }
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL_NODE) {
+            root = leaf;
+            parent[root] = NULL_NODE;
+            return;
+        }
+
+        int index = root;
+        while (!isLeaf(index)) {
+            int c1 = child1[index];
+            int c2 = child2[index];
+            float area = surfaceArea(index);
+            float combinedArea = unionSurfaceArea(index, leaf);
+            float cost = 2 * combinedArea;
+            float inheritanceCost = 2 * (combinedArea - area);
+            float cost1 = unionSurfaceArea(c1, leaf) + inheritanceCost - (isLeaf(c1) ? 0 : surfaceArea(c1));
+            float cost2 = unionSurfaceArea(c2, leaf) + inheritanceCost - (isLeaf(c2) ? 0 : surfaceArea(c2));
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? c1 : c2;
+        }
+
+        int sibling = index;
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        setUnion(newParent, leaf, sibling);
+        height[newParent] = height[sibling] + 1;
+        if (oldParent != NULL_NODE) {
+            if (child1[oldParent] == sibling) {
+                child1[oldParent] = newParent;
+            } else {
+                child2[oldParent] = newParent;
+            }
+        } else {
+            root = newParent;
+        }
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        refitAncestors(parent[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL_NODE;
+            return;
+        }
+        int p = parent[leaf];
+        int grandParent = parent[p];
+        int sibling = child1[p] == leaf ? child2[p] : child1[p];
+        if (grandParent != NULL_NODE) {
+            if (child1[grandParent] == p) {
+                child1[grandParent] = sibling;
+            } else {
+                child2[grandParent] = sibling;
+            }
+            parent[sibling] = grandParent;
+            freeNode(p);
+            refitAncestors(grandParent);
+        } else {
+            root = sibling;
+            parent[sibling] = NULL_NODE;
+            freeNode(p);
+        }
+    }
+
+    private void refitAncestors(int index) {
+        while (index != NULL_NODE) {
+            index = balance(index);
+            int c1 = child1[index];
+            int c2 = child2[index];
+            height[index] = 1 + Math.max(height[c1], height[c2]);
+            setUnion(index, c1, c2);
+            index = parent[index];
+        }
+    }
+
+    private int balance(int a) {
+        if (isLeaf(a) || height[a] < 2) {
+            return a;
+        }
+        int b = child1[a];
+        int c = child2[a];
+        int balance = height[c] - height[b];
+        if (balance > 1) {
+            return rotate(a, c, b, false);
+        }
+        if (balance < -1) {
+            return rotate(a, b, c, true);
+        }
+        return a;
+    }
+
+    private int rotate(int a, int up, int other, boolean upIsFirst) {
+        int f = child1[up];
+        int g = child2[up];
+
+        child1[up] = a;
+        parent[up] = parent[a];
+        parent[a] = up;
+        if (parent[up] != NULL_NODE) {
+            if (child1[parent[up]] == a) {
+                child1[parent[up]] = up;
+            } else {
+                child2[parent[up]] = up;
+            }
+        } else {
+            root = up;
+        }
+
+        int keep = height[f] > height[g] ? f : g;
+        int move = keep == f ? g : f;
+        child2[up] = keep;
+        if (upIsFirst) {
+            child1[a] = move;
+        } else {
+            child2[a] = move;
+        }
+        parent[move] = a;
+        setUnion(a, other, move);
+        setUnion(up, a, keep);
+        height[a] = 1 + Math.max(height[other], height[move]);
+        height[up] = 1 + Math.max(height[a], height[keep]);
+        return up;
+    }
+
+    private int push(int top, int node) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top] = node;
+        return top + 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void queryFrustum(FrustumIntersection frustum, Consumer<T> consumer) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            boolean inside = node < 0;
+            if (inside) {
+                node = ~node;
+            } else {
+                int b = node * 6;
+                int result = frustum.intersectAab(bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3], bounds[b + 4],
+                        bounds[b + 5]);
+                if (result != FrustumIntersection.INSIDE && result != FrustumIntersection.INTERSECT) {
+                    continue;
+                }
+                inside = result == FrustumIntersection.INSIDE;
+            }
+            if (isLeaf(node)) {
+                consumer.accept((T) items[node]);
+            } else if (inside) {
+                top = push(top, ~child1[node]);
+                top = push(top, ~child2[node]);
+            } else {
+                top = push(top, child1[node]);
+                top = push(top, child2[node]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void queryAabb(Vector3fc min, Vector3fc max, Consumer<T> consumer) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * 6;
+            if (bounds[b] > max.x() || bounds[b + 1] > max.y() || bounds[b + 2] > max.z()
+                    || bounds[b + 3] < min.x() || bounds[b + 4] < min.y() || bounds[b + 5] < min.z()) {
+                continue;
+            }
+            if (isLeaf(node)) {
+                consumer.accept((T) items[node]);
+            } else {
+                top = push(top, child1[node]);
+                top = push(top, child2[node]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void querySphere(Vector3fc center, float radius, Consumer<T> consumer) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        float radiusSquared = radius * radius;
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * 6;
+            float distanceSquared = 0;
+            for (int c = 0; c < 3; c++) {
+                float value = center.get(c);
+                float d = Math.max(0, Math.max(bounds[b + c] - value, value - bounds[b + 3 + c]));
+                distanceSquared += d * d;
+            }
+            if (distanceSquared > radiusSquared) {
+                continue;
+            }
+            if (isLeaf(node)) {
+                consumer.accept((T) items[node]);
+            } else {
+                top = push(top, child1[node]);
+                top = push(top, child2[node]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void raycast(Vector3fc origin, Vector3fc direction, float maxDistance, RayCallback<T> callback) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        float invX = 1 / direction.x();
+        float invY = 1 / direction.y();
+        float invZ = 1 / direction.z();
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            float distance = intersectRay(node, origin, invX, invY, invZ, maxDistance);
+            if (distance < 0) {
+                continue;
+            }
+            if (isLeaf(node)) {
+                maxDistance = Math.min(maxDistance, callback.hit((T) items[node], distance));
+            } else {
+                top = push(top, child1[node]);
+                top = push(top, child2[node]);
+            }
+        }
+    }
+
+    private float intersectRay(int node, Vector3fc origin, float invX, float invY, float invZ, float maxDistance) {
+        int b = node * 6;
+        float t1 = (bounds[b] - origin.x()) * invX;
+        float t2 = (bounds[b + 3] - origin.x()) * invX;
+        float tMin = Math.min(t1, t2);
+        float tMax = Math.max(t1, t2);
+        t1 = (bounds[b + 1] - origin.y()) * invY;
+        t2 = (bounds[b + 4] - origin.y()) * invY;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        t1 = (bounds[b + 2] - origin.z()) * invZ;
+        t2 = (bounds[b + 5] - origin.z()) * invZ;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        if (tMax < Math.max(tMin, 0) || tMin > maxDistance) {
+            return -1;
+        }
+        return Math.max(tMin, 0);
+    }
+}
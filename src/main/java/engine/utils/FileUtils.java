@@ -1,31 +1,43 @@
 package engine.utils;
 
-import org.lwjgl.BufferUtils;
-import org.lwjgl.system.MemoryUtil;
-
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
-import java.nio.channels.SeekableByteChannel;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
-import java.util.Scanner;
 
 public class FileUtils {
 
     public static String loadResource(String fileName) throws Exception {
-        String result;
-        try (InputStream in = FileUtils.class.getResourceAsStream(fileName)) {
-            assert in != null;
-            try (Scanner scanner = new Scanner(in, java.nio.charset.StandardCharsets.UTF_8.name())) {
-                result = scanner.useDelimiter("\\A").next();
+        try (Resource resource = Resource.open(fileName)) {
+            return resource.asString();
+        }
+    }
+
+    public static String contentHash(Path path, String salt) throws IOException {
+        return contentHash(List.of(path), salt);
+    }
+
+    public static String contentHash(List<Path> paths, String salt) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Path path : paths) {
+                try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+                    digest.update(fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size()));
+                }
+            }
+            digest.update(salt.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hash.append(String.format("%02x", b));
             }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IOException(excp);
         }
-        return result;
     }
 
     public static int[] listIntToArray(List<Integer> list) {
@@ -40,45 +52,4 @@ public class FileUtils {
         }
         return floatArr;
     }
-
-    public static ByteBuffer ioResourceToByteBuffer(String resource, int bufferSize) throws IOException {
-        ByteBuffer buffer;
-
-        Path path = Paths.get(resource);
-        if (Files.isReadable(path)) {
-            try (SeekableByteChannel fc = Files.newByteChannel(path)) {
-                buffer = MemoryUtil.memAlloc((int) fc.size() + 1);
-                while (fc.read(buffer) != -1) ;
-            }
-        } else {
-            try (
-                    InputStream source = FileUtils.class.getResourceAsStream(resource)) {
-                assert source != null;
-                try (ReadableByteChannel rbc = Channels.newChannel(source)) {
-                    buffer = MemoryUtil.memAlloc(bufferSize);
-
-                    while (true) {
-                        int bytes = rbc.read(buffer);
-                        if (bytes == -1) {
-                            break;
-                        }
-                        if (buffer.remaining() == 0) {
-                            buffer = resizeBuffer(buffer, buffer.capacity() * 2);
-                        }
-                    }
-                }
-            }
-        }
-
-        buffer.flip();
-        return buffer;
-    }
-
-    private static ByteBuffer resizeBuffer(ByteBuffer buffer, int newCapacity) {
-        ByteBuffer newBuffer = BufferUtils.createByteBuffer(newCapacity);
-        buffer.flip();
-        newBuffer.put(buffer);
-        return newBuffer;
-    }
-
 }
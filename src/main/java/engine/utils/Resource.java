@@ -0,0 +1,151 @@
+package engine.utils;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class Resource implements AutoCloseable {
+
+    private static final int INITIAL_POOLED_SIZE = 64 * 1024;
+
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    private static final int MAX_POOLED_SIZE = 64 * 1024 * 1024;
+
+    private static final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+
+    private static final AtomicInteger poolSize = new AtomicInteger();
+
+    private final String name;
+
+    private final boolean pooled;
+
+    private ByteBuffer storage;
+
+    private ByteBuffer buffer;
+
+    private Resource(String name, ByteBuffer storage, ByteBuffer buffer, boolean pooled) {
+        this.name = name;
+        this.storage = storage;
+        this.buffer = buffer;
+        this.pooled = pooled;
+    }
+
+    public static Resource open(String resource) throws IOException {
+        Path path = Paths.get(resource);
+        if (Files.isReadable(path)) {
+            return map(resource, path);
+        }
+        URL url = Resource.class.getResource(resource);
+        if (url == null) {
+            throw new IOException("Nepodařilo se najít zdroj: " + resource);
+        }
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return map(resource, Paths.get(url.toURI()));
+            } catch (URISyntaxException excp) {
+                throw new IOException(excp);
+            }
+        }
+        try (InputStream in = url.openStream()) {
+            return stream(resource, in);
+        }
+    }
+
+    private static Resource map(String name, Path path) throws IOException {
+        try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer mapped = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+            return new Resource(name, null, mapped, false);
+        }
+    }
+
+    private static Resource stream(String name, InputStream in) throws IOException {
+        ByteBuffer storage = acquire();
+        try (ReadableByteChannel rbc = Channels.newChannel(in)) {
+            while (rbc.read(storage) != -1) {
+                if (!storage.hasRemaining()) {
+                    storage = MemoryUtil.memRealloc(storage, storage.capacity() * 2);
+                }
+            }
+        } catch (IOException | RuntimeException excp) {
+            release(storage);
+            throw excp;
+        }
+        storage.flip();
+        return new Resource(name, storage, storage.slice(), true);
+    }
+
+    private static ByteBuffer acquire() {
+        ByteBuffer storage = pool.poll();
+        if (storage == null) {
+            return MemoryUtil.memAlloc(INITIAL_POOLED_SIZE);
+        }
+        poolSize.decrementAndGet();
+        storage.clear();
+        return storage;
+    }
+
+    private static void release(ByteBuffer storage) {
+        if (storage.capacity() <= MAX_POOLED_SIZE) {
+            if (poolSize.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+                pool.add(storage);
+                return;
+            }
+            poolSize.decrementAndGet();
+        }
+        MemoryUtil.memFree(storage);
+    }
+
+    public static void clearPool() {
+        ByteBuffer storage;
+        while ((storage = pool.poll()) != null) {
+            poolSize.decrementAndGet();
+            MemoryUtil.memFree(storage);
+        }
+    }
+
+    public ByteBuffer getBuffer() {
+        if (buffer == null) {
+            throw new IllegalStateException("Zdroj již byl uvolněn: " + name);
+        }
+        return buffer;
+    }
+
+    public int size() {
+        return getBuffer().remaining();
+    }
+
+    public boolean isMapped() {
+        return !pooled;
+    }
+
+    public String asString() {
+        return MemoryUtil.memUTF8(getBuffer());
+    }
+
+    @Override
+    public void close() {
+        if (buffer == null) {
+            return;
+        }
+        if (pooled) {
+            release(storage);
+        }
+        storage = null;
+        buffer = null;
+    }
+}
@@ -12,9 +12,12 @@ public class Main {
             Window.WindowOptions opts = new Window.WindowOptions();
             opts.cullFace = false;
             opts.showFps = true;
+            opts.showStats = true;
             opts.compatibleProfile = true;
             opts.antialiasing = true;
-            opts.frustumCulling = false;
+            opts.frustumCulling = true;
+            opts.occlusionCulling = true;
+            opts.occlusionQueries = true;
             GameEngine gameEng = new GameEngine("PGRF2 - OpenGL", true, opts, game);
             gameEng.run();
         } catch (Exception e) {
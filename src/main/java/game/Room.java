@@ -4,16 +4,22 @@ import engine.core.*;
 import engine.graphics.Camera;
 import engine.graphics.Mesh;
 import engine.graphics.Renderer;
+import engine.graphics.VertexFormat;
 import engine.graphics.lights.Attenuation;
 import engine.graphics.lights.DirectionalLight;
 import engine.graphics.lights.PointLight;
 import engine.items.complex.GameItem;
 import engine.items.complex.SkyBox;
-import engine.loaders.MeshLoader;
+import engine.items.complex.TransformStore;
+import engine.loaders.AssetLoader;
+import engine.loaders.TextureCache;
+import engine.utils.Resource;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
 
+import java.util.concurrent.CompletableFuture;
+
 import static org.lwjgl.glfw.GLFW.*;
 
 public class Room implements Game {
@@ -38,6 +44,8 @@ public class Room implements Game {
 
     private Vector3f pointLightPos;
 
+    private AssetLoader assetLoader;
+
     public Room() {
         renderer = new Renderer();
         camera = new Camera();
@@ -49,32 +57,42 @@ public class Room implements Game {
 
     @Override
     public void init(Window window) throws Exception {
-        renderer.init(window);
+        assetLoader = new AssetLoader();
+        assetLoader.setStreamTextures(true);
+        assetLoader.setBuildAtlases(true);
+        assetLoader.setOptimizeMeshes(true);
+        assetLoader.setBuildLods(true);
+        assetLoader.setBuildMeshlets(true);
+        assetLoader.setBuildOccluders(true);
+        assetLoader.setVertexFormat(VertexFormat.COMPACT);
+        CompletableFuture<Void> rendererReady = renderer.init(window, assetLoader);
 
         scene = new Scene();
 
-        Mesh[] houseMesh = MeshLoader.load("models/house/house.obj", "models/house");
-        GameItem house = new GameItem(houseMesh);
+        CompletableFuture<Mesh[]> houseMesh = assetLoader.loadMeshes("models/house/house.obj", "models/house");
+        CompletableFuture<Mesh[]> chairMesh = assetLoader.loadMeshes("models/chair/chair.obj", "models/chair");
+        CompletableFuture<Mesh[]> tableMesh = assetLoader.loadMeshes("models/table/table.obj", "models/table");
+        CompletableFuture<Mesh[]> sofaMesh = assetLoader.loadMeshes("models/sofa/sofa.obj", "models/sofa");
+        CompletableFuture<Mesh[]> tvMesh = assetLoader.loadMeshes("models/tv.obj", "models/");
+
+        assetLoader.await(CompletableFuture.allOf(rendererReady, houseMesh, chairMesh, tableMesh, sofaMesh, tvMesh));
 
-        Mesh[] chairMesh = MeshLoader.load("models/chair/chair.obj", "models/chair");
-        GameItem chair = new GameItem(chairMesh);
+        GameItem house = new GameItem(houseMesh.join());
+        house.setOccluder(true);
+
+        GameItem chair = new GameItem(chairMesh.join());
         chair.setScale(0.05f);
-        chair.getPosition().x = -7;
-        chair.getPosition().y = 1;
-        chair.getPosition().z = -12;
+        chair.setPosition(-7, 1, -12);
 
-        Mesh[] tableMesh = MeshLoader.load("models/table/table.obj", "models/table");
-        GameItem table = new GameItem(tableMesh);
+        GameItem table = new GameItem(tableMesh.join());
 
-        Mesh[] sofaMesh = MeshLoader.load("models/sofa/sofa.obj", "models/sofa");
-        GameItem sofa = new GameItem(sofaMesh);
+        GameItem sofa = new GameItem(sofaMesh.join());
         sofa.setScale(5);
-        sofa.getPosition().z = 20;
+        sofa.setPosition(0, 0, 20);
 
-        Mesh[] tvMesh = MeshLoader.load("models/tv.obj", "models/");
-        GameItem tv = new GameItem(tvMesh);
+        GameItem tv = new GameItem(tvMesh.join());
         tv.setScale(3);
-        tv.getPosition().z = 27;
+        tv.setPosition(0, 0, 27);
 
         scene.setGameItems(new GameItem[]{house, chair, table, sofa, tv});
 
@@ -174,13 +192,26 @@ public class Room implements Game {
         if (firstTime) {
             firstTime = false;
         }
+        assetLoader.processUploads(AssetLoader.DEFAULT_UPLOAD_BUDGET_NANOS);
         renderer.render(window, camera, scene);
     }
 
+    @Override
+    public String getStats() {
+        return renderer.getFrameStats();
+    }
+
     @Override
     public void cleanup() {
+        if (assetLoader != null) {
+            assetLoader.cleanup();
+        }
         renderer.cleanup();
 
         scene.cleanup();
+
+        TextureCache.getInstance().cleanup();
+        TransformStore.getInstance().cleanup();
+        Resource.clearPool();
     }
 }
@@ -23,6 +23,9 @@ uniform mat4 orthoProjectionMatrix[NUM_CASCADES];
 uniform int numCols;
 uniform int numRows;
 uniform float selectedNonInstanced;
+uniform vec3 positionOffset;
+uniform vec3 positionScale;
+uniform int packedNormals;
 
 out vec2  vs_textcoord;
 out vec3  vs_normal;
@@ -31,8 +34,19 @@ out vec4  vs_mlightviewVertexPos[NUM_CASCADES];
 out mat4  vs_modelMatrix;
 out float vs_selected;
 
+vec3 octDecode(vec2 e)
+{
+    vec3 n = vec3(e.xy, 1.0 - abs(e.x) - abs(e.y));
+    float t = max(-n.z, 0.0);
+    n.x += n.x >= 0.0 ? -t : t;
+    n.y += n.y >= 0.0 ? -t : t;
+    return normalize(n);
+}
+
 void main()
 {
+    vec3 vertexPosition = positionOffset + position * positionScale;
+    vec3 normal = packedNormals > 0 ? octDecode(vertexNormal.xy) : vertexNormal;
     vec4 initPos = vec4(0, 0, 0, 0);
     vec4 initNormal = vec4(0, 0, 0, 0);
     mat4 modelMatrix;
@@ -41,8 +55,8 @@ void main()
         vs_selected = selectedInstanced;
         modelMatrix = modelInstancedMatrix;
 
-        initPos = vec4(position, 1.0);
-        initNormal = vec4(vertexNormal, 0.0);
+        initPos = vec4(vertexPosition, 1.0);
+        initNormal = vec4(normal, 0.0);
     }
     else
     {
@@ -56,17 +70,17 @@ void main()
             if(weight > 0) {
                 count++;
                 int jointIndex = jointIndices[i];
-                vec4 tmpPos = jointsMatrix[jointIndex] * vec4(position, 1.0);
+                vec4 tmpPos = jointsMatrix[jointIndex] * vec4(vertexPosition, 1.0);
                 initPos += weight * tmpPos;
 
-                vec4 tmpNormal = jointsMatrix[jointIndex] * vec4(vertexNormal, 0.0);
+                vec4 tmpNormal = jointsMatrix[jointIndex] * vec4(normal, 0.0);
                 initNormal += weight * tmpNormal;
             }
         }
         if (count == 0)
         {
-            initPos = vec4(position, 1.0);
-            initNormal = vec4(vertexNormal, 0.0);
+            initPos = vec4(vertexPosition, 1.0);
+            initNormal = vec4(normal, 0.0);
         }
     }
 	mat4 modelViewMatrix = viewMatrix * modelMatrix;
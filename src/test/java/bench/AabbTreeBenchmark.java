@@ -0,0 +1,101 @@
+package bench;
+
+import engine.utils.AabbTree;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Random;
+
+public class AabbTreeBenchmark {
+
+    private static final int[] DEFAULT_SIZES = {10_000, 100_000, 1_000_000};
+
+    private static final float ITEMS_PER_SQUARE_UNIT = 0.005f;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = Benchmark.intArg(args, 0, 500);
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 1) {
+            sizes = new int[]{Benchmark.intArg(args, 1, DEFAULT_SIZES[0])};
+        }
+        for (int numItems : sizes) {
+            run(numItems, Math.max(5, (int) ((long) iterations * DEFAULT_SIZES[0] / numItems)));
+        }
+    }
+
+    private static void run(int numItems, int iterations) throws Exception {
+        float worldSize = (float) Math.sqrt(numItems / ITEMS_PER_SQUARE_UNIT);
+        System.out.printf("%d položek, svět %.0f x %.0f%n", numItems, worldSize, worldSize);
+
+        Random random = new Random(11);
+        float[] bounds = new float[numItems * 6];
+        Vector3f min = new Vector3f();
+        Vector3f max = new Vector3f();
+        for (int i = 0; i < numItems; i++) {
+            min.set(random.nextFloat() * worldSize - worldSize / 2, random.nextFloat() * 20, random.nextFloat() * worldSize - worldSize / 2);
+            max.set(min).add(1 + random.nextFloat() * 4, 1 + random.nextFloat() * 4, 1 + random.nextFloat() * 4);
+            bounds[i * 6] = min.x;
+            bounds[i * 6 + 1] = min.y;
+            bounds[i * 6 + 2] = min.z;
+            bounds[i * 6 + 3] = max.x;
+            bounds[i * 6 + 4] = max.y;
+            bounds[i * 6 + 5] = max.z;
+        }
+        AabbTree<Integer> tree = new AabbTree<>();
+        int[] proxies = new int[numItems];
+        Benchmark.run("  build", 0, 1, () -> {
+            for (int i = 0; i < numItems; i++) {
+                int b = i * 6;
+                min.set(bounds[b], bounds[b + 1], bounds[b + 2]);
+                max.set(bounds[b + 3], bounds[b + 4], bounds[b + 5]);
+                proxies[i] = tree.insert(i, min, max);
+            }
+            return proxies;
+        });
+
+        FrustumIntersection frustum = new FrustumIntersection(new Matrix4f()
+                .perspective((float) Math.toRadians(60), 16f / 9f, 0.1f, 300f)
+                .lookAt(0, 10, 0, 1, 10, -1, 0, 1, 0));
+        int[] visible = new int[1];
+        Benchmark.Result linear = Benchmark.run("  linear scan", 5, iterations, () -> {
+            visible[0] = 0;
+            for (int i = 0; i < numItems; i++) {
+                int b = i * 6;
+                if (frustum.testAab(bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3], bounds[b + 4], bounds[b + 5])) {
+                    visible[0]++;
+                }
+            }
+            return visible[0];
+        });
+        int linearVisible = visible[0];
+        Benchmark.Result query = Benchmark.run("  tree query (height " + tree.getHeight() + ")", 5, iterations, () -> {
+            visible[0] = 0;
+            tree.queryFrustum(frustum, item -> visible[0]++);
+            return visible[0];
+        });
+        System.out.printf("    viditelné: sken %d, strom %d, zrychlení %.1fx%n", linearVisible, visible[0],
+                (double) linear.getNanosPerOp() / query.getNanosPerOp());
+
+        int numMoved = numItems / 10;
+        Benchmark.run("  move " + numMoved + " items", 2, Math.max(3, iterations / 5), () -> {
+            int moved = 0;
+            for (int i = 0; i < numMoved; i++) {
+                int item = random.nextInt(numItems);
+                int b = item * 6;
+                float dx = random.nextFloat() - 0.5f;
+                float dz = random.nextFloat() - 0.5f;
+                bounds[b] += dx;
+                bounds[b + 3] += dx;
+                bounds[b + 2] += dz;
+                bounds[b + 5] += dz;
+                min.set(bounds[b], bounds[b + 1], bounds[b + 2]);
+                max.set(bounds[b + 3], bounds[b + 4], bounds[b + 5]);
+                if (tree.move(proxies[item], min, max)) {
+                    moved++;
+                }
+            }
+            return moved;
+        });
+    }
+}
@@ -0,0 +1,91 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+
+public final class Benchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile Object sink;
+
+    private static long nativeBytes;
+
+    private Benchmark() {
+    }
+
+    public static Result run(String name, int warmupIterations, int iterations, Task task) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            sink = task.run();
+        }
+        nativeBytes = -1;
+        long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink = task.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        Result result = new Result(name, elapsed / iterations, allocated / iterations,
+                nativeBytes >= 0 ? nativeBytes / iterations : -1);
+        System.out.println(result);
+        return result;
+    }
+
+    public static void addNativeBytes(long bytes) {
+        nativeBytes = Math.max(nativeBytes, 0) + bytes;
+    }
+
+    public static int intArg(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+
+    public static String stringArg(String[] args, int index, String defaultValue) {
+        return args.length > index ? args[index] : defaultValue;
+    }
+
+    public interface Task {
+
+        Object run() throws Exception;
+    }
+
+    public static class Result {
+
+        private final String name;
+
+        private final long nanosPerOp;
+
+        private final long bytesPerOp;
+
+        private final long nativeBytesPerOp;
+
+        private Result(String name, long nanosPerOp, long bytesPerOp, long nativeBytesPerOp) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+            this.nativeBytesPerOp = nativeBytesPerOp;
+        }
+
+        public long getNanosPerOp() {
+            return nanosPerOp;
+        }
+
+        public long getBytesPerOp() {
+            return bytesPerOp;
+        }
+
+        public long getNativeBytesPerOp() {
+            return nativeBytesPerOp;
+        }
+
+        public double getOpsPerSecond() {
+            return nanosPerOp > 0 ? 1e9 / nanosPerOp : 0;
+        }
+
+        @Override
+        public String toString() {
+            String heap = String.format("%-44s %12.3f ms/op %14d B/op heap", name, nanosPerOp / 1e6, bytesPerOp);
+            return nativeBytesPerOp >= 0 ? heap + String.format(" %12d B/op native", nativeBytesPerOp) : heap;
+        }
+    }
+}
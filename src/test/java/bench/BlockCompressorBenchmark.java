@@ -0,0 +1,50 @@
+package bench;
+
+import engine.loaders.BlockCompressor;
+import engine.loaders.TextureData;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class BlockCompressorBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int size = Benchmark.intArg(args, 0, 1024);
+        int iterations = Benchmark.intArg(args, 1, 10);
+
+        ByteBuffer rgba = MemoryUtil.memAlloc(size * size * TextureData.BYTES_PER_PIXEL);
+        Random random = new Random(7);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int p = (y * size + x) * TextureData.BYTES_PER_PIXEL;
+                int noise = random.nextInt(24);
+                rgba.put(p, (byte) (x * 255 / size + noise))
+                        .put(p + 1, (byte) (y * 255 / size + noise))
+                        .put(p + 2, (byte) ((x ^ y) & 0xFF))
+                        .put(p + 3, (byte) (255 - x * 255 / size));
+            }
+        }
+        for (BlockCompressor.Format format : BlockCompressor.Format.values()) {
+            ByteBuffer blocks = MemoryUtil.memAlloc(format.getCompressedSize(size, size));
+            Benchmark.Result result = Benchmark.run("encode " + format + " " + size + "x" + size, 2, iterations, () -> {
+                BlockCompressor.compress(rgba, size, size, format, blocks);
+                return blocks;
+            });
+            ByteBuffer decoded = BlockCompressor.decompress(blocks, size, size, format);
+            System.out.printf("    %.1f MPix/s, PSNR %.2f dB%n", result.getOpsPerSecond() * size * size / 1e6,
+                    BlockCompressor.psnr(rgba, decoded, numChannels(format)));
+            MemoryUtil.memFree(decoded);
+            MemoryUtil.memFree(blocks);
+        }
+        MemoryUtil.memFree(rgba);
+    }
+
+    private static int numChannels(BlockCompressor.Format format) {
+        return switch (format) {
+            case BC1 -> 3;
+            case BC3 -> 4;
+            case BC5 -> 2;
+        };
+    }
+}
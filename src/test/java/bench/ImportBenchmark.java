@@ -0,0 +1,98 @@
+package bench;
+
+import engine.loaders.MeshCache;
+import engine.loaders.MeshData;
+import engine.loaders.MeshLoader;
+import engine.loaders.ModelData;
+import engine.utils.FileUtils;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.assimp.AIFace;
+import org.lwjgl.assimp.AIMesh;
+import org.lwjgl.assimp.AIScene;
+import org.lwjgl.assimp.AIVector3D;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.assimp.Assimp.aiImportFile;
+import static org.lwjgl.assimp.Assimp.aiReleaseImport;
+
+public class ImportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String resourcePath = Benchmark.stringArg(args, 0, "models/house/house.obj");
+        String texturesDir = Benchmark.stringArg(args, 1, "models/house");
+        int iterations = Benchmark.intArg(args, 2, 10);
+
+        MeshCache.getInstance().setEnabled(false);
+        Benchmark.run("import boxed lists " + resourcePath, 2, iterations, () -> {
+            Benchmark.addNativeBytes(0);
+            return importBoxed(resourcePath, MeshLoader.DEFAULT_FLAGS);
+        });
+        Benchmark.run("import direct buffers " + resourcePath, 2, iterations, () -> {
+            ModelData modelData = MeshLoader.importModel(resourcePath, texturesDir, MeshLoader.DEFAULT_FLAGS);
+            int numVertices = 0;
+            for (MeshData mesh : modelData.getMeshes()) {
+                numVertices += mesh.getNumVertices();
+                Benchmark.addNativeBytes(nativeBytes(mesh));
+                mesh.free();
+            }
+            return numVertices;
+        });
+    }
+
+    private static int importBoxed(String resourcePath, int flags) throws Exception {
+        AIScene aiScene = aiImportFile(resourcePath, flags);
+        if (aiScene == null) {
+            throw new Exception("Nepodařilo se načíst soubor.");
+        }
+        try {
+            int numVertices = 0;
+            PointerBuffer aiMeshes = aiScene.mMeshes();
+            for (int i = 0; i < aiScene.mNumMeshes(); i++) {
+                AIMesh aiMesh = AIMesh.create(aiMeshes.get(i));
+                List<Float> vertices = new ArrayList<>();
+                List<Float> textures = new ArrayList<>();
+                List<Float> normals = new ArrayList<>();
+                List<Integer> indices = new ArrayList<>();
+                addVectors(aiMesh.mVertices(), vertices);
+                addVectors(aiMesh.mNormals(), normals);
+                AIVector3D.Buffer textCoords = aiMesh.mTextureCoords(0);
+                while (textCoords != null && textCoords.remaining() > 0) {
+                    AIVector3D textCoord = textCoords.get();
+                    textures.add(textCoord.x());
+                    textures.add(1 - textCoord.y());
+                }
+                AIFace.Buffer aiFaces = aiMesh.mFaces();
+                for (int f = 0; f < aiMesh.mNumFaces(); f++) {
+                    IntBuffer buffer = aiFaces.get(f).mIndices();
+                    while (buffer.remaining() > 0) {
+                        indices.add(buffer.get());
+                    }
+                }
+                numVertices += FileUtils.listToArray(vertices).length / 3;
+                FileUtils.listToArray(textures);
+                FileUtils.listToArray(normals);
+                FileUtils.listIntToArray(indices);
+            }
+            return numVertices;
+        } finally {
+            aiReleaseImport(aiScene);
+        }
+    }
+
+    private static long nativeBytes(MeshData mesh) {
+        return (long) (mesh.getPositions().capacity() + mesh.getTextCoords().capacity() + mesh.getNormals().capacity()) * Float.BYTES
+                + (long) mesh.getIndices().capacity() * Integer.BYTES;
+    }
+
+    private static void addVectors(AIVector3D.Buffer buffer, List<Float> dest) {
+        while (buffer != null && buffer.remaining() > 0) {
+            AIVector3D vector = buffer.get();
+            dest.add(vector.x());
+            dest.add(vector.y());
+            dest.add(vector.z());
+        }
+    }
+}
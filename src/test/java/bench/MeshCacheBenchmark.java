@@ -0,0 +1,40 @@
+package bench;
+
+import engine.loaders.MeshCache;
+import engine.loaders.MeshData;
+import engine.loaders.MeshLoader;
+import engine.loaders.ModelData;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class MeshCacheBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String resourcePath = Benchmark.stringArg(args, 0, "models/house/house.obj");
+        String texturesDir = Benchmark.stringArg(args, 1, "models/house");
+        int iterations = Benchmark.intArg(args, 2, 10);
+
+        MeshCache meshCache = MeshCache.getInstance();
+        meshCache.setEnabled(true);
+        Path cacheRoot = Files.createTempDirectory("mesh-cache-bench");
+        int[] run = new int[1];
+        Benchmark.run("cache miss " + resourcePath, 1, iterations, () -> {
+            meshCache.setCacheDir(cacheRoot.resolve("miss" + run[0]++));
+            return load(resourcePath, texturesDir);
+        });
+        meshCache.setCacheDir(cacheRoot.resolve("hit"));
+        load(resourcePath, texturesDir);
+        Benchmark.run("cache hit " + resourcePath, 2, iterations, () -> load(resourcePath, texturesDir));
+    }
+
+    private static int load(String resourcePath, String texturesDir) throws Exception {
+        ModelData modelData = MeshLoader.importModel(resourcePath, texturesDir, MeshLoader.DEFAULT_FLAGS);
+        int numVertices = 0;
+        for (MeshData mesh : modelData.getMeshes()) {
+            numVertices += mesh.getNumVertices();
+            mesh.free();
+        }
+        return numVertices;
+    }
+}
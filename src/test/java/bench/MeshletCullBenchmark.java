@@ -0,0 +1,80 @@
+package bench;
+
+import engine.graphics.MeshletCuller;
+import engine.graphics.Meshlets;
+import engine.items.complex.GameItem;
+import engine.items.complex.TransformStore;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+public class MeshletCullBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int segments = Benchmark.intArg(args, 0, 256);
+        int numItems = Benchmark.intArg(args, 1, 64);
+        int iterations = Benchmark.intArg(args, 2, 200);
+
+        int rings = segments / 2;
+        FloatBuffer positions = MemoryUtil.memAllocFloat((rings + 1) * (segments + 1) * 3);
+        for (int ring = 0; ring <= rings; ring++) {
+            double phi = Math.PI * ring / rings;
+            for (int segment = 0; segment <= segments; segment++) {
+                double theta = 2 * Math.PI * segment / segments;
+                positions.put((float) (Math.sin(phi) * Math.cos(theta)))
+                        .put((float) Math.cos(phi))
+                        .put((float) (Math.sin(phi) * Math.sin(theta)));
+            }
+        }
+        positions.flip();
+        IntBuffer indices = MemoryUtil.memAllocInt(rings * segments * 6);
+        for (int ring = 0; ring < rings; ring++) {
+            for (int segment = 0; segment < segments; segment++) {
+                int v = ring * (segments + 1) + segment;
+                indices.put(v).put(v + 1).put(v + segments + 1);
+                indices.put(v + 1).put(v + segments + 2).put(v + segments + 1);
+            }
+        }
+        indices.flip();
+
+        Meshlets[] meshlets = new Meshlets[1];
+        Benchmark.run("build meshlets " + indices.remaining() / 3 + " tri", 2, 10,
+                () -> meshlets[0] = Meshlets.build(positions, indices, indices.remaining()));
+
+        TransformStore transformStore = new TransformStore(numItems);
+        GameItem[] gameItems = new GameItem[numItems];
+        for (int i = 0; i < numItems; i++) {
+            gameItems[i] = new GameItem(transformStore);
+            gameItems[i].setPosition((i % 8 - 3.5f) * 3, (i / 8 % 8 - 3.5f) * 3, -10 - i / 64 * 3);
+            gameItems[i].setScale(1.0f + (i % 3) * 0.25f);
+        }
+        transformStore.updateMatrices();
+
+        Matrix4f projView = new Matrix4f().perspective((float) Math.toRadians(60), 16f / 9f, 0.1f, 1000f)
+                .lookAt(0, 0, 0, 0, 0, -1, 0, 1, 0);
+        FrustumIntersection frustum = new FrustumIntersection(projView);
+        MeshletCuller culler = new MeshletCuller();
+        Vector3f cameraPosition = new Vector3f();
+        Benchmark.Result result = Benchmark.run("cull " + meshlets[0].getNumMeshlets() + " meshlets x " + numItems + " items",
+                5, iterations, () -> {
+                    culler.update(frustum, cameraPosition);
+                    int ranges = 0;
+                    for (GameItem gameItem : gameItems) {
+                        ranges += culler.cull(meshlets[0], gameItem, Integer.BYTES);
+                    }
+                    return ranges;
+                });
+        System.out.printf("    %.1f M meshletů/s, odstraněno %.1f %%%n",
+                result.getOpsPerSecond() * culler.getTestedMeshlets() / 1e6,
+                100.0 * culler.getCulledMeshlets() / culler.getTestedMeshlets());
+
+        culler.cleanup();
+        transformStore.cleanup();
+        MemoryUtil.memFree(positions);
+        MemoryUtil.memFree(indices);
+    }
+}
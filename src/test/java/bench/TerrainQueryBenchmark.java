@@ -0,0 +1,66 @@
+package bench;
+
+import engine.graphics.Material;
+import engine.graphics.VertexFormat;
+import engine.loaders.AssetLoader;
+import engine.terrain.HeightGrid;
+import engine.terrain.Terrain;
+
+import java.util.Random;
+
+public class TerrainQueryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int gridSize = Benchmark.intArg(args, 0, 1025);
+        int count = Benchmark.intArg(args, 1, 1_000_000);
+        int iterations = Benchmark.intArg(args, 2, 20);
+
+        float[] samples = new float[gridSize * gridSize];
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
+                samples[row * gridSize + col] = (float) (Math.sin(col * 0.05) * Math.cos(row * 0.03) * 20);
+            }
+        }
+        AssetLoader assetLoader = new AssetLoader(1);
+        Terrain terrain = new Terrain(new HeightGrid(gridSize, gridSize, samples), 1000, 1000,
+                Terrain.DEFAULT_CHUNK_SIZE, 40, VertexFormat.STATIC, new Material(), assetLoader, 200);
+
+        Random random = new Random(3);
+        float[] xs = new float[count];
+        float[] zs = new float[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = random.nextFloat() * 1000 - 500;
+            zs[i] = random.nextFloat() * 1000 - 500;
+        }
+        float[] heights = new float[count];
+        float[] normals = new float[count * 3];
+
+        Benchmark.Result single = Benchmark.run("getHeight x " + count, 3, iterations, () -> {
+            for (int i = 0; i < count; i++) {
+                heights[i] = terrain.getHeight(xs[i], zs[i]);
+            }
+            return heights;
+        });
+        Benchmark.Result batched = Benchmark.run("getHeights " + count, 3, iterations, () -> {
+            terrain.getHeights(xs, zs, heights, count);
+            return heights;
+        });
+        Benchmark.Result withNormals = Benchmark.run("getHeightsAndNormals " + count, 3, iterations, () -> {
+            terrain.getHeightsAndNormals(xs, zs, heights, normals, count);
+            return normals;
+        });
+        printThroughput("getHeight", single, count);
+        printThroughput("getHeights", batched, count);
+        printThroughput("getHeightsAndNormals", withNormals, count);
+        System.out.printf("    zrychlení dávky %.1fx%n", (double) single.getNanosPerOp() / batched.getNanosPerOp());
+
+        terrain.cleanup();
+        assetLoader.cleanup();
+    }
+
+    private static void printThroughput(String name, Benchmark.Result result, int count) {
+        double queriesPerSecond = result.getOpsPerSecond() * count;
+        System.out.printf("    %-22s %8.2f M dotazů/s %10.3f ms / 1M dotazů%n", name, queriesPerSecond / 1e6,
+                1e9 / queriesPerSecond);
+    }
+}
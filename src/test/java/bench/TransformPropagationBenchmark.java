@@ -0,0 +1,113 @@
+package bench;
+
+import engine.items.complex.GameItem;
+import engine.items.complex.TransformStore;
+import org.joml.Quaternionf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class TransformPropagationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int numRoots = Benchmark.intArg(args, 0, 64);
+        int fanout = Benchmark.intArg(args, 1, 8);
+        int depth = Benchmark.intArg(args, 2, 3);
+        int chainLength = Benchmark.intArg(args, 3, 10000);
+        int wideChildren = Benchmark.intArg(args, 4, 100000);
+        int iterations = Benchmark.intArg(args, 5, 200);
+
+        ForkJoinPool singleThread = new ForkJoinPool(1);
+        for (ForkJoinPool pool : new ForkJoinPool[]{ForkJoinPool.commonPool(), singleThread}) {
+            String poolName = pool == singleThread ? "1 vlákno" : "common pool";
+
+            TransformStore store = new TransformStore(1024, pool);
+            Hierarchy tree = new Hierarchy();
+            for (int i = 0; i < numRoots; i++) {
+                GameItem root = tree.addRoot(store);
+                root.setPosition(i, 0, 0);
+                buildTree(store, tree, root, fanout, depth);
+            }
+            run("strom " + numRoots + "x" + fanout + "^" + depth + ", " + poolName, store, tree, iterations);
+
+            store = new TransformStore(1024, pool);
+            Hierarchy chain = new Hierarchy();
+            GameItem parent = chain.addRoot(store);
+            for (int i = 0; i < chainLength; i++) {
+                parent = chain.addChild(store, parent);
+                parent.setPosition(0, 0.01f, 0);
+            }
+            run("řetěz " + chainLength + ", " + poolName, store, chain, iterations);
+
+            store = new TransformStore(1024, pool);
+            Hierarchy wide = new Hierarchy();
+            GameItem root = wide.addRoot(store);
+            for (int i = 0; i < wideChildren; i++) {
+                wide.addChild(store, root).setPosition(i % 1000, 0, i / 1000);
+            }
+            run("široký 1x" + wideChildren + ", " + poolName, store, wide, iterations);
+        }
+        singleThread.shutdown();
+    }
+
+    private static void run(String name, TransformStore store, Hierarchy hierarchy, int iterations) throws Exception {
+        store.updateMatrices();
+        System.out.println(name + ": " + store.getSize() + " transformací");
+
+        Quaternionf rotation = new Quaternionf();
+        Random random = new Random(5);
+        float[] angle = new float[1];
+        int[] recomputed = new int[3];
+        List<GameItem> nodes = hierarchy.nodes;
+        int numMoved = Math.max(1, nodes.size() / 100);
+        Benchmark.run("  pohyb všech kořenů", 10, iterations, () -> {
+            angle[0] += 0.01f;
+            for (GameItem root : hierarchy.roots) {
+                root.setRotation(rotation.rotationY(angle[0]));
+            }
+            return recomputed[0] = store.updateMatrices();
+        });
+        Benchmark.run("  pohyb 1 % uzlů", 10, iterations, () -> {
+            for (int i = 0; i < numMoved; i++) {
+                nodes.get(random.nextInt(nodes.size())).setPosition(random.nextFloat(), 0, 0);
+            }
+            return recomputed[1] = store.updateMatrices();
+        });
+        Benchmark.run("  bez změn", 10, iterations, () -> recomputed[2] = store.updateMatrices());
+        System.out.printf("    přepočteno %d / %d / %d matic%n", recomputed[0], recomputed[1], recomputed[2]);
+        store.cleanup();
+    }
+
+    private static void buildTree(TransformStore store, Hierarchy hierarchy, GameItem parent, int fanout, int depth) {
+        for (int i = 0; i < fanout; i++) {
+            GameItem child = hierarchy.addChild(store, parent);
+            child.setPosition(0, 1, i);
+            child.setScale(0.9f);
+            if (depth > 1) {
+                buildTree(store, hierarchy, child, fanout, depth - 1);
+            }
+        }
+    }
+
+    private static class Hierarchy {
+
+        private final List<GameItem> roots = new ArrayList<>();
+
+        private final List<GameItem> nodes = new ArrayList<>();
+
+        GameItem addRoot(TransformStore store) {
+            GameItem root = new GameItem(store);
+            roots.add(root);
+            return root;
+        }
+
+        GameItem addChild(TransformStore store, GameItem parent) {
+            GameItem child = new GameItem(store);
+            child.setParent(parent);
+            nodes.add(child);
+            return child;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package engine.graphics;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OcclusionCullerTest {
+
+    private OcclusionCuller culler;
+
+    private Matrix4f projView;
+
+    @BeforeEach
+    void rasterizeWall() {
+        FloatBuffer positions = FloatBuffer.wrap(new float[]{
+                -5, -5, -10,
+                5, -5, -10,
+                5, 5, -10,
+                -5, 5, -10
+        });
+        IntBuffer indices = IntBuffer.wrap(new int[]{0, 1, 2, 0, 2, 3});
+        Occluder wall = Occluder.build(positions, indices, 0, 6);
+
+        projView = new Matrix4f().perspective((float) Math.toRadians(60), 2.0f, 0.1f, 100.0f)
+                .lookAt(0, 0, 0, 0, 0, -1, 0, 1, 0);
+        culler = new OcclusionCuller();
+        culler.beginOccluders();
+        culler.addOccluder(wall, projView);
+        culler.rasterizeOccluders();
+    }
+
+    @Test
+    void rasterizesOccluderTriangles() {
+        assertEquals(2, culler.getOccluderTriangles());
+        assertTrue(culler.getDepth(0, culler.getWidth() / 2, culler.getHeight() / 2) < 1.0f);
+        assertEquals(1.0f, culler.getDepth(0, 0, 0));
+    }
+
+    @Test
+    void occluderInteriorHasNoHoles() {
+        int width = culler.getWidth();
+        int height = culler.getHeight();
+        for (int y = height * 2 / 10; y < height * 8 / 10; y++) {
+            for (int x = width * 3 / 10; x < width * 7 / 10; x++) {
+                assertTrue(culler.getDepth(0, x, y) < 1.0f, "díra v okluderu na " + x + ", " + y);
+            }
+        }
+    }
+
+    @Test
+    void boxBehindOccluderIsCulled() {
+        assertTrue(culler.isOccluded(new Vector3f(-1, -1, -21), new Vector3f(1, 1, -19), projView));
+    }
+
+    @Test
+    void boxBesideOccluderIsKept() {
+        assertFalse(culler.isOccluded(new Vector3f(18, -1, -21), new Vector3f(20, 1, -19), projView));
+    }
+
+    @Test
+    void boxInFrontOfOccluderIsKept() {
+        assertFalse(culler.isOccluded(new Vector3f(-1, -1, -6), new Vector3f(1, 1, -4), projView));
+    }
+
+    @Test
+    void boxOverlappingOccluderEdgeIsKept() {
+        assertFalse(culler.isOccluded(new Vector3f(8, -1, -21), new Vector3f(14, 1, -19), projView));
+    }
+
+    @Test
+    void boxCrossingNearPlaneIsKept() {
+        assertFalse(culler.isOccluded(new Vector3f(-1, -1, -1), new Vector3f(1, 1, 1), projView));
+    }
+}
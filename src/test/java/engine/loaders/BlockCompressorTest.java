@@ -0,0 +1,84 @@
+package engine.loaders;
+
+import org.junit.jupiter.api.Test;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockCompressorTest {
+
+    private static final int WIDTH = 70;
+
+    private static final int HEIGHT = 38;
+
+    private static ByteBuffer gradient(int width, int height, boolean alpha) {
+        ByteBuffer rgba = MemoryUtil.memAlloc(width * height * TextureData.BYTES_PER_PIXEL);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int p = (y * width + x) * TextureData.BYTES_PER_PIXEL;
+                rgba.put(p, (byte) (x * 255 / (width - 1)))
+                        .put(p + 1, (byte) (y * 255 / (height - 1)))
+                        .put(p + 2, (byte) ((x + y) * 255 / (width + height - 2)))
+                        .put(p + 3, (byte) (alpha ? 255 - x * 255 / (width - 1) : 255));
+            }
+        }
+        return rgba;
+    }
+
+    private static double roundTrip(BlockCompressor.Format format, boolean alpha, int numChannels) {
+        ByteBuffer rgba = gradient(WIDTH, HEIGHT, alpha);
+        ByteBuffer blocks = MemoryUtil.memAlloc(format.getCompressedSize(WIDTH, HEIGHT));
+        ByteBuffer decoded = null;
+        try {
+            BlockCompressor.compress(rgba, WIDTH, HEIGHT, format, blocks);
+            decoded = BlockCompressor.decompress(blocks, WIDTH, HEIGHT, format);
+            return BlockCompressor.psnr(rgba, decoded, numChannels);
+        } finally {
+            MemoryUtil.memFree(rgba);
+            MemoryUtil.memFree(blocks);
+            MemoryUtil.memFree(decoded);
+        }
+    }
+
+    @Test
+    void bc1KeepsColourQuality() {
+        double psnr = roundTrip(BlockCompressor.Format.BC1, false, 3);
+        assertTrue(psnr > 35, "PSNR " + psnr);
+    }
+
+    @Test
+    void bc3KeepsColourAndAlphaQuality() {
+        double psnr = roundTrip(BlockCompressor.Format.BC3, true, 4);
+        assertTrue(psnr > 35, "PSNR " + psnr);
+    }
+
+    @Test
+    void bc5KeepsTwoChannelQuality() {
+        double psnr = roundTrip(BlockCompressor.Format.BC5, false, 2);
+        assertTrue(psnr > 45, "PSNR " + psnr);
+    }
+
+    @Test
+    void solidBlockDecodesExactly() {
+        ByteBuffer rgba = MemoryUtil.memAlloc(4 * 4 * TextureData.BYTES_PER_PIXEL);
+        for (int i = 0; i < 16; i++) {
+            rgba.put(i * 4, (byte) 255).put(i * 4 + 1, (byte) 0).put(i * 4 + 2, (byte) 255).put(i * 4 + 3, (byte) 255);
+        }
+        ByteBuffer blocks = MemoryUtil.memAlloc(BlockCompressor.Format.BC1.getBlockBytes());
+        BlockCompressor.compress(rgba, 4, 4, BlockCompressor.Format.BC1, blocks);
+        ByteBuffer decoded = BlockCompressor.decompress(blocks, 4, 4, BlockCompressor.Format.BC1);
+        assertEquals(Double.POSITIVE_INFINITY, BlockCompressor.psnr(rgba, decoded, 4));
+        MemoryUtil.memFree(rgba);
+        MemoryUtil.memFree(blocks);
+        MemoryUtil.memFree(decoded);
+    }
+
+    @Test
+    void compressedSizeRoundsUpToWholeBlocks() {
+        assertEquals(18 * 10 * 8, BlockCompressor.Format.BC1.getCompressedSize(WIDTH, HEIGHT));
+        assertEquals(18 * 10 * 16, BlockCompressor.Format.BC3.getCompressedSize(WIDTH, HEIGHT));
+    }
+}
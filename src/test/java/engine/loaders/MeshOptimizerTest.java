@@ -0,0 +1,128 @@
+package engine.loaders;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MeshOptimizerTest {
+
+    private static final int GRID_SIZE = 48;
+
+    private MeshData grid;
+
+    @BeforeEach
+    void createShuffledGrid() {
+        int numVertices = (GRID_SIZE + 1) * (GRID_SIZE + 1);
+        FloatBuffer positions = MemoryUtil.memAllocFloat(numVertices * 3);
+        FloatBuffer textCoords = MemoryUtil.memAllocFloat(numVertices * 2);
+        FloatBuffer normals = MemoryUtil.memAllocFloat(numVertices * 3);
+        for (int z = 0; z <= GRID_SIZE; z++) {
+            for (int x = 0; x <= GRID_SIZE; x++) {
+                positions.put(x).put(0).put(z);
+                textCoords.put((float) x / GRID_SIZE).put((float) z / GRID_SIZE);
+                normals.put(0).put(1).put(0);
+            }
+        }
+        positions.flip();
+        textCoords.flip();
+        normals.flip();
+
+        int[] triangles = new int[GRID_SIZE * GRID_SIZE * 6];
+        int t = 0;
+        for (int z = 0; z < GRID_SIZE; z++) {
+            for (int x = 0; x < GRID_SIZE; x++) {
+                int v = z * (GRID_SIZE + 1) + x;
+                triangles[t++] = v;
+                triangles[t++] = v + GRID_SIZE + 1;
+                triangles[t++] = v + 1;
+                triangles[t++] = v + 1;
+                triangles[t++] = v + GRID_SIZE + 1;
+                triangles[t++] = v + GRID_SIZE + 2;
+            }
+        }
+        Random random = new Random(42);
+        for (int i = triangles.length / 3 - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            for (int k = 0; k < 3; k++) {
+                int tmp = triangles[i * 3 + k];
+                triangles[i * 3 + k] = triangles[j * 3 + k];
+                triangles[j * 3 + k] = tmp;
+            }
+        }
+        IntBuffer indices = MemoryUtil.memAllocInt(triangles.length);
+        indices.put(triangles).flip();
+        grid = new MeshData(positions, textCoords, normals, indices, 0);
+    }
+
+    @AfterEach
+    void freeGrid() {
+        grid.free();
+    }
+
+    @Test
+    void vertexCacheOptimizationLowersAcmr() {
+        int[] indices = new int[grid.getIndices().remaining()];
+        grid.getIndices().get(0, indices);
+        MeshOptimizer.Stats before = MeshOptimizer.analyze(indices, grid.getNumVertices());
+        MeshOptimizer.Stats after = MeshOptimizer.analyze(MeshOptimizer.optimizeVertexCache(indices, grid.getNumVertices()),
+                grid.getNumVertices());
+        assertTrue(before.getAcmr() > 1.5f, before.toString());
+        assertTrue(after.getAcmr() < 0.8f, after.toString());
+    }
+
+    @Test
+    void optimizeHalvesAcmrOfShuffledMesh() {
+        MeshOptimizer.Stats before = MeshOptimizer.analyze(grid.getIndices(), grid.getNumVertices());
+        MeshData optimized = MeshOptimizer.optimize(grid, MeshOptimizer.DEFAULT_OVERDRAW_THRESHOLD);
+        try {
+            MeshOptimizer.Stats after = MeshOptimizer.analyze(optimized.getIndices(), optimized.getNumVertices());
+            assertEquals(before.getNumTriangles(), after.getNumTriangles());
+            assertTrue(after.getAcmr() < before.getAcmr() / 2, before + " -> " + after);
+        } finally {
+            optimized.free();
+        }
+    }
+
+    @Test
+    void optimizeOutputIsPermutationOfInputTriangles() {
+        MeshData optimized = MeshOptimizer.optimize(grid, MeshOptimizer.DEFAULT_OVERDRAW_THRESHOLD);
+        try {
+            assertEquals(grid.getNumVertices(), optimized.getNumVertices());
+            assertArrayEquals(triangleKeys(grid), triangleKeys(optimized));
+        } finally {
+            optimized.free();
+        }
+    }
+
+    private static long[] triangleKeys(MeshData meshData) {
+        IntBuffer indices = meshData.getIndices();
+        FloatBuffer positions = meshData.getPositions();
+        long[] keys = new long[indices.remaining() / 3];
+        for (int t = 0; t < keys.length; t++) {
+            int[] corners = new int[3];
+            for (int k = 0; k < 3; k++) {
+                int vertex = indices.get(indices.position() + t * 3 + k);
+                corners[k] = (int) positions.get(vertex * 3 + 2) * (GRID_SIZE + 1) + (int) positions.get(vertex * 3);
+            }
+            int first = 0;
+            for (int k = 1; k < 3; k++) {
+                if (corners[k] < corners[first]) {
+                    first = k;
+                }
+            }
+            keys[t] = ((long) corners[first] << 40) | ((long) corners[(first + 1) % 3] << 20) | corners[(first + 2) % 3];
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+}